@@ -17,9 +17,10 @@
  *
  */
 var module = angular.module('de.imi.marw.viper.igv.image', [
+  'de.imi.marw.viper.igv.snapshot-events'
 ])
-.controller('IgvImageController', [ '$scope', '$timeout', '$http',
-                          function ( $scope,   $timeout,   $http) {
+.controller('IgvImageController', [ '$scope', '$timeout', '$http', 'SnapshotEventService',
+                          function ( $scope,   $timeout,   $http,   SnapshotEventService) {
   var Ctrl = this;
 
   Ctrl.sleepMillis = 1000;
@@ -29,10 +30,15 @@ var module = angular.module('de.imi.marw.viper.igv.image', [
   Ctrl.pos          = null;
   Ctrl.breakpointImageLink = null;
   Ctrl.igvConfigurationHash = null;
+  Ctrl.isSnapshotFailed = false;
+  Ctrl.unsubscribeSnapshot = null;
 
   Ctrl.getSnapshotKey = getSnapshotKey;
   Ctrl.isSnapshotAvailable = isSnapshotAvailable;
   Ctrl.onUpdate = onUpdate;
+  Ctrl.pollSnapshot = pollSnapshot;
+  Ctrl.subscribeToSnapshot = subscribeToSnapshot;
+  Ctrl.closeSnapshotEvents = closeSnapshotEvents;
 
   Ctrl.init = init;
 
@@ -42,6 +48,8 @@ var module = angular.module('de.imi.marw.viper.igv.image', [
 
     $scope.$watch(function () { return { sample: Ctrl.sample, chr: Ctrl.chr, pos: Ctrl.pos, hash: Ctrl.igvConfigurationHash }; }, Ctrl.onUpdate, true);
 
+    $scope.$on('$destroy', Ctrl.closeSnapshotEvents);
+
   }
 
   function onUpdate (newVal, oldVal) {
@@ -51,10 +59,51 @@ var module = angular.module('de.imi.marw.viper.igv.image', [
     var pos = newVal.pos;
     var hash = newVal.hash;
 
+    Ctrl.closeSnapshotEvents();
+
     if (sample == null || chr == null || pos == null || hash == null) return;
 
     var key = Ctrl.getSnapshotKey(sample, chr, pos, hash);
 
+    if (typeof EventSource !== 'undefined') {
+      Ctrl.subscribeToSnapshot(key);
+    } else {
+      Ctrl.pollSnapshot(key, newVal, oldVal);
+    }
+
+  }
+
+  // the server pushes a 'ready' event as soon as the snapshot is written and
+  // a 'failed' event if IGV could not create it
+  function subscribeToSnapshot (key) {
+
+    Ctrl.breakpointImageLink = null;
+    Ctrl.isSnapshotFailed = false;
+
+    Ctrl.unsubscribeSnapshot = SnapshotEventService.subscribe(key, function () {
+
+      Ctrl.unsubscribeSnapshot = null;
+      Ctrl.breakpointImageLink = '/api/snapshots/' + encodeURIComponent(key);
+
+    }, function () {
+
+      Ctrl.unsubscribeSnapshot = null;
+      Ctrl.isSnapshotFailed = true;
+
+    });
+  }
+
+  function closeSnapshotEvents () {
+
+    if (Ctrl.unsubscribeSnapshot != null) {
+      Ctrl.unsubscribeSnapshot();
+      Ctrl.unsubscribeSnapshot = null;
+    }
+
+  }
+
+  function pollSnapshot (key, newVal, oldVal) {
+
     Ctrl.isSnapshotAvailable(key)
     .then(function (res) {
 
@@ -0,0 +1,135 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+var module = angular.module('de.imi.marw.viper.igv.snapshot-events', [
+])
+.factory('SnapshotEventService', [ '$rootScope', '$timeout',
+                          function ( $rootScope,   $timeout) {
+
+  var Service = { };
+
+  Service.listeners = { };
+  Service.events = null;
+  Service.streamedKeys = [ ];
+  Service.reconnectPromise = null;
+
+  Service.subscribe = subscribe;
+
+  // all images of a page share one stream that carries all of their keys,
+  // subscriptions made during one digest are collected before it is reopened
+  function subscribe (key, onReady, onFailed) {
+
+    var listener = { onReady: onReady, onFailed: onFailed };
+
+    if (Service.listeners[key] == null) {
+      Service.listeners[key] = [ ];
+    }
+
+    Service.listeners[key].push(listener);
+
+    scheduleReconnect();
+
+    return function unsubscribe () {
+
+      var keyListeners = Service.listeners[key];
+
+      if (keyListeners == null) return;
+
+      var index = keyListeners.indexOf(listener);
+
+      if (index >= 0) {
+        keyListeners.splice(index, 1);
+      }
+
+      if (keyListeners.length === 0) {
+        delete Service.listeners[key];
+        scheduleReconnect();
+      }
+    };
+  }
+
+  function scheduleReconnect () {
+
+    if (Service.reconnectPromise != null) return;
+
+    Service.reconnectPromise = $timeout(function () {
+      Service.reconnectPromise = null;
+      reconnect();
+    }, 0, false);
+  }
+
+  function reconnect () {
+
+    var keys = Object.keys(Service.listeners).sort();
+
+    if (Service.events != null && keys.length > 0 && angular.equals(keys, Service.streamedKeys)) return;
+
+    if (Service.events != null) {
+      Service.events.close();
+      Service.events = null;
+    }
+
+    Service.streamedKeys = keys;
+
+    if (keys.length === 0) return;
+
+    var query = keys.map(function (key) {
+      return 'key=' + encodeURIComponent(key);
+    }).join('&');
+
+    // the browser reconnects by itself when the stream ends before all
+    // snapshots were sent
+    var events = new EventSource('/api/snapshots/events?' + query);
+
+    events.addEventListener('ready', function (event) {
+      notify(event.data, 'onReady');
+    });
+
+    events.addEventListener('failed', function (event) {
+      notify(event.data, 'onFailed');
+    });
+
+    Service.events = events;
+  }
+
+  function notify (key, callbackName) {
+
+    var keyListeners = Service.listeners[key];
+
+    if (keyListeners == null) return;
+
+    delete Service.listeners[key];
+
+    // the server does not send this key again on the current stream
+    Service.streamedKeys = Service.streamedKeys.filter(function (streamedKey) {
+      return streamedKey !== key;
+    });
+
+    if (Service.streamedKeys.length === 0) {
+      scheduleReconnect();
+    }
+
+    $rootScope.$apply(function () {
+      keyListeners.forEach(function (listener) {
+        listener[callbackName](key);
+      });
+    });
+  }
+
+  return Service;
+}]);
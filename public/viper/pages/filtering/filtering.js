@@ -96,15 +96,17 @@ var module = angular.module('de.imi.marw.viper.filtering', [
     var fromIndex = (Ctrl.currentPage - 1) * Ctrl.pageSize;
     var toIndex   = Math.min(Ctrl.currentPage * Ctrl.pageSize, Ctrl.tableSize);
 
-    VariantTableService.getTableRange(fromIndex, toIndex).then(function (data) {
-      var rawVariants = data;
+    // all columns are shown, so none are listed, which keeps the url short
+    VariantTableService.getTableColumns(fromIndex, toIndex).then(function (columns) {
 
-      Ctrl.currentVariants = rawVariants.map(function (rawVariant) {
+      Ctrl.currentVariants = [ ];
+
+      for (var row = 0; row < toIndex - fromIndex; row++) {
 
-        return Ctrl.columnNames.map(function (columnName) {
-          return Ctrl.variantPropertyToString(rawVariant[columnName]);
-        })
-      })
+        Ctrl.currentVariants.push(columns.map(function (column) {
+          return Ctrl.variantPropertyToString(column[row]);
+        }));
+      }
     })
   }
 
@@ -37,6 +37,7 @@ var module = angular.module('de.imi.marw.viper.variant-table.service', [
   Service.getRelatedColumnNames = getRelatedColumnNames;
   Service.getSize = getSize;
   Service.getTableRange = getTableRange;
+  Service.getTableColumns = getTableColumns;
   Service.getTableRow = getTableRow;
   Service.getUnfilteredSize = getUnfilteredSize;
   Service.getPartnerMap = getPartnerMap;
@@ -132,6 +133,19 @@ var module = angular.module('de.imi.marw.viper.variant-table.service', [
     return promise;
   }
 
+  // returns one array of values per requested column, or per table column
+  // if columnNames is undefined
+  function getTableColumns (fromIndex, toIndex, columnNames) {
+
+    var promise = $http.get('/api/variant-table/rows/columnar', {
+      params: { from: fromIndex, to: toIndex, column: columnNames }
+    }).then(function (res) {
+      return res.data.columns;
+    })
+
+    return promise;
+  }
+
   function isNumeric(n) {
     return typeof n === "number";
   }
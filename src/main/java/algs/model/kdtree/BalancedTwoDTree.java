@@ -0,0 +1,173 @@
+package algs.model.kdtree;
+
+import java.util.function.IntConsumer;
+
+import algs.model.IRectangle;
+
+/**
+ * Balanced 2-dimensional tree that is built once from all of its points.
+ * <p>
+ * In contrast to {@link TwoDTree} the points are not inserted one by one. Instead,
+ * the tree is constructed by recursively splitting the points at the median of
+ * alternating x and y coordinates, so its depth is always O(log n). The tree is
+ * stored implicitly in primitive arrays: the node for a range [lo,hi) of these
+ * arrays is located at its middle, its subtrees are the halves left and right
+ * of it.
+ * <p>
+ * Range queries report the indices the points had in the arrays passed to the
+ * constructor and allocate no objects. They take O(log n + k) for small ranges
+ * and O(sqrt(n) + k) in the worst case.
+ * <p>
+ * This data structure offers neither insert nor remove functionality.
+ *
+ * @author marius
+ */
+public class BalancedTwoDTree {
+
+	/** Coordinates in tree order. */
+	private final double[] xs;
+	private final double[] ys;
+
+	/** Original index of the point at each tree position. */
+	private final int[] indices;
+
+	/**
+	 * Build the tree from the given coordinates; point i is (xs[i], ys[i]).
+	 * The arrays are copied.
+	 *
+	 * @param xs   x coordinates of all points
+	 * @param ys   y coordinates of all points
+	 * @exception  IllegalArgumentException if the arrays differ in length or
+	 *             contain NaN
+	 */
+	public BalancedTwoDTree (double[] xs, double[] ys) {
+		if (xs.length != ys.length) {
+			throw new IllegalArgumentException ("x and y coordinates differ in length: " + xs.length + " vs " + ys.length);
+		}
+
+		this.xs = xs.clone();
+		this.ys = ys.clone();
+		this.indices = new int[xs.length];
+
+		for (int i = 0; i < xs.length; i++) {
+			if (Double.isNaN(xs[i]) || Double.isNaN(ys[i])) {
+				throw new IllegalArgumentException ("unable to insert NaN coordinates into BalancedTwoDTree");
+			}
+			indices[i] = i;
+		}
+
+		build (0, xs.length, true);
+	}
+
+	/** @return number of points in this tree. */
+	public int size () {
+		return indices.length;
+	}
+
+	/**
+	 * Report the indices of all points within the given rectangle.
+	 *
+	 * @param space     non-null rectangular region within which to search.
+	 * @param visitor   receives the original index of every point within the space.
+	 */
+	public void range (IRectangle space, IntConsumer visitor) {
+		range (space.getLeft(), space.getBottom(), space.getRight(), space.getTop(), visitor);
+	}
+
+	/**
+	 * Report the indices of all points (x,y) with minX &le; x &le; maxX and
+	 * minY &le; y &le; maxY. The order in which points are reported is unspecified.
+	 *
+	 * @param minX      lower bound of x coordinates (inclusive)
+	 * @param minY      lower bound of y coordinates (inclusive)
+	 * @param maxX      upper bound of x coordinates (inclusive)
+	 * @param maxY      upper bound of y coordinates (inclusive)
+	 * @param visitor   receives the original index of every point within the range.
+	 */
+	public void range (double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+		range (0, indices.length, true, minX, minY, maxX, maxY, visitor);
+	}
+
+	private void range (int lo, int hi, boolean vertical, double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+		// descend iteratively into one subtree, recurse only when both overlap
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			double x = xs[mid];
+			double y = ys[mid];
+
+			if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+				visitor.accept (indices[mid]);
+			}
+
+			double coordinate = vertical ? x : y;
+			boolean searchBelow = (vertical ? minX : minY) <= coordinate;
+			boolean searchAbove = (vertical ? maxX : maxY) >= coordinate;
+
+			if (searchBelow && searchAbove) {
+				range (lo, mid, !vertical, minX, minY, maxX, maxY, visitor);
+				lo = mid + 1;
+			} else if (searchBelow) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+
+			vertical = !vertical;
+		}
+	}
+
+	/** Arrange [lo,hi) such that the median is in the middle, then split both halves. */
+	private void build (int lo, int hi, boolean vertical) {
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			select (lo, hi - 1, mid, vertical ? xs : ys);
+
+			build (lo, mid, !vertical);
+			lo = mid + 1;
+			vertical = !vertical;
+		}
+	}
+
+	/**
+	 * Partially sort [lo,hi] by the given coordinates such that position k holds
+	 * the value it would have if sorted, smaller or equal values are left of it
+	 * and larger or equal values right of it.
+	 */
+	private void select (int lo, int hi, int k, double[] keys) {
+		while (lo < hi) {
+			double pivot = keys[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+
+			while (i <= j) {
+				while (keys[i] < pivot) { i++; }
+				while (keys[j] > pivot) { j--; }
+				if (i <= j) {
+					swap (i++, j--);
+				}
+			}
+
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void swap (int i, int j) {
+		double x = xs[i];
+		xs[i] = xs[j];
+		xs[j] = x;
+
+		double y = ys[i];
+		ys[i] = ys[j];
+		ys[j] = y;
+
+		int index = indices[i];
+		indices[i] = indices[j];
+		indices[j] = index;
+	}
+}
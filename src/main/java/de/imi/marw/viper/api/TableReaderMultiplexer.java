@@ -18,7 +18,7 @@
  */
 package de.imi.marw.viper.api;
 
-import de.imi.marw.viper.variants.table.CsvTableReader;
+import de.imi.marw.viper.variants.table.ParallelCsvTableReader;
 import de.imi.marw.viper.variants.table.TableReader;
 import de.imi.marw.viper.variants.table.VariantTable;
 import de.imi.marw.viper.variants.table.VcfTableReader;
@@ -31,18 +31,18 @@ import java.io.IOException;
  */
 public class TableReaderMultiplexer implements TableReader {
 
-    private final CsvTableReader csvReader;
+    private final ParallelCsvTableReader csvReader;
     private final VcfTableReader vcfReader;
 
     public TableReaderMultiplexer(ViperServerConfig config) {
-        this.csvReader = new CsvTableReader(config.getCsvDelimiter(), config.getCollectionDelimiter());
-        this.vcfReader = new VcfTableReader(config.isKeepingVcfSimple(), config.isExcludingNonRefVcfCalls());
+        this.csvReader = new ParallelCsvTableReader(config.getCsvDelimiter(), config.getCollectionDelimiter(), config.getCsvTypeSampleSize(), config.getParallelism());
+        this.vcfReader = new VcfTableReader(config.isKeepingVcfSimple(), config.isExcludingNonRefVcfCalls(), config.getVcfRegions(), config.getParallelism());
     }
 
     @Override
     public VariantTable readTable(String fileName) throws FileNotFoundException, IOException {
 
-        if (fileName.endsWith(".vcf")) {
+        if (fileName.endsWith(".vcf") || fileName.endsWith(".vcf.gz") || fileName.endsWith(".vcf.bgz")) {
             return vcfReader.readTable(fileName);
         }
 
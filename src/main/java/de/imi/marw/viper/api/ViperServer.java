@@ -25,8 +25,11 @@ import de.imi.marw.viper.api.routes.ExportRoutes;
 import de.imi.marw.viper.api.routes.FilterRoutes;
 import de.imi.marw.viper.api.routes.SnapshotRoutes;
 import de.imi.marw.viper.api.routes.TableRoutes;
+import de.imi.marw.viper.clustering.IntervalClusterBuilder;
+import de.imi.marw.viper.clustering.SweepIntervalClusterBuilder;
 import de.imi.marw.viper.variants.VariantClusterBuilder;
 import de.imi.marw.viper.variants.VariantTableCluster;
+import de.imi.marw.viper.variants.VariantTableClusterCache;
 import de.imi.marw.viper.variants.table.VariantTable;
 import de.imi.marw.viper.visualization.IGVVisualizer;
 import java.io.File;
@@ -56,7 +59,7 @@ public class ViperServer {
 
         this.config = config;
         this.gson = new GsonBuilder().serializeNulls().create();
-        this.clusterer = new VariantClusterBuilder(config.getBreakpointTolerance(), !config.isClusteringEnabled());
+        this.clusterer = new VariantClusterBuilder(createIntervalClusterer(), !config.isClusteringEnabled(), config.getParallelism());
         this.sparkInitDone = false;
     }
 
@@ -68,7 +71,11 @@ public class ViperServer {
 
         System.out.println("[INFO] Loaded " + this.variantTableCluster.getUnclusteredTable().getNumberOfCalls() + " calls.");
 
-        System.out.println("[INFO] Starting IGV on port " + this.config.getIgvPort() + ", logging to " + this.config.getIgvLog());
+        if (this.config.getIgvWorkers() > 1) {
+            System.out.println("[INFO] Starting " + this.config.getIgvWorkers() + " IGV instances on ports " + this.config.getIgvPort() + "-" + (this.config.getIgvPort() + this.config.getIgvWorkers() - 1) + ", logging to " + this.config.getIgvLog());
+        } else {
+            System.out.println("[INFO] Starting IGV on port " + this.config.getIgvPort() + ", logging to " + this.config.getIgvLog());
+        }
         this.igv = this.setupIGV();
         this.igv.start();
 
@@ -96,7 +103,19 @@ public class ViperServer {
         return this.config;
     }
 
-    private VariantTableCluster loadVariants() throws FileNotFoundException, IOException {
+    private IntervalClusterBuilder createIntervalClusterer() {
+
+        switch (config.getClusteringAlgorithm()) {
+            case "kdtree":
+                return new IntervalClusterBuilder(config.getBreakpointTolerance());
+            case "sweep":
+                return new SweepIntervalClusterBuilder(config.getBreakpointTolerance());
+            default:
+                throw new IllegalArgumentException("Unknown clustering algorithm " + config.getClusteringAlgorithm() + ", use kdtree or sweep");
+        }
+    }
+
+    private VariantTableCluster readAndClusterVariants() throws FileNotFoundException, IOException {
         TableReaderMultiplexer reader = new TableReaderMultiplexer(config);
 
         VariantTable unclusteredTable = reader.readTable(config.getAnalysisFile());
@@ -105,6 +124,55 @@ public class ViperServer {
         return cluster;
     }
 
+    /**
+     * All settings that change the loaded or clustered calls.
+     */
+    private String getTableCacheOptions() {
+        return "csvDelimiter=" + config.getCsvDelimiter()
+                + ", collectionDelimiter=" + config.getCollectionDelimiter()
+                + ", csvTypeSampleSize=" + config.getCsvTypeSampleSize()
+                + ", keepVcfSimple=" + config.isKeepingVcfSimple()
+                + ", excludeRefVcfCalls=" + config.isExcludingNonRefVcfCalls()
+                + ", vcfRegions=" + config.getVcfRegions()
+                + ", enableGrouping=" + config.isClusteringEnabled()
+                + ", breakpointTolerance=" + config.getBreakpointTolerance()
+                + ", clusteringAlgorithm=" + config.getClusteringAlgorithm();
+    }
+
+    private VariantTableCluster loadVariants() throws FileNotFoundException, IOException {
+
+        File analysisFile = new File(config.getAnalysisFile());
+
+        if (!config.isTableCacheEnabled() || !analysisFile.isFile()) {
+            return readAndClusterVariants();
+        }
+
+        new File(this.config.getWorkDir()).mkdirs();
+
+        VariantTableClusterCache cache = new VariantTableClusterCache(config.getWorkDir());
+        String key = VariantTableClusterCache.createKey(analysisFile, getTableCacheOptions());
+
+        VariantTableCluster cluster = cache.load(key);
+
+        if (cluster != null) {
+            System.out.println("[INFO] Loaded variants from table cache " + cache.getCachePath(key));
+            return cluster;
+        }
+
+        cluster = readAndClusterVariants();
+
+        if (!cluster.getUnclusteredTable().isMaterialized() || !cluster.getClusteredTable().isMaterialized()) {
+            System.out.println("[INFO] Not caching variants, the table has columns which are decoded on demand");
+            return cluster;
+        }
+
+        if (cache.save(key, cluster)) {
+            System.out.println("[INFO] Saved variants to table cache " + cache.getCachePath(key));
+        }
+
+        return cluster;
+    }
+
     private void setupRoutes() {
 
         // Setting Jetty logger implementation and level (DEBUG | INFO | WARN | IGNORE)
@@ -160,7 +228,9 @@ public class ViperServer {
                 this.config.getXvfbDisplay(),
                 this.config.getXvfbWidth(),
                 this.config.getXvfbHeight(),
-                this.config.getIgvMaxMemory());
+                this.config.getIgvMaxMemory(),
+                this.config.getIgvWorkers(),
+                this.config.getSnapshotCacheSize() * 1024L * 1024L);
     }
 
     private String getViperVersion() {
@@ -18,6 +18,9 @@
  */
 package de.imi.marw.viper.api;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  *
  * @author marius
@@ -29,8 +32,10 @@ public class ViperServerConfig {
     private int igvPort = 9090;
     private char csvDelimiter = ';';
     private String collectionDelimiter = ",";
+    private int csvTypeSampleSize = 0;
     private boolean enableGrouping = true;
     private int breakpointTolerance = 3;
+    private String clusteringAlgorithm = "kdtree";
     private String partnerFile = null;
     private char partnerDelimiter = ',';
     private String workDir = "/tmp/viper";
@@ -40,12 +45,18 @@ public class ViperServerConfig {
     private String igvLog = "igv.log";
     private boolean keepVcfSimple = false;
     private boolean excludeRefVcfCalls = true;
+    private List<String> vcfRegions = new ArrayList<>();
     private int numPrecomputedSnapshots = 10;
     private int xslxExportWindowSize = 1000;
     private int xvfbDisplay = 4499;
     private int xvfbWidth = 1280;
     private int xvfbHeight = 1680;
     private int igvMaxMemory = 1200;
+    private int igvWorkers = 1;
+    private int snapshotCacheSize = 2048;
+    private int parallelism = 0;
+    private int parallelFilteringThreshold = 200000;
+    private boolean enableTableCache = true;
 
     public ViperServerConfig() {
     }
@@ -82,6 +93,14 @@ public class ViperServerConfig {
         this.collectionDelimiter = collectionDelimiter;
     }
 
+    public int getCsvTypeSampleSize() {
+        return csvTypeSampleSize;
+    }
+
+    public void setCsvTypeSampleSize(int csvTypeSampleSize) {
+        this.csvTypeSampleSize = csvTypeSampleSize;
+    }
+
     public int getViperPort() {
         return viperPort;
     }
@@ -162,6 +181,14 @@ public class ViperServerConfig {
         this.excludeRefVcfCalls = excludeRefVcfCalls;
     }
 
+    public List<String> getVcfRegions() {
+        return vcfRegions;
+    }
+
+    public void setVcfRegions(List<String> vcfRegions) {
+        this.vcfRegions = vcfRegions;
+    }
+
     public int getNumPrecomputedSnapshots() {
         return numPrecomputedSnapshots;
     }
@@ -210,6 +237,14 @@ public class ViperServerConfig {
         this.breakpointTolerance = breakpointTolerance;
     }
 
+    public String getClusteringAlgorithm() {
+        return clusteringAlgorithm;
+    }
+
+    public void setClusteringAlgorithm(String clusteringAlgorithm) {
+        this.clusteringAlgorithm = clusteringAlgorithm;
+    }
+
     public int getIgvMaxMemory() {
         return this.igvMaxMemory;
     }
@@ -218,6 +253,22 @@ public class ViperServerConfig {
         this.igvMaxMemory = igvMaxMemory;
     }
 
+    public int getIgvWorkers() {
+        return igvWorkers;
+    }
+
+    public void setIgvWorkers(int igvWorkers) {
+        this.igvWorkers = igvWorkers;
+    }
+
+    public int getSnapshotCacheSize() {
+        return snapshotCacheSize;
+    }
+
+    public void setSnapshotCacheSize(int snapshotCacheSize) {
+        this.snapshotCacheSize = snapshotCacheSize;
+    }
+
     public boolean isClusteringEnabled() {
         return enableGrouping;
     }
@@ -226,9 +277,33 @@ public class ViperServerConfig {
         this.enableGrouping = enableGrouping;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelFilteringThreshold() {
+        return parallelFilteringThreshold;
+    }
+
+    public void setParallelFilteringThreshold(int parallelFilteringThreshold) {
+        this.parallelFilteringThreshold = parallelFilteringThreshold;
+    }
+
+    public boolean isTableCacheEnabled() {
+        return enableTableCache;
+    }
+
+    public void setEnableTableCache(boolean enableTableCache) {
+        this.enableTableCache = enableTableCache;
+    }
+
     @Override
     public String toString() {
-        return "ViperServerConfig{" + "analysisFile=" + analysisFile + ", viperPort=" + viperPort + ", igvPort=" + igvPort + ", csvDelimiter=" + csvDelimiter + ", collectionDelimiter=" + collectionDelimiter + ", enableClustering=" + enableGrouping + ", breakpointTolerance=" + breakpointTolerance + ", workDir=" + workDir + ", fastaRef=" + fastaRef + ", igvJar=" + igvJar + ", bamDir=" + bamDir + ", keepVcfSimple=" + keepVcfSimple + ", excludeRefVcfCalls=" + excludeRefVcfCalls + ", numPrecomputedSnapshots=" + numPrecomputedSnapshots + ", xslxExportWindowSize=" + xslxExportWindowSize + ", xvfbDisplay=" + xvfbDisplay + ", xvfbWidth=" + xvfbWidth + ", xvfbHeight=" + xvfbHeight + ", igvMaxMemory=" + igvMaxMemory + '}';
+        return "ViperServerConfig{" + "analysisFile=" + analysisFile + ", viperPort=" + viperPort + ", igvPort=" + igvPort + ", csvDelimiter=" + csvDelimiter + ", collectionDelimiter=" + collectionDelimiter + ", csvTypeSampleSize=" + csvTypeSampleSize + ", enableClustering=" + enableGrouping + ", breakpointTolerance=" + breakpointTolerance + ", clusteringAlgorithm=" + clusteringAlgorithm + ", workDir=" + workDir + ", fastaRef=" + fastaRef + ", igvJar=" + igvJar + ", bamDir=" + bamDir + ", keepVcfSimple=" + keepVcfSimple + ", excludeRefVcfCalls=" + excludeRefVcfCalls + ", vcfRegions=" + vcfRegions + ", numPrecomputedSnapshots=" + numPrecomputedSnapshots + ", xslxExportWindowSize=" + xslxExportWindowSize + ", xvfbDisplay=" + xvfbDisplay + ", xvfbWidth=" + xvfbWidth + ", xvfbHeight=" + xvfbHeight + ", igvMaxMemory=" + igvMaxMemory + ", igvWorkers=" + igvWorkers + ", snapshotCacheSize=" + snapshotCacheSize + ", parallelism=" + parallelism + ", parallelFilteringThreshold=" + parallelFilteringThreshold + ", enableTableCache=" + enableTableCache + '}';
     }
 
 }
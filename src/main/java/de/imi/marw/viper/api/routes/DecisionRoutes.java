@@ -22,8 +22,6 @@ import com.google.gson.Gson;
 import de.imi.marw.viper.api.ViperServerConfig;
 import de.imi.marw.viper.variants.VariantTableCluster;
 import de.imi.marw.viper.variants.table.DecisionManager;
-import de.imi.marw.viper.variants.table.VariantTable;
-import java.util.stream.IntStream;
 import spark.Request;
 import spark.Response;
 import static spark.Spark.post;
@@ -59,22 +57,20 @@ public class DecisionRoutes extends ViperRoutes {
         int queryIndex = gson.fromJson(req.queryParams("index"), Integer.class);
         String decision = req.queryParams("decision");
 
-        variantTableCluster.getClusteredTable().setCallProperty(queryIndex, VariantTable.DECISION_COLUMN_NAME, decision);
+        boolean success = decisionManager.makeDecision(variantTableCluster.getClusteredTable(), queryIndex, decision);
 
-        return "OK";
+        return respond(success, res);
     }
 
     private Object decideForAll(Request req, Response res) {
         String decision = req.queryParams("decision");
 
-        IntStream.range(0, variantTableCluster.getClusteredTable().getNumberOfCalls())
-                .forEach(i -> variantTableCluster.getClusteredTable().setCallProperty(i, VariantTable.DECISION_COLUMN_NAME, decision));
+        boolean success = decisionManager.decideForAll(variantTableCluster.getClusteredTable(), decision);
 
-        return "OK";
+        return respond(success, res);
     }
 
-    private Object saveDecisions(Request req, Response res) {
-        boolean success = decisionManager.saveDecisions(variantTableCluster.getClusteredTable());
+    private Object respond(boolean success, Response res) {
 
         if (success) {
             return "OK";
@@ -84,4 +80,10 @@ public class DecisionRoutes extends ViperRoutes {
         }
     }
 
+    private Object saveDecisions(Request req, Response res) {
+        boolean success = decisionManager.saveDecisions(variantTableCluster.getClusteredTable());
+
+        return respond(success, res);
+    }
+
 }
@@ -27,6 +27,7 @@ import de.imi.marw.viper.variants.VariantTableCluster;
 import de.imi.marw.viper.variants.filters.FilterManager;
 import de.imi.marw.viper.variants.filters.NumericCollectionFilter;
 import de.imi.marw.viper.variants.filters.NumericFilter;
+import de.imi.marw.viper.variants.filters.ParallelFilterEvaluator;
 import de.imi.marw.viper.variants.filters.StringCollectionFilter;
 import de.imi.marw.viper.variants.filters.StringFilter;
 import java.util.ArrayList;
@@ -48,7 +49,7 @@ public class FilterRoutes extends ViperRoutes {
 
         super(cluster, gson, config);
 
-        this.filterManager = new FilterManager();
+        this.filterManager = new FilterManager(new ParallelFilterEvaluator(config.getParallelism(), config.getParallelFilteringThreshold()));
         this.filterManager.loadFromTable(cluster.getClusteredTable());
 
     }
@@ -66,9 +67,8 @@ public class FilterRoutes extends ViperRoutes {
         String body = req.body();
 
         List<VariantCallFilter> filters = parseFilters(body);
-        filterManager.setFilters(filters);
 
-        variantTableCluster.getClusteredTable().filter(filters);
+        filterManager.applyFilters(variantTableCluster.getClusteredTable(), filters);
 
         return "OK";
     }
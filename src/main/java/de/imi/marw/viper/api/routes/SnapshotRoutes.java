@@ -20,14 +20,21 @@ package de.imi.marw.viper.api.routes;
 
 import com.google.gson.Gson;
 import de.imi.marw.viper.api.ViperServerConfig;
-import de.imi.marw.viper.util.Util;
 import de.imi.marw.viper.variants.VariantTableCluster;
-import de.imi.marw.viper.variants.table.VariantTable;
 import de.imi.marw.viper.visualization.IGVVisualizer;
 import de.imi.marw.viper.visualization.SamplePartners;
+import de.imi.marw.viper.visualization.SnapshotPrefetcher;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletResponse;
 import spark.Request;
 import spark.Response;
 import static spark.Spark.get;
@@ -39,13 +46,19 @@ import static spark.Spark.post;
  */
 public class SnapshotRoutes extends ViperRoutes {
 
+    private static final long SNAPSHOT_EVENT_STREAM_MS = 60000;
+    private static final long SNAPSHOT_EVENT_HEARTBEAT_MS = 15000;
+    private static final long SNAPSHOT_EVENT_RETRY_MS = 1000;
+
     private final IGVVisualizer igv;
     private final SamplePartners partners;
+    private final SnapshotPrefetcher prefetcher;
 
     public SnapshotRoutes(IGVVisualizer igv, VariantTableCluster cluster, Gson gson, ViperServerConfig config) {
         super(cluster, gson, config);
         this.igv = igv;
         this.partners = config.getPartnerFile() == null ? new SamplePartners() : SamplePartners.loadFromCsv(config.getPartnerFile(), config.getPartnerDelimiter());
+        this.prefetcher = new SnapshotPrefetcher(igv, cluster, partners, config.getNumPrecomputedSnapshots() * config.getIgvWorkers());
     }
 
     @Override
@@ -55,6 +68,8 @@ public class SnapshotRoutes extends ViperRoutes {
 
         get("/is-available", this::isAvailable, gson::toJson);
 
+        get("/events", this::streamSnapshotEvents);
+
         get("/configuration", this::getIGVConfiguration, gson::toJson);
 
         get("/configuration-hash", this::getIGVConfigurationHash);
@@ -96,55 +111,76 @@ public class SnapshotRoutes extends ViperRoutes {
         return igv.isSnapshotDone(key);
     }
 
-    private Object getSnapshotByKey(Request req, Response res) throws IOException {
-        String key = req.params("key");
-        String fileName = this.config.getWorkDir() + "/" + key + ".png";
+    /**
+     * Streams a server-sent "ready" event for every requested key once its
+     * snapshot is available, or a "failed" event if IGV could not create it.
+     * The stream ends when all keys were sent or after a timeout, so that
+     * clients reconnect for keys that are still missing.
+     */
+    private Object streamSnapshotEvents(Request req, Response res) throws IOException, InterruptedException {
 
-        serveFile(res.raw(), fileName, "image/png");
+        String[] requestedKeys = req.queryParamsValues("key");
+        Set<String> pendingKeys = new LinkedHashSet<>(requestedKeys == null ? Collections.emptyList() : Arrays.asList(requestedKeys));
 
-        return res.raw();
-    }
+        HttpServletResponse raw = res.raw();
+        raw.setContentType("text/event-stream");
+        raw.setCharacterEncoding("UTF-8");
+        raw.setHeader("Cache-Control", "no-cache");
 
-    private Object takeSnapshot(Request req, Response res) {
+        PrintWriter writer = raw.getWriter();
+        writer.print("retry: " + SNAPSHOT_EVENT_RETRY_MS + "\n\n");
+        writer.flush();
 
-        int precomputeRange = config.getNumPrecomputedSnapshots();
-        int queryIndex = gson.fromJson(req.queryParams("index"), Integer.class);
-        int selectedRelatedCall = gson.fromJson(req.queryParams("relatedCallIndex"), Integer.class);
-        int clusteredPrecomputeHigh = Util.clamp(queryIndex + precomputeRange, 0, variantTableCluster.getClusteredTable().getNumberOfCalls());
+        List<String> subscribedKeys = new ArrayList<>(pendingKeys);
+        BlockingQueue<String> finishedKeys = igv.subscribeToSnapshots(subscribedKeys);
 
-        for (int i = queryIndex; queryIndex < clusteredPrecomputeHigh; queryIndex++) {
+        try {
+            long deadline = System.currentTimeMillis() + SNAPSHOT_EVENT_STREAM_MS;
 
-            List<Map<String, Object>> relatedCalls = variantTableCluster.getUnclusteredCalls(queryIndex);
+            while (!pendingKeys.isEmpty() && !writer.checkError()) {
 
-            int relatedPrecomputeHigh = Util.clamp(selectedRelatedCall + precomputeRange, 0, relatedCalls.size());
-            for (int j = selectedRelatedCall; j < relatedPrecomputeHigh; j++) {
+                long remaining = deadline - System.currentTimeMillis();
 
-                Map<String, Object> relatedCall = relatedCalls.get(j);
+                if (remaining <= 0) {
+                    break;
+                }
 
-                String sample = relatedCall.get(VariantTable.SAMPLE_COLUMN_NAME).toString();
+                String finishedKey = finishedKeys.poll(Math.min(remaining, SNAPSHOT_EVENT_HEARTBEAT_MS), TimeUnit.MILLISECONDS);
 
-                String chr1 = relatedCall.get(VariantTable.CHR1_COLUMN_NAME).toString();
-                String chr2 = relatedCall.get(VariantTable.CHR2_COLUMN_NAME).toString();
+                if (finishedKey == null) {
+                    // comment line, lets the write fail once the client is gone
+                    writer.print(":\n\n");
+                } else if (igv.isSnapshotDone(finishedKey) && pendingKeys.remove(finishedKey)) {
+                    writer.print("event: ready\ndata: " + finishedKey + "\n\n");
+                } else if (igv.isSnapshotFailed(finishedKey) && pendingKeys.remove(finishedKey)) {
+                    writer.print("event: failed\ndata: " + finishedKey + "\n\n");
+                }
 
-                int bp1 = ((Double) relatedCall.get(VariantTable.BP1_COLUMN_NAME)).intValue();
-                int bp2 = ((Double) relatedCall.get(VariantTable.BP2_COLUMN_NAME)).intValue();
+                writer.flush();
+            }
 
-                boolean isCurrentSnapshot = i == queryIndex && j == selectedRelatedCall;
+        } finally {
+            igv.unsubscribeFromSnapshots(subscribedKeys, finishedKeys);
+        }
 
-                this.igv.scheduleSnapshot(sample, chr1, bp1, isCurrentSnapshot);
-                this.igv.scheduleSnapshot(sample, chr2, bp2, isCurrentSnapshot);
+        return raw;
+    }
 
-                List<String> relatedPartners = this.partners.getPartners(sample);
+    private Object getSnapshotByKey(Request req, Response res) throws IOException {
+        String key = req.params("key");
+        String fileName = this.config.getWorkDir() + "/" + key + ".png";
 
-                for (String partner : relatedPartners) {
+        serveFile(res.raw(), fileName, "image/png");
+
+        return res.raw();
+    }
 
-                    this.igv.scheduleSnapshot(partner, chr1, bp1, isCurrentSnapshot);
-                    this.igv.scheduleSnapshot(partner, chr2, bp2, isCurrentSnapshot);
+    private Object takeSnapshot(Request req, Response res) {
 
-                }
+        int queryIndex = gson.fromJson(req.queryParams("index"), Integer.class);
+        int selectedRelatedCall = gson.fromJson(req.queryParams("relatedCallIndex"), Integer.class);
 
-            }
-        }
+        this.prefetcher.viewCall(req.session(true).id(), queryIndex, selectedRelatedCall);
 
         return "OK";
     }
@@ -19,8 +19,18 @@
 package de.imi.marw.viper.api.routes;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import de.imi.marw.viper.api.ViperServerConfig;
 import de.imi.marw.viper.variants.VariantTableCluster;
+import de.imi.marw.viper.variants.table.VariantTable;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import javax.servlet.http.HttpServletResponse;
 import spark.Request;
 import spark.Response;
 import static spark.Spark.get;
@@ -46,6 +56,8 @@ public class TableRoutes extends ViperRoutes {
 
         get("/rows", this::getRows, gson::toJson);
 
+        get("/rows/columnar", this::getColumnarRows);
+
         get("/column-names", this::getColumnNames, gson::toJson);
 
         get("/related-calls", this::getRelatedCalls, gson::toJson);
@@ -60,7 +72,7 @@ public class TableRoutes extends ViperRoutes {
     }
 
     private Object getUnfilteredSize(Request req, Response res) {
-        return variantTableCluster.getClusteredTable().getRawCalls().size();
+        return variantTableCluster.getClusteredTable().getNumberOfUnfilteredCalls();
     }
 
     private Object getRow(Request req, Response res) {
@@ -76,6 +88,83 @@ public class TableRoutes extends ViperRoutes {
         return variantTableCluster.getClusteredTable().getCallRange(from, to);
     }
 
+    /**
+     * Writes the requested columns of a range of calls as one array per
+     * column, i.e. {"from": 0, "to": 2, "columnNames": ["chr1", "bp1"],
+     * "columns": [["1", "2"], [100.0, 200.0]]}. All columns are written if no
+     * column parameter is given.
+     */
+    private Object getColumnarRows(Request req, Response res) throws IOException {
+
+        int from = gson.fromJson(req.queryParams("from"), Integer.class);
+        int to = gson.fromJson(req.queryParams("to"), Integer.class);
+
+        VariantTable table = variantTableCluster.getClusteredTable();
+        String[] requestedColumns = req.queryParamsValues("column");
+        List<String> columnNames = requestedColumns == null ? table.getColumnNames() : Arrays.asList(requestedColumns);
+
+        for (String columnName : columnNames) {
+            if (!table.getColumnNames().contains(columnName)) {
+                res.status(400);
+                return "Unknown column " + columnName;
+            }
+        }
+
+        List<Object[]> columns = table.getColumnRanges(columnNames, from, to);
+
+        HttpServletResponse raw = res.raw();
+        raw.setContentType("application/json");
+
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(raw.getOutputStream(), StandardCharsets.UTF_8)))) {
+
+            writer.beginObject();
+            writer.name("from").value(from);
+            writer.name("to").value(to);
+
+            writer.name("columnNames").beginArray();
+            for (String columnName : columnNames) {
+                writer.value(columnName);
+            }
+            writer.endArray();
+
+            writer.name("columns").beginArray();
+            for (Object[] column : columns) {
+
+                writer.beginArray();
+                for (Object value : column) {
+                    writeValue(writer, value);
+                }
+                writer.endArray();
+            }
+            writer.endArray();
+
+            writer.endObject();
+        }
+
+        return raw;
+    }
+
+    private void writeValue(JsonWriter writer, Object value) throws IOException {
+
+        if (value == null) {
+            writer.nullValue();
+        } else if (value instanceof String) {
+            writer.value((String) value);
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+        } else if (value instanceof Collection) {
+
+            writer.beginArray();
+            for (Object element : (Collection<?>) value) {
+                writeValue(writer, element);
+            }
+            writer.endArray();
+
+        } else {
+            gson.toJson(value, value.getClass(), writer);
+        }
+    }
+
     private Object getColumnNames(Request req, Response res) {
         return variantTableCluster.getClusteredTable().getColumnNames();
     }
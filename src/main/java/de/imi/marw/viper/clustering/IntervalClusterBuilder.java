@@ -18,15 +18,11 @@
  */
 package de.imi.marw.viper.clustering;
 
-import algs.model.IPoint;
-import algs.model.IRectangle;
-import algs.model.kdtree.TwoDTree;
-import algs.model.twod.TwoDPoint;
-import algs.model.twod.TwoDRectangle;
+import algs.model.kdtree.BalancedTwoDTree;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -53,41 +49,40 @@ public class IntervalClusterBuilder {
         this.tolerance = tolerance;
     }
 
-    private List<IndexContainingPoint> findPointsInRange(IndexContainingPoint point, TwoDTree tree) {
+    /**
+     * Collects the indices of all points within the tolerance of the given
+     * point that were processed before it.
+     */
+    private void findPointsInRange(int index, double[] xs, double[] ys, BalancedTwoDTree tree, IntCollector pointsInRange) {
 
-        IRectangle searchArea = new TwoDRectangle(
-                point.getX() - tolerance - 0.5,
-                point.getY() - tolerance - 0.5,
-                point.getX() + tolerance + 0.5,
-                point.getY() + tolerance + 0.5
-        );
+        pointsInRange.clear();
 
-        Iterator<IPoint> pointsInRangeIterator = tree.range(searchArea);
-
-        List<IndexContainingPoint> pointsInRange = new ArrayList<>();
-        pointsInRangeIterator.forEachRemaining((pointInRange) -> pointsInRange.add((IndexContainingPoint) pointInRange));
-
-        return pointsInRange;
+        tree.range(xs[index] - tolerance, ys[index] - tolerance, xs[index] + tolerance, ys[index] + tolerance,
+                other -> {
+                    if (other < index) {
+                        pointsInRange.add(other);
+                    }
+                });
     }
 
-    private void updateClusters(IndexContainingPoint point, List<IndexContainingPoint> pointsInRange, int[] clusterIndices, List<Collection<Integer>> clusters) {
+    private void updateClusters(int index, IntCollector pointsInRange, int[] clusterIndices, List<Collection<Integer>> clusters) {
 
-        int[] otherClusterIndices = pointsInRange.stream()
-                .mapToInt((pointInRange) -> clusterIndices[pointInRange.getIndex()])
+        int[] otherClusterIndices = Arrays.stream(pointsInRange.values, 0, pointsInRange.size)
+                .map((pointInRange) -> clusterIndices[pointInRange])
                 .distinct()
                 .toArray();
 
         if (otherClusterIndices.length == 1) {
 
             int otherClusterIndex = otherClusterIndices[0];
-            clusters.get(otherClusterIndex).add(point.getIndex());
-            clusterIndices[point.getIndex()] = otherClusterIndex;
+            clusters.get(otherClusterIndex).add(index);
+            clusterIndices[index] = otherClusterIndex;
 
         } else {
 
             Set<Integer> newCluster = new HashSet<>();
 
-            newCluster.add(point.getIndex());
+            newCluster.add(index);
             for (int otherCluster : otherClusterIndices) {
 
                 newCluster.addAll(clusters.get(otherCluster));
@@ -118,20 +113,19 @@ public class IntervalClusterBuilder {
                 .map((i) -> -1)
                 .toArray();
 
-        IndexContainingPoint[] points = IntStream.range(0, deduplicatedIntervals.size())
-                .boxed()
-                .map((index) -> new IndexContainingPoint(deduplicatedIntervals.get(index).getStart(), deduplicatedIntervals.get(index).getEnd(), index))
-                .toArray(IndexContainingPoint[]::new);
+        double[] xs = deduplicatedIntervals.stream().mapToDouble(Interval::getStart).toArray();
+        double[] ys = deduplicatedIntervals.stream().mapToDouble(Interval::getEnd).toArray();
 
-        TwoDTree tree = new TwoDTree();
+        BalancedTwoDTree tree = new BalancedTwoDTree(xs, ys);
+        IntCollector pointsInRange = new IntCollector();
 
-        for (IndexContainingPoint point : points) {
+        // clusters only grow from points that were processed before, just as
+        // if the points were inserted one by one
+        for (int index = 0; index < deduplicatedIntervals.size(); index++) {
 
-            List<IndexContainingPoint> pointsInRange = findPointsInRange(point, tree);
+            findPointsInRange(index, xs, ys, tree, pointsInRange);
 
-            updateClusters(point, pointsInRange, clusterIndices, clusters);
-
-            tree.insert(point);
+            updateClusters(index, pointsInRange, clusterIndices, clusters);
         }
 
         clusters = clusters.stream()
@@ -146,17 +140,20 @@ public class IntervalClusterBuilder {
         return clusters;
     }
 
-    private static class IndexContainingPoint extends TwoDPoint {
+    private static class IntCollector {
 
-        private final int index;
+        private int[] values = new int[16];
+        private int size = 0;
 
-        public IndexContainingPoint(double x, double y, int intervalIndex) {
-            super(x, y);
-            this.index = intervalIndex;
+        public void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
         }
 
-        public int getIndex() {
-            return index;
+        public void clear() {
+            size = 0;
         }
     }
 }
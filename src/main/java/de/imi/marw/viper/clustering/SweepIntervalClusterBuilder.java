@@ -0,0 +1,190 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.clustering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Clusters intervals by sweeping over them in (start, end) order. Intervals
+ * whose starts and ends both differ by at most the tolerance end up in the
+ * same cluster, which yields the same clusters as
+ * {@link IntervalClusterBuilder} without building a tree.
+ *
+ * Clusters are ordered by their smallest interval index, indices within a
+ * cluster are ascending.
+ *
+ * @author marius
+ */
+public class SweepIntervalClusterBuilder extends IntervalClusterBuilder {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    public SweepIntervalClusterBuilder(int tolerance) {
+        super(tolerance);
+    }
+
+    @Override
+    public List<Collection<Integer>> clusterIntervals(List<Interval> intervals) {
+
+        int numIntervals = intervals.size();
+        int tolerance = getTolerance();
+
+        int[] starts = new int[numIntervals];
+        int[] ends = new int[numIntervals];
+        long[] keys = new long[numIntervals];
+        int[] order = new int[numIntervals];
+
+        for (int i = 0; i < numIntervals; i++) {
+            Interval interval = intervals.get(i);
+            starts[i] = interval.getStart();
+            ends[i] = interval.getEnd();
+            keys[i] = ((long) starts[i] << 32) | ((ends[i] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+            order[i] = i;
+        }
+
+        sort(keys, order, 0, numIntervals - 1);
+
+        int[] parents = new int[numIntervals];
+        Arrays.setAll(parents, i -> i);
+
+        // by end, the interval that started last among all intervals with that
+        // end. Intervals sharing an end are connected while they are in the
+        // window, so the one leaving the window last represents all of them.
+        TreeMap<Integer, Integer> window = new TreeMap<>();
+
+        for (int index : order) {
+
+            int start = starts[index];
+            int end = ends[index];
+
+            Iterator<Integer> intervalsInRange = window.subMap(end - tolerance, true, end + tolerance, true)
+                    .values()
+                    .iterator();
+
+            while (intervalsInRange.hasNext()) {
+
+                int other = intervalsInRange.next();
+
+                if (starts[other] < start - tolerance) {
+                    intervalsInRange.remove();
+                } else {
+                    union(parents, index, other);
+                }
+            }
+
+            window.put(end, index);
+        }
+
+        int[] clusterIndices = new int[numIntervals];
+        Arrays.fill(clusterIndices, -1);
+
+        List<Collection<Integer>> clusters = new ArrayList<>();
+
+        for (int i = 0; i < numIntervals; i++) {
+
+            int root = find(parents, i);
+
+            if (clusterIndices[root] == -1) {
+                clusterIndices[root] = clusters.size();
+                clusters.add(new ArrayList<>());
+            }
+
+            clusters.get(clusterIndices[root]).add(i);
+        }
+
+        return clusters;
+    }
+
+    private static int find(int[] parents, int i) {
+
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+
+        return i;
+    }
+
+    private static void union(int[] parents, int i, int j) {
+
+        int rootI = find(parents, i);
+        int rootJ = find(parents, j);
+
+        if (rootI != rootJ) {
+            parents[Math.max(rootI, rootJ)] = Math.min(rootI, rootJ);
+        }
+    }
+
+    private static void sort(long[] keys, int[] indices, int low, int high) {
+
+        while (high - low > INSERTION_SORT_THRESHOLD) {
+
+            long pivot = medianOfThree(keys[low], keys[(low + high) >>> 1], keys[high]);
+
+            int i = low;
+            int j = high;
+
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, indices, i++, j--);
+                }
+            }
+
+            // recurse into the smaller half to bound the stack depth
+            if (j - low < high - i) {
+                sort(keys, indices, low, j);
+                low = i;
+            } else {
+                sort(keys, indices, i, high);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && keys[j - 1] > keys[j]; j--) {
+                swap(keys, indices, j - 1, j);
+            }
+        }
+    }
+
+    private static long medianOfThree(long a, long b, long c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private static void swap(long[] keys, int[] indices, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+
+        int index = indices[i];
+        indices[i] = indices[j];
+        indices[j] = index;
+    }
+}
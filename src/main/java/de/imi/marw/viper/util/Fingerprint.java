@@ -0,0 +1,99 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.util;
+
+/**
+ * Order dependent 128 bit hash over a stream of primitive values. Both halves
+ * are updated with differently seeded MurmurHash3 style mixing.
+ *
+ * @author marius
+ */
+public class Fingerprint {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long high;
+    private long low;
+    private long count;
+
+    public Fingerprint() {
+        this.high = 0x243f6a8885a308d3L;
+        this.low = 0x13198a2e03707344L;
+        this.count = 0;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    public Fingerprint add(long value) {
+        high = Long.rotateLeft(high ^ mix(value * C1), 27) * 5 + 0x52dce729;
+        low = Long.rotateLeft(low ^ mix(value * C2), 31) * 5 + 0x38495ab5;
+        count++;
+        return this;
+    }
+
+    public Fingerprint add(double value) {
+        return add(Double.doubleToLongBits(value));
+    }
+
+    public Fingerprint add(String value) {
+
+        add(value.length());
+
+        for (int i = 0; i < value.length(); i++) {
+            add(value.charAt(i));
+        }
+
+        return this;
+    }
+
+    /**
+     * 64 bit hash of a single string, e.g. to hash dictionary values once.
+     */
+    public static long hash(String value) {
+        return new Fingerprint().add(value).finish()[0];
+    }
+
+    private long[] finish() {
+        long h1 = high ^ count;
+        long h2 = low ^ count;
+
+        h1 += h2;
+        h2 += h1;
+        h1 = mix(h1);
+        h2 = mix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        return new long[]{h1, h2};
+    }
+
+    @Override
+    public String toString() {
+        long[] hash = finish();
+        return String.format("%016x%016x", hash[0], hash[1]);
+    }
+}
@@ -0,0 +1,316 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Classifies and parses numeric csv cells without regular expressions. A cell
+ * is numeric if it is NA or matches {@link Util#FP_REGEX}, and a numeric
+ * collection if it is empty or a list of numeric values separated by the
+ * collection delimiter (optionally followed by whitespace).
+ *
+ * Delimiters that contain regex meta characters or characters that may be
+ * part of a number are handled with the equivalent regular expression.
+ *
+ * @author marius
+ */
+public class NumericScanner {
+
+    public enum CellType {
+        NUMERIC, NUMERIC_COLLECTION, OTHER
+    }
+
+    private static final String REGEX_META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    private final String delimiter;
+    private final Pattern numericCollectionPattern;
+
+    public NumericScanner(String delimiter) {
+
+        if (delimiter.isEmpty()) {
+            throw new IllegalArgumentException("Collection delimiter must not be empty");
+        }
+
+        this.delimiter = delimiter;
+        this.numericCollectionPattern = isScannable(delimiter) ? null : Pattern.compile(
+                "^$|(NA|(" + Util.FP_REGEX + "))(" + delimiter + "\\s*(NA|(" + Util.FP_REGEX + ")))*");
+    }
+
+    private static boolean isScannable(String delimiter) {
+        return delimiter.chars().noneMatch(c -> c <= ' '
+                || Character.isLetterOrDigit(c)
+                || c == '-'
+                || REGEX_META_CHARACTERS.indexOf(c) != -1);
+    }
+
+    /**
+     * Numeric cells are numeric collections as well, the most specific type
+     * is returned.
+     */
+    public CellType classify(String value) {
+
+        if (isNumeric(value)) {
+            return CellType.NUMERIC;
+        }
+
+        return isNumericCollection(value) ? CellType.NUMERIC_COLLECTION : CellType.OTHER;
+    }
+
+    public static boolean isNumeric(String value) {
+        return isNumeric(value, 0, value.length());
+    }
+
+    public boolean isNumericCollection(String value) {
+
+        if (value.isEmpty()) {
+            return true;
+        }
+
+        if (numericCollectionPattern != null) {
+            return numericCollectionPattern.matcher(value).matches();
+        }
+
+        int from = 0;
+
+        while (true) {
+
+            int next = value.indexOf(delimiter, from);
+            int to = next == -1 ? value.length() : next;
+
+            if (!isNumeric(value, from, to)) {
+                return false;
+            }
+
+            if (next == -1) {
+                return true;
+            }
+
+            from = skipWhitespace(value, next + delimiter.length());
+        }
+    }
+
+    /**
+     * @return null for NA, NaN and empty values
+     * @throws NumberFormatException if the value is not numeric
+     */
+    public static Double parseNumeric(String value) {
+        if (value.equals("NA") || value.isEmpty() || value.equals("NaN")) {
+            return null;
+        } else {
+            return Double.parseDouble(value);
+        }
+    }
+
+    /**
+     * Splits the value like {@link String#split(java.lang.String)} does and
+     * parses every element, whitespace following a delimiter is ignored.
+     */
+    public List<Double> parseNumericCollection(String value) {
+
+        if (numericCollectionPattern != null) {
+            return Arrays.stream(value.split(delimiter))
+                    .map(NumericScanner::parseNumeric)
+                    .collect(Collectors.toList());
+        }
+
+        List<Double> numbers = new ArrayList<>();
+        int from = 0;
+        int lastNonEmpty = 0;
+
+        while (true) {
+
+            int next = value.indexOf(delimiter, from);
+            String element = value.substring(from, next == -1 ? value.length() : next);
+
+            numbers.add(parseNumeric(element));
+
+            if (!element.isEmpty()) {
+                lastNonEmpty = numbers.size();
+            }
+
+            if (next == -1) {
+                break;
+            }
+
+            from = skipWhitespace(value, next + delimiter.length());
+        }
+
+        // String.split drops trailing empty elements unless nothing was split
+        if (numbers.size() > 1) {
+            return numbers.subList(0, lastNonEmpty);
+        }
+
+        return numbers;
+    }
+
+    private static int skipWhitespace(String value, int from) {
+
+        while (from < value.length() && isRegexWhitespace(value.charAt(from))) {
+            from++;
+        }
+
+        return from;
+    }
+
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean regionEquals(String value, int from, int to, String expected) {
+        return to - from == expected.length() && value.startsWith(expected, from);
+    }
+
+    /**
+     * Checks whether value[from, to) is NA or a number in the syntax accepted
+     * by {@link Double#parseDouble(java.lang.String)}.
+     */
+    static boolean isNumeric(String value, int from, int to) {
+
+        if (regionEquals(value, from, to, "NA")) {
+            return true;
+        }
+
+        while (from < to && value.charAt(from) <= ' ') {
+            from++;
+        }
+
+        while (to > from && value.charAt(to - 1) <= ' ') {
+            to--;
+        }
+
+        int i = from;
+
+        if (i < to && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+            i++;
+        }
+
+        if (regionEquals(value, i, to, "NaN") || regionEquals(value, i, to, "Infinity")) {
+            return true;
+        }
+
+        if (to - i >= 2 && value.charAt(i) == '0' && (value.charAt(i + 1) == 'x' || value.charAt(i + 1) == 'X')) {
+            i = scanHexSignificand(value, i + 2, to);
+        } else {
+            i = scanDecimal(value, i, to);
+        }
+
+        if (i < 0) {
+            return false;
+        }
+
+        if (i < to && "fFdD".indexOf(value.charAt(i)) != -1) {
+            i++;
+        }
+
+        return i == to;
+    }
+
+    private static int scanDigits(String value, int i, int to) {
+
+        while (i < to && isDigit(value.charAt(i))) {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * @return the position after the number or -1 if there is none
+     */
+    private static int scanDecimal(String value, int i, int to) {
+
+        int integerEnd = scanDigits(value, i, to);
+        boolean hasIntegerDigits = integerEnd > i;
+        i = integerEnd;
+
+        boolean hasFractionDigits = false;
+
+        if (i < to && value.charAt(i) == '.') {
+            int fractionEnd = scanDigits(value, i + 1, to);
+            hasFractionDigits = fractionEnd > i + 1;
+            i = fractionEnd;
+        }
+
+        if (!hasIntegerDigits && !hasFractionDigits) {
+            return -1;
+        }
+
+        if (i < to && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            return scanSignedDigits(value, i + 1, to);
+        }
+
+        return i;
+    }
+
+    private static int scanHexSignificand(String value, int i, int to) {
+
+        int integerEnd = i;
+        while (integerEnd < to && isHexDigit(value.charAt(integerEnd))) {
+            integerEnd++;
+        }
+
+        boolean hasIntegerDigits = integerEnd > i;
+        i = integerEnd;
+
+        boolean hasFractionDigits = false;
+
+        if (i < to && value.charAt(i) == '.') {
+            int fractionEnd = i + 1;
+            while (fractionEnd < to && isHexDigit(value.charAt(fractionEnd))) {
+                fractionEnd++;
+            }
+            hasFractionDigits = fractionEnd > i + 1;
+            i = fractionEnd;
+        }
+
+        if (!hasIntegerDigits && !hasFractionDigits) {
+            return -1;
+        }
+
+        if (i < to && (value.charAt(i) == 'p' || value.charAt(i) == 'P')) {
+            return scanSignedDigits(value, i + 1, to);
+        }
+
+        return -1;
+    }
+
+    private static int scanSignedDigits(String value, int i, int to) {
+
+        if (i < to && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+            i++;
+        }
+
+        int end = scanDigits(value, i, to);
+
+        return end > i ? end : -1;
+    }
+}
@@ -50,4 +50,12 @@ public class Util {
         }
         return val;
     }
+
+    /**
+     * Maps a configured parallelism to a number of threads, values below one
+     * select all available cores.
+     */
+    public static int resolveParallelism(int parallelism) {
+        return parallelism < 1 ? Runtime.getRuntime().availableProcessors() : parallelism;
+    }
 }
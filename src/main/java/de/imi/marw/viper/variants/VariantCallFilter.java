@@ -18,6 +18,8 @@
  */
 package de.imi.marw.viper.variants;
 
+import de.imi.marw.viper.variants.table.VariantTable;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 
@@ -29,4 +31,31 @@ public interface VariantCallFilter {
 
     boolean isPassing(List values, Map<String, Integer> indexMap);
 
+    /**
+     * Determines all unfiltered rows of the table that pass this filter. The
+     * default implementation checks every row using
+     * {@link #isPassing(java.util.List, java.util.Map)}.
+     */
+    default BitSet getPassingRows(VariantTable table) {
+        return getPassingRows(table, 0, table.getNumberOfUnfilteredCalls());
+    }
+
+    /**
+     * Checks the unfiltered rows in [fromRow, toRow) one by one. The returned
+     * set is relative to fromRow, i.e. bit 0 corresponds to row fromRow.
+     */
+    default BitSet getPassingRows(VariantTable table, int fromRow, int toRow) {
+
+        Map<String, Integer> indexMap = table.getColumnIndexMap();
+        BitSet passingRows = new BitSet(toRow - fromRow);
+
+        for (int row = fromRow; row < toRow; row++) {
+            if (isPassing(table.getUnfilteredCall(row), indexMap)) {
+                passingRows.set(row - fromRow);
+            }
+        }
+
+        return passingRows;
+    }
+
 }
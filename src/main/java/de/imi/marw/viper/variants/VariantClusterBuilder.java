@@ -20,12 +20,20 @@ package de.imi.marw.viper.variants;
 
 import de.imi.marw.viper.clustering.Interval;
 import de.imi.marw.viper.clustering.IntervalClusterBuilder;
+import de.imi.marw.viper.util.Util;
 import de.imi.marw.viper.variants.table.VariantTable;
+import de.imi.marw.viper.variants.table.columns.LazyColumn;
+import de.imi.marw.viper.variants.table.columns.NumericColumn;
+import de.imi.marw.viper.variants.table.columns.StringColumn;
+import de.imi.marw.viper.variants.table.columns.VariantColumn;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -37,78 +45,152 @@ public class VariantClusterBuilder {
 
     private final IntervalClusterBuilder intervalClusterer;
     private final boolean useIdentityIndices;
+    private final int parallelism;
 
     public VariantClusterBuilder(int tolerance, boolean useIdendityIndices) {
-        this.intervalClusterer = new IntervalClusterBuilder(tolerance);
+        this(new IntervalClusterBuilder(tolerance), useIdendityIndices);
+    }
+
+    public VariantClusterBuilder(IntervalClusterBuilder intervalClusterer, boolean useIdendityIndices) {
+        this(intervalClusterer, useIdendityIndices, 1);
+    }
+
+    /**
+     * @param parallelism number of threads used to cluster and combine calls,
+     * 0 uses all available cores
+     */
+    public VariantClusterBuilder(IntervalClusterBuilder intervalClusterer, boolean useIdendityIndices, int parallelism) {
+        this.intervalClusterer = intervalClusterer;
         this.useIdentityIndices = useIdendityIndices;
+        this.parallelism = Util.resolveParallelism(parallelism);
     }
 
-    private String getSequenceKey(List variantCall, Map<String, Integer> indexMap) {
+    /**
+     * Applies the function to all items, concurrently if a pool is given. The
+     * results are always in the order of the items.
+     */
+    private static <T, R> List<R> mapOrdered(ForkJoinPool pool, List<T> items, Function<T, R> function) {
 
-        String chr1 = variantCall.get(indexMap.get(VariantTable.CHR1_COLUMN_NAME)).toString();
-        String chr2 = variantCall.get(indexMap.get(VariantTable.CHR2_COLUMN_NAME)).toString();
-        String type = variantCall.get(indexMap.get(VariantTable.TYPE_COLUMN_NAME)).toString();
+        if (pool == null) {
+            return items.stream().map(function).collect(Collectors.toList());
+        }
 
-        return chr1 + "-" + chr2 + "-" + type;
+        return pool.submit(() -> items.parallelStream().map(function).collect(Collectors.toList())).join();
     }
 
-    private Collection<String> getSequenceKeys(VariantTable table) {
-        Collection<String> keys = table.getRawCalls().stream()
-                .map((variantCall) -> getSequenceKey(variantCall, table.getColumnIndexMap()))
-                .distinct()
-                .collect(Collectors.toList());
+    /**
+     * Maps every row to a code that is equal for equal values of the column.
+     */
+    private int[] encodeColumn(VariantColumn column) {
+
+        int[] codes = new int[column.size()];
+
+        if (column instanceof StringColumn) {
+
+            StringColumn stringColumn = (StringColumn) column;
 
-        return keys;
+            for (int row = 0; row < codes.length; row++) {
+                codes[row] = stringColumn.getCode(row);
+            }
+
+        } else {
+
+            Map<String, Integer> valueCodes = new HashMap<>();
+
+            for (int row = 0; row < codes.length; row++) {
+                codes[row] = valueCodes.computeIfAbsent(column.get(row).toString(), value -> valueCodes.size());
+            }
+        }
+
+        return codes;
     }
 
-    private List<Collection<Integer>> clusterTableByKey(VariantTable unclustered, String matchingSequenceKey) {
-        List<List<Object>> rawCalls = unclustered.getRawCalls();
-        List<Interval> matchingCalls = IntStream.range(0, unclustered.getNumberOfCalls())
-                .boxed()
-                .map((rowIndex) -> {
+    private static long pair(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
 
-                    List call = rawCalls.get(rowIndex);
-                    Map<String, Integer> indexMap = unclustered.getColumnIndexMap();
+    /**
+     * Groups the rows by chr1, chr2 and type in a single pass. Groups are
+     * ordered by their first row, rows within a group are ascending.
+     */
+    private List<int[]> groupRowsBySequenceKey(VariantTable table) {
 
-                    String sequenceKey = getSequenceKey(call, indexMap);
-                    int bp1 = ((Double) call.get(indexMap.get(VariantTable.BP1_COLUMN_NAME))).intValue();
-                    int bp2 = ((Double) call.get(indexMap.get(VariantTable.BP2_COLUMN_NAME))).intValue();
+        int[] chr1Codes = encodeColumn(table.getColumn(VariantTable.CHR1_COLUMN_NAME));
+        int[] chr2Codes = encodeColumn(table.getColumn(VariantTable.CHR2_COLUMN_NAME));
+        int[] typeCodes = encodeColumn(table.getColumn(VariantTable.TYPE_COLUMN_NAME));
 
-                    return new VariantInterval(sequenceKey, bp1, bp2, rowIndex);
-                })
-                .filter((variantInterval) -> variantInterval.getSequenceKey().equals(matchingSequenceKey))
-                .collect(Collectors.toList());
+        int numberOfRows = table.getNumberOfUnfilteredCalls();
+
+        Map<Long, Integer> chromosomePairCodes = new HashMap<>();
+        Map<Long, Integer> groupCodes = new HashMap<>();
 
-        List<Collection<Integer>> clusters = intervalClusterer.clusterIntervals(matchingCalls).stream()
+        int[] groupOfRow = new int[numberOfRows];
+        int[] groupSizes = new int[16];
+
+        for (int row = 0; row < numberOfRows; row++) {
+
+            int chromosomePair = chromosomePairCodes.computeIfAbsent(pair(chr1Codes[row], chr2Codes[row]), key -> chromosomePairCodes.size());
+            int group = groupCodes.computeIfAbsent(pair(chromosomePair, typeCodes[row]), key -> groupCodes.size());
+
+            if (group == groupSizes.length) {
+                groupSizes = Arrays.copyOf(groupSizes, groupSizes.length * 2);
+            }
+
+            groupOfRow[row] = group;
+            groupSizes[group]++;
+        }
+
+        List<int[]> groups = new ArrayList<>(groupCodes.size());
+
+        for (int group = 0; group < groupCodes.size(); group++) {
+            groups.add(new int[groupSizes[group]]);
+        }
+
+        int[] groupFill = new int[groupCodes.size()];
+
+        for (int row = 0; row < numberOfRows; row++) {
+            int group = groupOfRow[row];
+            groups.get(group)[groupFill[group]++] = row;
+        }
+
+        return groups;
+    }
+
+    private List<Collection<Integer>> clusterRows(int[] rows, NumericColumn bp1Column, NumericColumn bp2Column) {
+
+        List<Interval> intervals = new ArrayList<>(rows.length);
+
+        for (int row : rows) {
+            intervals.add(new Interval((int) bp1Column.getDouble(row), (int) bp2Column.getDouble(row)));
+        }
+
+        return intervalClusterer.clusterIntervals(intervals).stream()
                 .map((cluster) -> {
 
                     return cluster.stream()
-                            .map((i) -> ((VariantInterval) matchingCalls.get(i)).getTableIndex())
+                            .map((i) -> rows[i])
                             .collect(Collectors.toList());
                 })
                 .collect(Collectors.toList());
-
-        return clusters;
     }
 
-    private List<Collection<Integer>> computeClusterIndices(VariantTable unclustered) {
+    private List<Collection<Integer>> computeClusterIndices(VariantTable unclustered, ForkJoinPool pool) {
 
         if (this.useIdentityIndices) {
-            return IntStream.range(0, unclustered.getNumberOfCalls())
+            return IntStream.range(0, unclustered.getNumberOfUnfilteredCalls())
                     .boxed()
                     .map(index -> Arrays.asList(new Integer[]{index}))
                     .collect(Collectors.toList());
         }
 
-        Collection<String> sequenceKeys = getSequenceKeys(unclustered);
-
-        List<Collection<Integer>> clusters = new ArrayList<>();
+        NumericColumn bp1Column = (NumericColumn) unclustered.getColumn(VariantTable.BP1_COLUMN_NAME);
+        NumericColumn bp2Column = (NumericColumn) unclustered.getColumn(VariantTable.BP2_COLUMN_NAME);
 
-        for (String sequenceKey : sequenceKeys) {
-            List<Collection<Integer>> keyClusters = clusterTableByKey(unclustered, sequenceKey);
+        List<List<Collection<Integer>>> groupClusters = mapOrdered(pool, groupRowsBySequenceKey(unclustered),
+                rows -> clusterRows(rows, bp1Column, bp2Column));
 
-            clusters.addAll(keyClusters);
-        }
+        List<Collection<Integer>> clusters = new ArrayList<>();
+        groupClusters.forEach(clusters::addAll);
 
         return clusters;
     }
@@ -160,26 +242,13 @@ public class VariantClusterBuilder {
         return String.format("VAR%0" + maxIndexLength + "d", index + 1);
     }
 
-    private List combineCalls(Collection<List> callCluster, Map<String, Integer> indexMap, List<VariantPropertyType> types) {
-
-        Object[] combinedRow = new Object[indexMap.size()];
-
-        indexMap.forEach((key, value) -> {
-
-            Collection values = callCluster.stream()
-                    .map((call) -> call.get(value))
-                    .collect(Collectors.toList());
-
-            combinedRow[value] = combineProperties(values, types.get(value));
+    private Object combineColumn(VariantTable unclustered, Collection<Integer> indexCluster, String columnName, VariantPropertyType type) {
 
-        });
-
-        List combinedCall = new ArrayList<>();
-        for (Object object : combinedRow) {
-            combinedCall.add(object);
-        }
+        Collection values = indexCluster.stream()
+                .map((index) -> unclustered.getUnfilteredCallProperty(index, columnName))
+                .collect(Collectors.toList());
 
-        return combinedCall;
+        return combineProperties(values, type);
     }
 
     public List<VariantPropertyType> getNewClusterTypes(List<VariantPropertyType> unclusteredTypes) {
@@ -202,58 +271,82 @@ public class VariantClusterBuilder {
 
     public VariantTableCluster clusterVariantTable(VariantTable unclustered) {
 
-        List<Collection<Integer>> indexClusters = computeClusterIndices(unclustered);
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
 
-        List<List<Object>> clusteredCalls = new ArrayList<>();
+        try {
+            return clusterVariantTable(unclustered, pool);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
 
-        for (int i = 0; i < indexClusters.size(); i++) {
+    private VariantTableCluster clusterVariantTable(VariantTable unclustered, ForkJoinPool pool) {
 
-            Collection<Integer> indexCluster = indexClusters.get(i);
+        List<Collection<Integer>> indexClusters = computeClusterIndices(unclustered, pool);
 
-            Collection<List> callCluster = indexCluster.stream()
-                    .map((index) -> unclustered.getRawCalls().get(index))
-                    .collect(Collectors.toList());
+        List<String> columnNames = unclustered.getColumnNames();
+        List<VariantPropertyType> types = unclustered.getTypes();
+        List<VariantPropertyType> newTypes = getNewClusterTypes(types);
 
-            List combinedCall = combineCalls(callCluster, unclustered.getColumnIndexMap(), unclustered.getTypes());
-            clusteredCalls.add(combinedCall);
-        }
+        // columns that are not decoded yet are combined on first use as well
+        List<Integer> eagerColumns = IntStream.range(0, columnNames.size())
+                .filter(i -> unclustered.isColumnMaterialized(columnNames.get(i)))
+                .boxed()
+                .collect(Collectors.toList());
 
-        for (int i = 0; i < clusteredCalls.size(); i++) {
-            clusteredCalls.get(i).add(0, "NA");
-            clusteredCalls.get(i).add(0, getClusterName(i, indexClusters.size()));
+        // cluster names only depend on the position in this list
+        List<List<Object>> combinedValues = mapOrdered(pool, indexClusters, indexCluster -> eagerColumns.stream()
+                .map(i -> combineColumn(unclustered, indexCluster, columnNames.get(i), types.get(i)))
+                .collect(Collectors.toList()));
+
+        int numberOfClusters = indexClusters.size();
+
+        VariantColumn idColumn = VariantColumn.create(VariantPropertyType.STRING, numberOfClusters);
+        VariantColumn decisionColumn = VariantColumn.create(VariantPropertyType.STRING, numberOfClusters);
+
+        for (int i = 0; i < numberOfClusters; i++) {
+            idColumn.add(getClusterName(i, numberOfClusters));
+            decisionColumn.add("NA");
         }
 
-        List<String> clusteredColumnNames = new ArrayList<>();
-        clusteredColumnNames.add(VariantTable.ID_COLUMN_NAME);
-        clusteredColumnNames.add(VariantTable.DECISION_COLUMN_NAME);
-        clusteredColumnNames.addAll(unclustered.getColumnNames());
+        List<LazyColumn> clusteredColumns = new ArrayList<>();
+        clusteredColumns.add(LazyColumn.of(idColumn));
+        clusteredColumns.add(LazyColumn.of(decisionColumn));
 
-        List<VariantPropertyType> clusteredTypes = getNewClusterTypes(unclustered.getTypes());
-        clusteredTypes.add(0, VariantPropertyType.STRING);
-        clusteredTypes.add(0, VariantPropertyType.STRING);
+        for (int i = 0; i < columnNames.size(); i++) {
 
-        VariantTable clusteredTable = new VariantTable(clusteredCalls, clusteredColumnNames, clusteredTypes);
-        return new VariantTableCluster(unclustered, clusteredTable, indexClusters);
-    }
+            String columnName = columnNames.get(i);
+            VariantPropertyType type = types.get(i);
+            int eagerIndex = eagerColumns.indexOf(i);
 
-    private static final class VariantInterval extends Interval {
+            if (eagerIndex == -1) {
+                clusteredColumns.add(new LazyColumn(newTypes.get(i), numberOfClusters,
+                        row -> combineColumn(unclustered, indexClusters.get(row), columnName, type)));
+                continue;
+            }
 
-        private final int tableIndex;
-        private final String sequenceKey;
+            VariantColumn column = VariantColumn.create(newTypes.get(i), numberOfClusters);
 
-        public VariantInterval(String chromosomeKey, int start, int end, int tableIndex) {
-            super(start, end);
-            this.tableIndex = tableIndex;
-            this.sequenceKey = chromosomeKey;
-        }
+            for (List<Object> values : combinedValues) {
+                column.add(values.get(eagerIndex));
+            }
 
-        public int getTableIndex() {
-            return tableIndex;
+            column.trimToSize();
+            clusteredColumns.add(LazyColumn.of(column));
         }
 
-        public String getSequenceKey() {
-            return sequenceKey;
-        }
+        List<String> clusteredColumnNames = new ArrayList<>();
+        clusteredColumnNames.add(VariantTable.ID_COLUMN_NAME);
+        clusteredColumnNames.add(VariantTable.DECISION_COLUMN_NAME);
+        clusteredColumnNames.addAll(columnNames);
 
+        List<VariantPropertyType> clusteredTypes = new ArrayList<>(newTypes);
+        clusteredTypes.add(0, VariantPropertyType.STRING);
+        clusteredTypes.add(0, VariantPropertyType.STRING);
+
+        VariantTable clusteredTable = VariantTable.fromLazyColumns(clusteredColumns, clusteredColumnNames, clusteredTypes);
+        return new VariantTableCluster(unclustered, clusteredTable, indexClusters);
     }
 }
@@ -0,0 +1,371 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants;
+
+import de.imi.marw.viper.variants.table.CsvTableReader;
+import de.imi.marw.viper.variants.table.VariantTable;
+import de.imi.marw.viper.variants.table.columns.VariantColumn;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores the unclustered table, the clustered table and the mapping between
+ * them in a binary file in the work directory, so that restarting on the same
+ * input neither parses nor clusters again. Cache files are identified by a key
+ * created with {@link #createKey(java.io.File, java.lang.String)}.
+ *
+ * The file consists of sections prefixed by their length: the header, the
+ * column names and every single column of both tables, and the row mapping.
+ * Sections are memory mapped one by one, so only a single section is limited
+ * to 2 GB.
+ *
+ * @author marius
+ */
+public class VariantTableClusterCache {
+
+    private static final String FILE_PREFIX = "table-cache.";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final long MAGIC = 0x5649504552544243L;
+    private static final int FORMAT_VERSION = 2;
+
+    private final Path workDir;
+
+    public VariantTableClusterCache(String workDir) {
+        this.workDir = Paths.get(workDir);
+    }
+
+    /**
+     * The key covers the analysis file and its schema file, if present.
+     *
+     * @param options all settings that influence reading and clustering the
+     * analysis file
+     */
+    public static String createKey(File analysisFile, String options) throws IOException {
+
+        File schemaFile = new File(analysisFile.getPath() + CsvTableReader.SCHEMA_FILE_SUFFIX);
+
+        String description = analysisFile.getCanonicalPath()
+                + "\n" + analysisFile.length()
+                + "\n" + analysisFile.lastModified()
+                + "\n" + (schemaFile.isFile() ? "schema " + schemaFile.length() + " " + schemaFile.lastModified() : "no schema")
+                + "\n" + options;
+
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(description.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder key = new StringBuilder();
+
+            for (int i = 0; i < 16; i++) {
+                key.append(String.format("%02x", hash[i]));
+            }
+
+            return key.toString();
+
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    public Path getCachePath(String key) {
+        return workDir.resolve(FILE_PREFIX + key + FILE_SUFFIX);
+    }
+
+    /**
+     * @return the cached tables, or null if there is no readable cache file for
+     * this key
+     */
+    public VariantTableCluster load(String key) {
+
+        Path cachePath = getCachePath(key);
+
+        if (!Files.exists(cachePath)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+
+            return readCluster(new SectionReader(channel), key);
+
+        } catch (IOException | RuntimeException ex) {
+            Logger.getLogger(VariantTableClusterCache.class.getName()).log(Level.SEVERE, "Ignoring unreadable table cache " + cachePath, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the cache file for this key and removes cache files of other
+     * inputs.
+     */
+    public boolean save(String key, VariantTableCluster cluster) {
+
+        Path cachePath = getCachePath(key);
+        Path tempPath = workDir.resolve(cachePath.getFileName() + ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeCluster(new SectionWriter(channel), key, cluster);
+            }
+
+            Files.move(tempPath, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            deleteOtherCaches(cachePath);
+
+            return true;
+
+        } catch (IOException ex) {
+            Logger.getLogger(VariantTableClusterCache.class.getName()).log(Level.SEVERE, "Could not write table cache " + cachePath, ex);
+
+            try {
+                Files.deleteIfExists(tempPath);
+            } catch (IOException deleteEx) {
+                Logger.getLogger(VariantTableClusterCache.class.getName()).log(Level.SEVERE, null, deleteEx);
+            }
+
+            return false;
+        }
+    }
+
+    private void deleteOtherCaches(Path cachePath) throws IOException {
+
+        try (DirectoryStream<Path> caches = Files.newDirectoryStream(workDir, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+
+            for (Path cache : caches) {
+                if (!cache.getFileName().equals(cachePath.getFileName())) {
+                    Files.deleteIfExists(cache);
+                }
+            }
+        }
+    }
+
+    private void writeCluster(SectionWriter writer, String key, VariantTableCluster cluster) throws IOException {
+
+        DataOutputStream out = writer.beginSection();
+        out.writeLong(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, key);
+        writer.endSection();
+
+        writeTable(writer, cluster.getUnclusteredTable());
+        writeTable(writer, cluster.getClusteredTable());
+
+        List<Collection<Integer>> rowMapCluster = cluster.getRowMapCluster();
+
+        out = writer.beginSection();
+        out.writeInt(rowMapCluster.size());
+
+        for (Collection<Integer> rows : rowMapCluster) {
+
+            out.writeInt(rows.size());
+
+            for (int row : rows) {
+                out.writeInt(row);
+            }
+        }
+
+        writer.endSection();
+    }
+
+    private VariantTableCluster readCluster(SectionReader reader, String key) throws IOException {
+
+        ByteBuffer buffer = reader.nextSection();
+
+        if (buffer.getLong() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Not a table cache of this version");
+        }
+
+        if (!key.equals(readString(buffer))) {
+            throw new IllegalArgumentException("Table cache was written for another input");
+        }
+
+        VariantTable unclusteredTable = readTable(reader);
+        VariantTable clusteredTable = readTable(reader);
+
+        buffer = reader.nextSection();
+        int numberOfClusters = buffer.getInt();
+
+        if (numberOfClusters != clusteredTable.getNumberOfUnfilteredCalls()) {
+            throw new IllegalArgumentException("Table cache contains " + numberOfClusters + " clusters for " + clusteredTable.getNumberOfUnfilteredCalls() + " clustered calls");
+        }
+
+        List<Collection<Integer>> rowMapCluster = new ArrayList<>(numberOfClusters);
+
+        for (int i = 0; i < numberOfClusters; i++) {
+
+            int size = buffer.getInt();
+            List<Integer> rows = new ArrayList<>(size);
+
+            for (int j = 0; j < size; j++) {
+                rows.add(buffer.getInt());
+            }
+
+            rowMapCluster.add(rows);
+        }
+
+        return new VariantTableCluster(unclusteredTable, clusteredTable, rowMapCluster);
+    }
+
+    private void writeTable(SectionWriter writer, VariantTable table) throws IOException {
+
+        List<String> columnNames = table.getColumnNames();
+
+        DataOutputStream out = writer.beginSection();
+        out.writeInt(columnNames.size());
+
+        for (String columnName : columnNames) {
+            writeString(out, columnName);
+        }
+
+        writer.endSection();
+
+        for (String columnName : columnNames) {
+            table.writeColumn(columnName, writer.beginSection());
+            writer.endSection();
+        }
+    }
+
+    private VariantTable readTable(SectionReader reader) throws IOException {
+
+        ByteBuffer buffer = reader.nextSection();
+        int numberOfColumns = buffer.getInt();
+
+        List<String> columnNames = new ArrayList<>(numberOfColumns);
+        List<VariantColumn> columns = new ArrayList<>(numberOfColumns);
+        List<VariantPropertyType> types = new ArrayList<>(numberOfColumns);
+
+        for (int i = 0; i < numberOfColumns; i++) {
+            columnNames.add(readString(buffer));
+        }
+
+        for (int i = 0; i < numberOfColumns; i++) {
+
+            VariantColumn column = VariantColumn.read(reader.nextSection());
+
+            columns.add(column);
+            types.add(column.getType());
+        }
+
+        return VariantTable.fromColumns(columns, columnNames, types);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes sections prefixed by their length, which is filled in when the
+     * section ends.
+     */
+    private static class SectionWriter {
+
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private long sectionStart;
+
+        public SectionWriter(FileChannel channel) {
+            this.channel = channel;
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            this.sectionStart = -1;
+        }
+
+        public DataOutputStream beginSection() throws IOException {
+
+            out.flush();
+            sectionStart = channel.position();
+            out.writeLong(0);
+
+            return out;
+        }
+
+        public void endSection() throws IOException {
+
+            out.flush();
+            long length = channel.position() - sectionStart - Long.BYTES;
+
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Table cache section of " + length + " bytes exceeds the maximal size of " + Integer.MAX_VALUE + " bytes");
+            }
+
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(Long.BYTES).putLong(0, length);
+
+            while (lengthBuffer.hasRemaining()) {
+                channel.write(lengthBuffer, sectionStart + lengthBuffer.position());
+            }
+        }
+    }
+
+    private static class SectionReader {
+
+        private final FileChannel channel;
+        private long position;
+
+        public SectionReader(FileChannel channel) {
+            this.channel = channel;
+            this.position = 0;
+        }
+
+        public ByteBuffer nextSection() throws IOException {
+
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(Long.BYTES);
+
+            while (lengthBuffer.hasRemaining()) {
+                if (channel.read(lengthBuffer, position + lengthBuffer.position()) < 0) {
+                    throw new IllegalArgumentException("Table cache ends before section at " + position);
+                }
+            }
+
+            long length = lengthBuffer.getLong(0);
+
+            if (length < 0 || length > Integer.MAX_VALUE || position + Long.BYTES + length > channel.size()) {
+                throw new IllegalArgumentException("Invalid table cache section of " + length + " bytes at " + position);
+            }
+
+            ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, position + Long.BYTES, length);
+            position += Long.BYTES + length;
+
+            return section;
+        }
+    }
+}
@@ -19,6 +19,10 @@
 package de.imi.marw.viper.variants.filters;
 
 import de.imi.marw.viper.variants.VariantPropertyType;
+import de.imi.marw.viper.variants.table.columns.SortedIndex;
+import de.imi.marw.viper.variants.table.columns.VariantColumn;
+import java.util.BitSet;
+import java.util.Objects;
 
 /**
  *
@@ -43,6 +47,63 @@ public abstract class AbstractNumericalFilter<T> extends SingleColumnFilter<T> {
         return (value == null && this.nullAllowed) || (value != null && value >= selectedMin && value <= selectedMax);
     }
 
+    @Override
+    protected BitSet getPassingRows(VariantColumn column) {
+
+        SortedIndex index = (SortedIndex) column.getIndex();
+        BitSet passingRows = new BitSet(column.size());
+
+        index.addRowsInRange(selectedMin, selectedMax, passingRows);
+
+        if (nullAllowed) {
+            index.addRowsWithMissingValues(passingRows);
+        }
+
+        return passingRows;
+    }
+
+    @Override
+    public boolean isNarrowing(SingleColumnFilter<?> previous) {
+
+        if (previous == null || getClass() != previous.getClass() || !getColumnName().equals(previous.getColumnName())) {
+            return false;
+        }
+
+        AbstractNumericalFilter<?> other = (AbstractNumericalFilter<?>) previous;
+
+        return selectedMin >= other.selectedMin
+                && selectedMax <= other.selectedMax
+                && (!nullAllowed || other.nullAllowed);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 41 * hash + Objects.hashCode(getColumnName());
+        hash = 41 * hash + Double.hashCode(this.selectedMin);
+        hash = 41 * hash + Double.hashCode(this.selectedMax);
+        hash = 41 * hash + Boolean.hashCode(this.nullAllowed);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final AbstractNumericalFilter<?> other = (AbstractNumericalFilter<?>) obj;
+        return Objects.equals(getColumnName(), other.getColumnName())
+                && Double.compare(this.selectedMin, other.selectedMin) == 0
+                && Double.compare(this.selectedMax, other.selectedMax) == 0
+                && this.nullAllowed == other.nullAllowed;
+    }
+
     public double getSelectedMin() {
         return selectedMin;
     }
@@ -19,7 +19,11 @@
 package de.imi.marw.viper.variants.filters;
 
 import de.imi.marw.viper.variants.VariantPropertyType;
+import de.imi.marw.viper.variants.table.columns.BitmapIndex;
+import de.imi.marw.viper.variants.table.columns.VariantColumn;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -35,6 +39,63 @@ public abstract class AbstractStringFilter<T> extends SingleColumnFilter<T> {
         this.allowedValues = new HashSet<>();
     }
 
+    @Override
+    protected BitSet getPassingRows(VariantColumn column) {
+
+        BitSet passingRows = new BitSet(column.size());
+
+        if (allowedValues.isEmpty()) {
+            passingRows.set(0, column.size());
+            return passingRows;
+        }
+
+        BitmapIndex index = (BitmapIndex) column.getIndex();
+
+        for (String allowedValue : allowedValues) {
+            index.addRows(allowedValue, passingRows);
+        }
+
+        return passingRows;
+    }
+
+    @Override
+    public boolean isNarrowing(SingleColumnFilter<?> previous) {
+
+        if (previous == null || getClass() != previous.getClass() || !getColumnName().equals(previous.getColumnName())) {
+            return false;
+        }
+
+        Set<String> previousAllowedValues = ((AbstractStringFilter<?>) previous).allowedValues;
+
+        // an empty set of allowed values does not restrict the column at all
+        return previousAllowedValues.isEmpty()
+                || (!allowedValues.isEmpty() && previousAllowedValues.containsAll(allowedValues));
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 5;
+        hash = 37 * hash + Objects.hashCode(getColumnName());
+        hash = 37 * hash + Objects.hashCode(this.allowedValues);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final AbstractStringFilter<?> other = (AbstractStringFilter<?>) obj;
+        return Objects.equals(getColumnName(), other.getColumnName())
+                && Objects.equals(this.allowedValues, other.allowedValues);
+    }
+
     public Set<String> getAllowedValues() {
         return allowedValues;
     }
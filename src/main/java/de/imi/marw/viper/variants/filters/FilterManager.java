@@ -22,8 +22,13 @@ import de.imi.marw.viper.variants.VariantCallFilter;
 import de.imi.marw.viper.variants.VariantPropertyType;
 import de.imi.marw.viper.variants.table.VariantTable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  *
@@ -32,38 +37,158 @@ import java.util.List;
 public class FilterManager {
 
     private Collection<VariantCallFilter> filters;
+    private VariantTable defaultsTable;
+    private Map<String, PassSet> passSets;
+    private BitSet currentPassingRows;
+    private final ParallelFilterEvaluator evaluator;
 
-    public void loadFromTable(VariantTable table) {
+    public FilterManager() {
+        this(new ParallelFilterEvaluator());
+    }
+
+    public FilterManager(ParallelFilterEvaluator evaluator) {
+        this.passSets = new HashMap<>();
+        this.currentPassingRows = null;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Uses filters spanning all values of the table's columns. They are only
+     * generated when the filters are requested first, reading single values
+     * so that lazy columns are not materialized.
+     */
+    public synchronized void loadFromTable(VariantTable table) {
+        this.defaultsTable = table;
+        this.filters = null;
+    }
+
+    public synchronized Collection<VariantCallFilter> getFilters() {
+
+        if (filters == null && defaultsTable != null) {
+            filters = generateFilters(defaultsTable);
+        }
+
+        return filters;
+    }
+
+    public synchronized void setFilters(Collection<VariantCallFilter> filters) {
+        this.filters = filters;
+    }
+
+    private Collection<VariantCallFilter> generateFilters(VariantTable table) {
 
         Collection<VariantCallFilter> generatedFilters = new ArrayList<>();
 
         for (String columnName : table.getColumnNames()) {
 
             VariantPropertyType type = table.getColumnType(columnName);
-            List<Object> columnCalls = table.getUnfilteredColumn(columnName);
+            Stream<Object> columnCalls = IntStream.range(0, table.getNumberOfUnfilteredCalls())
+                    .mapToObj(row -> table.getUnfilteredCallProperty(row, columnName));
 
             VariantCallFilter filter = generateFilterFromColumn(columnCalls, type, columnName);
 
             generatedFilters.add(filter);
         }
 
-        this.filters = generatedFilters;
+        return generatedFilters;
     }
 
-    public Collection<VariantCallFilter> getFilters() {
-        return filters;
-    }
+    /**
+     * Filters the table and remembers the rows passing each single column
+     * filter. On the next call only filters that differ from the previously
+     * applied ones (or whose column was modified in the meantime) are
+     * evaluated again. If all changes can only remove rows, the previous
+     * result is narrowed directly instead of intersecting all pass sets.
+     *
+     * Applied filters must not be modified afterwards, pass new instances
+     * instead.
+     */
+    public synchronized void applyFilters(VariantTable table, Collection<VariantCallFilter> newFilters) {
+
+        Map<String, PassSet> newPassSets = new HashMap<>();
+        List<VariantCallFilter> filtersToEvaluate = new ArrayList<>();
+        List<Integer> columnVersions = new ArrayList<>();
+
+        boolean isNarrowingOnly = this.currentPassingRows != null;
+
+        for (VariantCallFilter filter : newFilters) {
+
+            if (!(filter instanceof SingleColumnFilter) || newPassSets.containsKey(((SingleColumnFilter) filter).getColumnName())) {
+                isNarrowingOnly = false;
+                filtersToEvaluate.add(filter);
+                columnVersions.add(null);
+                continue;
+            }
 
-    public void setFilters(Collection<VariantCallFilter> filters) {
-        this.filters = filters;
+            SingleColumnFilter<?> singleColumnFilter = (SingleColumnFilter<?>) filter;
+            String columnName = singleColumnFilter.getColumnName();
+            int columnVersion = table.getColumn(columnName).getVersion();
+
+            PassSet previous = this.passSets.get(columnName);
+
+            if (previous != null && previous.isValidFor(singleColumnFilter, columnVersion)) {
+                newPassSets.put(columnName, previous);
+                continue;
+            }
+
+            boolean isNarrowing = previous == null
+                    || (previous.columnVersion == columnVersion && singleColumnFilter.isNarrowing(previous.filter));
+
+            isNarrowingOnly &= isNarrowing;
+
+            // reserve the column, the pass set is added after evaluation
+            newPassSets.put(columnName, null);
+            filtersToEvaluate.add(filter);
+            columnVersions.add(columnVersion);
+        }
+
+        // removing a filter can only add rows
+        isNarrowingOnly &= newPassSets.keySet().containsAll(this.passSets.keySet());
+
+        List<BitSet> evaluatedPassingRows = evaluator.getPassingRows(table, filtersToEvaluate);
+        List<BitSet> uncachedPassingRows = new ArrayList<>();
+
+        for (int i = 0; i < filtersToEvaluate.size(); i++) {
+
+            Integer columnVersion = columnVersions.get(i);
+            BitSet passingRows = evaluatedPassingRows.get(i);
+
+            if (columnVersion == null) {
+                uncachedPassingRows.add(passingRows);
+            } else {
+                SingleColumnFilter<?> filter = (SingleColumnFilter<?>) filtersToEvaluate.get(i);
+                newPassSets.put(filter.getColumnName(), new PassSet(filter, columnVersion, passingRows));
+            }
+        }
+
+        BitSet passingRows;
+
+        if (isNarrowingOnly) {
+
+            passingRows = (BitSet) this.currentPassingRows.clone();
+            evaluatedPassingRows.forEach(passingRows::and);
+
+        } else {
+
+            List<BitSet> allPassingRows = new ArrayList<>(uncachedPassingRows);
+            newPassSets.values().forEach(passSet -> allPassingRows.add(passSet.passingRows));
+
+            passingRows = evaluator.intersect(table, allPassingRows);
+        }
+
+        table.setSoftFilter(passingRows);
+
+        this.filters = newFilters;
+        this.passSets = newPassSets;
+        this.currentPassingRows = passingRows;
     }
 
-    private VariantCallFilter generateFilterFromColumn(List<Object> columnCalls, VariantPropertyType type, String columnName) {
+    private VariantCallFilter generateFilterFromColumn(Stream<Object> columnCalls, VariantPropertyType type, String columnName) {
 
         switch (type) {
 
             case NUMERIC: {
-                double[] values = columnCalls.stream()
+                double[] values = columnCalls
                         .filter(d -> d != null)
                         .mapToDouble(i -> (Double) i)
                         .distinct()
@@ -81,7 +206,7 @@ public class FilterManager {
             }
 
             case NUMERIC_COLLECTION: {
-                double[] values = columnCalls.stream()
+                double[] values = columnCalls
                         .filter(d -> d != null)
                         .flatMapToDouble(c -> ((Collection<Double>) c).stream().filter(d -> d != null).mapToDouble(e -> e))
                         .distinct()
@@ -107,4 +232,21 @@ public class FilterManager {
 
     }
 
+    private static class PassSet {
+
+        private final SingleColumnFilter<?> filter;
+        private final int columnVersion;
+        private final BitSet passingRows;
+
+        public PassSet(SingleColumnFilter<?> filter, int columnVersion, BitSet passingRows) {
+            this.filter = filter;
+            this.columnVersion = columnVersion;
+            this.passingRows = passingRows;
+        }
+
+        public boolean isValidFor(SingleColumnFilter<?> otherFilter, int otherColumnVersion) {
+            return columnVersion == otherColumnVersion && filter.equals(otherFilter);
+        }
+    }
+
 }
@@ -0,0 +1,155 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.filters;
+
+import de.imi.marw.viper.util.Util;
+import de.imi.marw.viper.variants.VariantCallFilter;
+import de.imi.marw.viper.variants.table.VariantTable;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ *
+ * @author marius
+ */
+public class ParallelFilterEvaluator {
+
+    // multiple of 64 so that blocks never share a word of the merged bit set
+    public static final int BLOCK_SIZE = 1 << 16;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    public ParallelFilterEvaluator() {
+        this(1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param parallelism number of worker threads, 0 uses all available cores
+     * and 1 disables parallel evaluation
+     * @param threshold minimal number of rows for which filters are evaluated
+     * in parallel
+     */
+    public ParallelFilterEvaluator(int parallelism, int threshold) {
+
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Parallel filtering threshold must not be negative, but is " + threshold);
+        }
+
+        int threads = Util.resolveParallelism(parallelism);
+
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        this.threshold = threshold;
+    }
+
+    public boolean isParallel(VariantTable table) {
+        return pool != null && table.getNumberOfUnfilteredCalls() >= threshold;
+    }
+
+    /**
+     * Evaluates all filters on the table. Filters backed by a column index are
+     * evaluated concurrently, all others are evaluated concurrently in blocks
+     * of {@link #BLOCK_SIZE} rows.
+     */
+    public List<BitSet> getPassingRows(VariantTable table, List<VariantCallFilter> filters) {
+
+        if (!isParallel(table)) {
+            return filters.stream()
+                    .map(filter -> filter.getPassingRows(table))
+                    .collect(Collectors.toList());
+        }
+
+        return pool.submit(() -> filters.parallelStream()
+                .map(filter -> filter instanceof SingleColumnFilter
+                        ? filter.getPassingRows(table)
+                        : getPassingRowsInBlocks(table, filter))
+                .collect(Collectors.toList())
+        ).join();
+    }
+
+    /**
+     * Intersects the given sets, all rows of the table pass if no set is
+     * given.
+     */
+    public BitSet intersect(VariantTable table, List<BitSet> passingRows) {
+
+        int numberOfRows = table.getNumberOfUnfilteredCalls();
+
+        if (!isParallel(table)) {
+            BitSet intersection = new BitSet(numberOfRows);
+            intersection.set(0, numberOfRows);
+            passingRows.forEach(intersection::and);
+            return intersection;
+        }
+
+        return mergeBlocks(numberOfRows, (fromRow, toRow) -> {
+
+            BitSet block = new BitSet(toRow - fromRow);
+            block.set(0, toRow - fromRow);
+
+            for (BitSet rows : passingRows) {
+                block.and(rows.get(fromRow, toRow));
+            }
+
+            return block;
+        });
+    }
+
+    private BitSet getPassingRowsInBlocks(VariantTable table, VariantCallFilter filter) {
+        return mergeBlocks(table.getNumberOfUnfilteredCalls(),
+                (fromRow, toRow) -> filter.getPassingRows(table, fromRow, toRow));
+    }
+
+    /**
+     * Computes the blocks concurrently and copies their words into place, the
+     * blocks are expected to be relative to their first row.
+     */
+    private BitSet mergeBlocks(int numberOfRows, BlockFunction function) {
+
+        int numberOfBlocks = (numberOfRows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long[] words = new long[(numberOfRows + 63) / 64];
+
+        List<long[]> blocks = pool.submit(() -> IntStream.range(0, numberOfBlocks)
+                .parallel()
+                .mapToObj(block -> function.apply(block * BLOCK_SIZE, Math.min(numberOfRows, (block + 1) * BLOCK_SIZE)).toLongArray())
+                .collect(Collectors.toList())
+        ).join();
+
+        for (int block = 0; block < numberOfBlocks; block++) {
+            long[] blockWords = blocks.get(block);
+            System.arraycopy(blockWords, 0, words, block * (BLOCK_SIZE / 64), blockWords.length);
+        }
+
+        return BitSet.valueOf(words);
+    }
+
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private interface BlockFunction {
+
+        BitSet apply(int fromRow, int toRow);
+    }
+}
@@ -20,6 +20,9 @@ package de.imi.marw.viper.variants.filters;
 
 import de.imi.marw.viper.variants.VariantCallFilter;
 import de.imi.marw.viper.variants.VariantPropertyType;
+import de.imi.marw.viper.variants.table.VariantTable;
+import de.imi.marw.viper.variants.table.columns.VariantColumn;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 
@@ -43,5 +46,26 @@ public abstract class SingleColumnFilter<T> implements VariantCallFilter {
         return isSingleColumnValuePassing(value);
     }
 
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public VariantPropertyType getColumnType() {
+        return columnType;
+    }
+
+    /**
+     * Checks whether every row passing this filter also passes the previous
+     * filter, i.e. whether the filter result can only have shrunk.
+     */
+    public abstract boolean isNarrowing(SingleColumnFilter<?> previous);
+
+    @Override
+    public BitSet getPassingRows(VariantTable table) {
+        return getPassingRows(table.getColumn(columnName));
+    }
+
     protected abstract boolean isSingleColumnValuePassing(T value);
+
+    protected abstract BitSet getPassingRows(VariantColumn column);
 }
@@ -86,7 +86,7 @@ public class CallStringifier {
 
         for (int i = 0; i < indices.length; i++) {
 
-            List<Object> call = table.getRawCalls().get(indices[i]);
+            List<Object> call = table.getUnfilteredCall(indices[i]);
             List<String> callStrings = this.callToStringList(call, types);
 
             values.add(callStrings);
@@ -0,0 +1,101 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table;
+
+import de.imi.marw.viper.util.NumericScanner;
+import de.imi.marw.viper.variants.VariantPropertyType;
+
+/**
+ * Collects what is known about the type of a csv column while its values are
+ * streamed, so the values do not have to be kept in memory for guessing the
+ * column type.
+ *
+ * @author marius
+ */
+class ColumnTypeEvidence {
+
+    private final NumericScanner scanner;
+    private final String propertyDelimiter;
+
+    private boolean allNumeric;
+    private boolean allNumericCollections;
+    private boolean anyContainsDelimiter;
+
+    public ColumnTypeEvidence(NumericScanner scanner, String propertyDelimiter) {
+        this.scanner = scanner;
+        this.propertyDelimiter = propertyDelimiter;
+
+        this.allNumeric = true;
+        this.allNumericCollections = true;
+        this.anyContainsDelimiter = false;
+    }
+
+    public void add(String value) {
+
+        // string collections stay string collections
+        if (!allNumericCollections && anyContainsDelimiter) {
+            return;
+        }
+
+        if (!anyContainsDelimiter && value.contains(propertyDelimiter)) {
+            anyContainsDelimiter = true;
+        }
+
+        if (allNumeric) {
+
+            NumericScanner.CellType cellType = scanner.classify(value);
+
+            allNumeric = cellType == NumericScanner.CellType.NUMERIC;
+            allNumericCollections = cellType != NumericScanner.CellType.OTHER;
+
+        } else if (allNumericCollections) {
+            allNumericCollections = scanner.isNumericCollection(value);
+        }
+    }
+
+    /**
+     * Combines the evidence of two parts of the same column.
+     */
+    public void merge(ColumnTypeEvidence other) {
+        this.allNumeric &= other.allNumeric;
+        this.allNumericCollections &= other.allNumericCollections;
+        this.anyContainsDelimiter |= other.anyContainsDelimiter;
+    }
+
+    /**
+     * The type of a column containing all added values, columns without values
+     * are numeric.
+     */
+    public VariantPropertyType getType() {
+
+        if (allNumeric) {
+            return VariantPropertyType.NUMERIC;
+        }
+
+        if (allNumericCollections) {
+            return VariantPropertyType.NUMERIC_COLLECTION;
+        }
+
+        if (anyContainsDelimiter) {
+            return VariantPropertyType.STRING_COLLECTION;
+        }
+
+        return VariantPropertyType.STRING;
+    }
+}
@@ -18,134 +18,160 @@
  */
 package de.imi.marw.viper.variants.table;
 
-import de.imi.marw.viper.util.Util;
+import de.imi.marw.viper.util.NumericScanner;
 import de.imi.marw.viper.variants.VariantPropertyType;
+import de.imi.marw.viper.variants.table.columns.NumericColumn;
+import de.imi.marw.viper.variants.table.columns.VariantColumn;
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 
 /**
+ * Reads csv files record by record directly into column storage. Column types
+ * are taken from a schema file next to the csv file ({@code <file>.schema},
+ * one tab separated column name and type per line) if present. Otherwise they
+ * are guessed from the first rows, or from all rows in an additional pass over
+ * the file.
  *
  * @author marius
  */
 public class CsvTableReader implements TableReader {
 
+    public static final String SCHEMA_FILE_SUFFIX = ".schema";
+
     private final String propertyDelimiter;
-    private final CSVFormat csvFormat;
+    protected final CSVFormat csvFormat;
+    private final int typeSampleSize;
+    private final NumericScanner numericScanner;
 
     public CsvTableReader(char csvDelimiter, String propertyDelimiter) {
+        this(csvDelimiter, propertyDelimiter, 0);
+    }
+
+    /**
+     * @param typeSampleSize number of rows used to guess the column types, 0
+     * uses all rows
+     */
+    public CsvTableReader(char csvDelimiter, String propertyDelimiter, int typeSampleSize) {
+
+        if (typeSampleSize < 0) {
+            throw new IllegalArgumentException("Type sample size must not be negative, but is " + typeSampleSize);
+        }
+
         this.propertyDelimiter = propertyDelimiter;
         this.csvFormat = CSVFormat.RFC4180
                 .withDelimiter(csvDelimiter);
+        this.typeSampleSize = typeSampleSize;
+        this.numericScanner = new NumericScanner(propertyDelimiter);
     }
 
-    private VariantPropertyType determineType(List<String> columnValues) {
-
-        String doubleRegex = "(NA|(" + Util.FP_REGEX + "))";
+    protected ColumnTypeEvidence[] createEvidence(int numberOfColumns) {
 
-        boolean isNumericColumn = columnValues.stream()
-                .allMatch((str) -> str.matches(doubleRegex));
+        ColumnTypeEvidence[] evidence = new ColumnTypeEvidence[numberOfColumns];
 
-        if (isNumericColumn) {
-            return VariantPropertyType.NUMERIC;
+        for (int i = 0; i < numberOfColumns; i++) {
+            evidence[i] = new ColumnTypeEvidence(this.numericScanner, this.propertyDelimiter);
         }
 
-        String numericCollectionRegex = "^$|" + doubleRegex + "(" + this.propertyDelimiter + "\\s*" + doubleRegex + ")*";
+        return evidence;
+    }
 
-        boolean isNumericCollectionColumn = columnValues.stream()
-                .allMatch((str) -> str.matches(numericCollectionRegex));
+    protected VariantPropertyType[] determineTypes(String[] columnNames, ColumnTypeEvidence[] evidence) {
 
-        if (isNumericCollectionColumn) {
-            return VariantPropertyType.NUMERIC_COLLECTION;
-        }
+        VariantPropertyType[] guessedTypes = Arrays.stream(evidence)
+                .map(ColumnTypeEvidence::getType)
+                .toArray(VariantPropertyType[]::new);
 
-        boolean isStringCollection = columnValues.stream()
-                .anyMatch((str) -> str.contains(this.propertyDelimiter));
+        List<String> mandatoryFields = Arrays.asList(VariantTable.MANDATORY_FIELDS);
+
+        for (int i = 0; i < columnNames.length; i++) {
 
-        if (isStringCollection) {
-            return VariantPropertyType.STRING_COLLECTION;
+            String columnName = columnNames[i];
+            int foundIndex = mandatoryFields.indexOf(columnName);
+
+            if (foundIndex != -1) {
+                guessedTypes[i] = VariantTable.MANDATORY_FIELDS_TYPES[foundIndex];
+            }
         }
 
-        return VariantPropertyType.STRING;
+        return guessedTypes;
     }
 
-    private VariantPropertyType[] guessTypes(List<String[]> stringTable) {
+    protected VariantPropertyType[] readSchema(File schemaFile, String[] header) throws IOException {
 
-        VariantPropertyType[] types = IntStream.range(0, stringTable.get(0).length).boxed()
-                .map((i) -> {
+        Map<String, VariantPropertyType> schema = new HashMap<>();
 
-                    List<String> singlePropertyValues = stringTable.stream()
-                            .map((rowValues) -> rowValues[i])
-                            .collect(Collectors.toList());
+        try (BufferedReader reader = new BufferedReader(new FileReader(schemaFile))) {
 
-                    return singlePropertyValues;
-                })
-                .map(this::determineType)
-                .toArray(VariantPropertyType[]::new);
+            String line;
+            while ((line = reader.readLine()) != null) {
 
-        return types;
-    }
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t");
 
-    private VariantPropertyType[] determineTypes(String[] columnNames, List<String[]> stringTable) {
+                if (fields.length != 2) {
+                    throw new IllegalArgumentException("Invalid line in schema file " + schemaFile + ": " + line + ", expected <column name><TAB><type>");
+                }
 
-        VariantPropertyType[] guessedTypes;
+                try {
+                    schema.put(fields[0], VariantPropertyType.valueOf(fields[1].trim()));
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException("Unknown type " + fields[1] + " in schema file " + schemaFile
+                            + ", use one of " + Arrays.toString(VariantPropertyType.values()), ex);
+                }
+            }
+        }
 
-        if (stringTable.isEmpty()) {
+        VariantPropertyType[] types = new VariantPropertyType[header.length];
 
-            guessedTypes = new VariantPropertyType[columnNames.length];
+        for (int i = 0; i < header.length; i++) {
 
-            for (int i = 0; i < columnNames.length; i++) {
-                guessedTypes[i] = VariantPropertyType.NUMERIC;
+            types[i] = schema.get(header[i]);
+
+            if (types[i] == null) {
+                throw new IllegalArgumentException("Schema file " + schemaFile + " does not define a type for column " + header[i]);
             }
-        } else {
-            guessedTypes = guessTypes(stringTable);
         }
 
         List<String> mandatoryFields = Arrays.asList(VariantTable.MANDATORY_FIELDS);
 
-        for (int i = 0; i < columnNames.length; i++) {
+        for (int i = 0; i < header.length; i++) {
 
-            String columnName = columnNames[i];
-            int foundIndex = mandatoryFields.indexOf(columnName);
+            int foundIndex = mandatoryFields.indexOf(header[i]);
 
-            if (foundIndex != -1) {
-                guessedTypes[i] = VariantTable.MANDATORY_FIELDS_TYPES[foundIndex];
+            if (foundIndex != -1 && types[i] != VariantTable.MANDATORY_FIELDS_TYPES[foundIndex]) {
+                throw new IllegalArgumentException("Schema file " + schemaFile + " defines mandatory column " + header[i]
+                        + " as " + types[i] + ", but it must be " + VariantTable.MANDATORY_FIELDS_TYPES[foundIndex]);
             }
         }
 
-        return guessedTypes;
-    }
-
-    private Double parseDouble(String str) {
-        if (str.equals("NA") || str.isEmpty() || str.equals("NaN")) {
-            return null;
-        } else {
-            return Double.parseDouble(str);
-        }
+        return types;
     }
 
     private Object parseProperty(VariantPropertyType type, String rawValue) {
         switch (type) {
             case NUMERIC:
-                return parseDouble(rawValue);
+                return NumericScanner.parseNumeric(rawValue);
             case STRING:
                 return rawValue.isEmpty() ? "NA" : rawValue;
             case NUMERIC_COLLECTION:
-
-                Collection<Double> numbers = Arrays.stream(rawValue.split(this.propertyDelimiter))
-                        .map(this::parseDouble)
-                        .collect(Collectors.toList());
-
-                return (numbers);
+                return numericScanner.parseNumericCollection(rawValue);
             case STRING_COLLECTION:
 
                 Collection<String> strings = Arrays.stream(rawValue.split(this.propertyDelimiter))
@@ -159,54 +185,179 @@ public class CsvTableReader implements TableReader {
         }
     }
 
-    private List<Object> parseVariantCall(String[] colNames, String[] colValues, VariantPropertyType[] types) {
-        Object[] row = new Object[colNames.length];
+    private void addProperty(VariantColumn column, String rawValue) {
+
+        // numeric values are stored without boxing
+        if (column.getType() == VariantPropertyType.NUMERIC) {
+
+            Double value = NumericScanner.parseNumeric(rawValue);
 
-        for (int i = 0; i < colNames.length; i++) {
-            Object propertyValue = parseProperty(types[i], colValues[i]);
+            if (value == null) {
+                ((NumericColumn) column).addMissing();
+            } else {
+                ((NumericColumn) column).addDouble(value);
+            }
 
-            row[i] = propertyValue;
+        } else {
+            column.add(parseProperty(column.getType(), rawValue));
         }
+    }
 
-        return Arrays.asList(row);
+    protected String[] readHeader(Iterator<CSVRecord> records, String fileName) {
+
+        if (!records.hasNext()) {
+            throw new IllegalArgumentException("File " + fileName + " is empty, expected at least a header");
+        }
+
+        CSVRecord headerRecord = records.next();
+        String[] header = new String[headerRecord.size()];
+
+        for (int i = 0; i < header.length; i++) {
+            header[i] = headerRecord.get(i);
+        }
+
+        return header;
     }
 
-    private List<List<Object>> parseVariantCalls(String[] colNames, List<String[]> colValues, VariantPropertyType[] types) {
+    /**
+     * @param recordOffset number of records preceding the parsed part of the
+     * file, it is added to the record numbers in error messages
+     */
+    protected void checkRecordSize(CSVRecord record, String[] header, long recordOffset) {
+        if (record.size() != header.length) {
+            throw new IllegalArgumentException("Line " + (recordOffset + record.getRecordNumber()) + " has " + record.size()
+                    + " values, but the header defines " + header.length + " columns");
+        }
+    }
+
+    protected void addRecord(CSVRecord record, String[] header, List<VariantColumn> columns, ColumnTypeEvidence[] evidence, long recordOffset) {
+
+        checkRecordSize(record, header, recordOffset);
 
-        List<List<Object>> calls = colValues.stream()
-                .map((rowValues) -> parseVariantCall(colNames, rowValues, types))
-                .collect(Collectors.toList());
+        for (int i = 0; i < header.length; i++) {
+
+            String rawValue = record.get(i);
+
+            if (evidence != null) {
+                evidence[i].add(rawValue);
+            }
 
-        return calls;
+            try {
+                addProperty(columns.get(i), rawValue);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Value " + rawValue + " of column " + header[i] + " in line " + (recordOffset + record.getRecordNumber())
+                        + " is not of type " + columns.get(i).getType(), ex);
+            }
+        }
+    }
+
+    /**
+     * Reads the whole file once to collect the type evidence of all columns.
+     *
+     * @return the number of rows
+     */
+    private int scanTypes(String fileName, String[] header, ColumnTypeEvidence[] evidence) throws IOException {
+
+        int numberOfRows = 0;
+
+        try (CSVParser parser = this.csvFormat.parse(new FileReader(fileName))) {
+
+            Iterator<CSVRecord> records = parser.iterator();
+            readHeader(records, fileName);
+
+            while (records.hasNext()) {
+
+                CSVRecord record = records.next();
+                checkRecordSize(record, header, 0);
+
+                for (int i = 0; i < header.length; i++) {
+                    evidence[i].add(record.get(i));
+                }
+
+                numberOfRows++;
+            }
+        }
+
+        return numberOfRows;
     }
 
     @Override
     public VariantTable readTable(String fileName) throws FileNotFoundException, IOException {
-        try (Reader reader = new FileReader(fileName)) {
 
-            List<String[]> rawStrings = new ArrayList<>();
+        File schemaFile = new File(fileName + SCHEMA_FILE_SUFFIX);
+
+        try (CSVParser parser = this.csvFormat.parse(new FileReader(fileName))) {
+
+            Iterator<CSVRecord> records = parser.iterator();
+
+            String[] header = readHeader(records, fileName);
+
+            List<CSVRecord> sample = new ArrayList<>();
+            ColumnTypeEvidence[] evidence = null;
+            VariantPropertyType[] types;
+            int expectedRows = 0;
+
+            if (schemaFile.exists()) {
+
+                types = readSchema(schemaFile, header);
+
+            } else if (this.typeSampleSize == 0) {
+
+                ColumnTypeEvidence[] fileEvidence = createEvidence(header.length);
+
+                expectedRows = scanTypes(fileName, header, fileEvidence);
+                types = determineTypes(header, fileEvidence);
 
-            Iterable<CSVRecord> records = this.csvFormat.parse(reader);
+            } else {
 
-            for (CSVRecord record : records) {
+                evidence = createEvidence(header.length);
 
-                String[] rawData = new String[record.size()];
+                while (sample.size() < this.typeSampleSize && records.hasNext()) {
 
-                for (int i = 0; i < rawData.length; i++) {
-                    rawData[i] = record.get(i);
+                    CSVRecord record = records.next();
+                    checkRecordSize(record, header, 0);
+
+                    for (int i = 0; i < header.length; i++) {
+                        evidence[i].add(record.get(i));
+                    }
+
+                    sample.add(record);
                 }
 
-                rawStrings.add(rawData);
+                types = determineTypes(header, evidence);
+                expectedRows = sample.size();
+            }
+
+            List<VariantColumn> columns = new ArrayList<>(header.length);
+
+            for (VariantPropertyType type : types) {
+                columns.add(VariantColumn.create(type, expectedRows));
+            }
+
+            for (CSVRecord record : sample) {
+                addRecord(record, header, columns, null, 0);
             }
 
-            String[] header = rawStrings.remove(0);
+            while (records.hasNext()) {
+                addRecord(records.next(), header, columns, evidence, 0);
+            }
 
-            VariantPropertyType[] types = determineTypes(header, rawStrings);
+            if (evidence != null) {
+                checkSampledTypes(fileName, header, types, determineTypes(header, evidence));
+            }
 
-            List<List<Object>> parsedCalls = parseVariantCalls(header, rawStrings, types);
+            return VariantTable.fromColumns(columns, Arrays.asList(header), Arrays.asList(types));
+        }
+    }
 
-            return new VariantTable(parsedCalls, Arrays.asList(header), Arrays.asList(types));
+    private void checkSampledTypes(String fileName, String[] header, VariantPropertyType[] sampledTypes, VariantPropertyType[] actualTypes) {
 
+        for (int i = 0; i < header.length; i++) {
+            if (sampledTypes[i] != actualTypes[i]) {
+                throw new IllegalArgumentException("Column " + header[i] + " was guessed to be " + sampledTypes[i]
+                        + " from the first " + this.typeSampleSize + " rows, but is " + actualTypes[i]
+                        + ". Increase the type sample size or provide a schema file " + fileName + SCHEMA_FILE_SUFFIX);
+            }
         }
     }
 
@@ -77,7 +77,7 @@ public class CsvTableWriter {
 
     public void writeAllToCSV(VariantTableCluster cluster, String fileName) {
 
-        int[] indices = IntStream.range(0, cluster.getClusteredTable().getRawCalls().size()).toArray();
+        int[] indices = IntStream.range(0, cluster.getClusteredTable().getNumberOfUnfilteredCalls()).toArray();
 
         writeStringsToCsv(cluster, indices, fileName);
 
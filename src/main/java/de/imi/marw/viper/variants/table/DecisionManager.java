@@ -18,39 +18,118 @@
  */
 package de.imi.marw.viper.variants.table;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
+ * Persists the decisions of a table as a snapshot file containing all
+ * decisions and a journal that every single decision is appended to. Loading
+ * replays the journal on top of the snapshot. Both files start with the
+ * generation of the snapshot, journals of older generations are already
+ * contained in the snapshot and are ignored.
  *
  * @author marius
  */
 public class DecisionManager {
 
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10000;
+
+    private static final String GENERATION_PREFIX = "#";
+    private static final String JOURNAL_SEPARATOR = "\t";
+
     private final Path workDir;
+    private final int compactionThreshold;
+    private final Map<String, Progress> progressByFileName;
+
+    private static class Progress {
+
+        private final Path snapshotPath;
+        private final Path journalPath;
+        private long generation;
+        private int journalEntries;
+        private FileChannel journal;
+
+        private Progress(Path snapshotPath, Path journalPath) {
+            this.snapshotPath = snapshotPath;
+            this.journalPath = journalPath;
+        }
+    }
 
     public DecisionManager(String workDir) {
+        this(workDir, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param compactionThreshold number of journal entries after which the
+     * journal is merged into a new snapshot
+     */
+    public DecisionManager(String workDir, int compactionThreshold) {
+
+        if (compactionThreshold < 1) {
+            throw new IllegalArgumentException("Compaction threshold must be positive, but is " + compactionThreshold);
+        }
+
         this.workDir = Paths.get(workDir);
+        this.compactionThreshold = compactionThreshold;
+        this.progressByFileName = new HashMap<>();
     }
 
-    public boolean saveDecisions(VariantTable table) {
+    /**
+     * Writes all decisions to a new snapshot and starts an empty journal.
+     */
+    public synchronized boolean saveDecisions(VariantTable table) {
 
-        List<String> decisions = table.getUnfilteredColumn(VariantTable.DECISION_COLUMN_NAME).stream()
-                .map(decision -> (String) decision)
-                .collect(Collectors.toList());
+        Progress progress = getProgress(table);
 
-        Path saveFilePath = getSavePath(table);
+        try {
+            compact(table, progress);
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(DecisionManager.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Sets the decision of a single call and appends it to the journal.
+     *
+     * @param rowIndex the index of the call in the filtered table
+     */
+    public synchronized boolean makeDecision(VariantTable table, int rowIndex, String decision) {
+
+        if (decision.contains("\n") || decision.contains("\r")) {
+            throw new IllegalArgumentException("Decisions must not contain line breaks");
+        }
+
+        int unfilteredIndex = table.getSoftFilteredIndex(rowIndex);
+        table.setCallProperty(rowIndex, VariantTable.DECISION_COLUMN_NAME, decision);
+
+        Progress progress = getProgress(table);
 
         try {
-            Files.write(saveFilePath, decisions, Charset.forName("UTF-8"));
+            appendToJournal(progress, unfilteredIndex + JOURNAL_SEPARATOR + decision);
+
+            if (progress.journalEntries >= compactionThreshold) {
+                compact(table, progress);
+            }
+
             return true;
         } catch (IOException ex) {
             Logger.getLogger(DecisionManager.class.getName()).log(Level.SEVERE, null, ex);
@@ -58,27 +137,236 @@ public class DecisionManager {
         }
     }
 
-    public void loadDecisions(VariantTable table) {
+    /**
+     * Sets the decision of all calls passing the current filter, which is
+     * saved as a new snapshot.
+     */
+    public synchronized boolean decideForAll(VariantTable table, String decision) {
+
+        table.setFilteredCallsProperty(VariantTable.DECISION_COLUMN_NAME, decision);
+
+        return saveDecisions(table);
+    }
+
+    public synchronized void loadDecisions(VariantTable table) {
+
+        Progress progress = getProgress(table);
+
+        closeJournal(progress);
+        progress.generation = 0;
+        progress.journalEntries = 0;
+
+        try {
+            if (Files.exists(progress.snapshotPath)) {
+                loadSnapshot(table, progress);
+            }
+
+            if (Files.exists(progress.journalPath)) {
+                replayJournal(table, progress);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(DecisionManager.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private void loadSnapshot(VariantTable table, Progress progress) throws IOException {
 
-        Path saveFilePath = getSavePath(table);
+        List<String> decisions = Files.readAllLines(progress.snapshotPath, Charset.forName("UTF-8"));
 
-        if (!saveFilePath.toFile().exists()) {
+        // snapshots of older versions have no generation
+        if (!decisions.isEmpty() && decisions.get(0).startsWith(GENERATION_PREFIX)) {
+            progress.generation = parseGeneration(decisions.get(0));
+            decisions = decisions.subList(1, decisions.size());
+        }
+
+        for (int i = 0; i < decisions.size(); i++) {
+            table.setUnfilteredCallProperty(i, VariantTable.DECISION_COLUMN_NAME, decisions.get(i));
+        }
+    }
+
+    private void replayJournal(VariantTable table, Progress progress) throws IOException {
+
+        try (BufferedReader reader = Files.newBufferedReader(progress.journalPath, StandardCharsets.UTF_8)) {
+
+            String header = reader.readLine();
+
+            if (header == null || !header.startsWith(GENERATION_PREFIX) || parseGeneration(header) != progress.generation) {
+                return;
+            }
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+
+                String[] entry = line.split(JOURNAL_SEPARATOR, 2);
+                int unfilteredIndex;
+
+                try {
+                    unfilteredIndex = Integer.parseInt(entry[0]);
+                } catch (NumberFormatException ex) {
+                    // an entry that was not written completely
+                    break;
+                }
+
+                if (entry.length < 2 || unfilteredIndex < 0 || unfilteredIndex >= table.getNumberOfUnfilteredCalls()) {
+                    break;
+                }
+
+                table.setUnfilteredCallProperty(unfilteredIndex, VariantTable.DECISION_COLUMN_NAME, entry[1]);
+                progress.journalEntries++;
+            }
+        }
+    }
+
+    private long parseGeneration(String header) {
+        try {
+            return Long.parseLong(header.substring(GENERATION_PREFIX.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private void appendToJournal(Progress progress, String entry) throws IOException {
+
+        if (progress.journal == null) {
+            openJournal(progress);
+        }
+
+        ByteBuffer bytes = ByteBuffer.wrap((entry + "\n").getBytes(StandardCharsets.UTF_8));
+
+        while (bytes.hasRemaining()) {
+            progress.journal.write(bytes);
+        }
+
+        progress.journal.force(false);
+        progress.journalEntries++;
+    }
+
+    /**
+     * Continues the journal of the current generation or starts a new one.
+     */
+    private void openJournal(Progress progress) throws IOException {
+
+        boolean isCurrent = false;
+
+        if (Files.exists(progress.journalPath)) {
+            try (BufferedReader reader = Files.newBufferedReader(progress.journalPath, StandardCharsets.UTF_8)) {
+                String header = reader.readLine();
+                isCurrent = header != null && header.startsWith(GENERATION_PREFIX) && parseGeneration(header) == progress.generation;
+            }
+        }
+
+        if (!isCurrent) {
+            Files.write(progress.journalPath, Arrays.asList(GENERATION_PREFIX + progress.generation), StandardCharsets.UTF_8);
+            progress.journalEntries = 0;
+        }
+
+        progress.journal = FileChannel.open(progress.journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeJournal(Progress progress) {
+
+        if (progress.journal == null) {
             return;
         }
 
         try {
-            List<String> decisions = Files.readAllLines(saveFilePath, Charset.forName("UTF-8"));
+            progress.journal.close();
+        } catch (IOException ex) {
+            Logger.getLogger(DecisionManager.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        progress.journal = null;
+    }
+
+    /**
+     * Writes a snapshot of the next generation, which makes the current
+     * journal obsolete, and starts a new journal.
+     */
+    private void compact(VariantTable table, Progress progress) throws IOException {
+
+        List<String> decisions = table.getUnfilteredColumn(VariantTable.DECISION_COLUMN_NAME).stream()
+                .map(decision -> (String) decision)
+                .collect(Collectors.toList());
+
+        long generation = progress.generation + 1;
+        Path tempPath = progress.snapshotPath.resolveSibling(progress.snapshotPath.getFileName() + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
 
-            for (int i = 0; i < decisions.size(); i++) {
-                table.setCallProperty(i, VariantTable.DECISION_COLUMN_NAME, decisions.get(i));
+            writer.write(GENERATION_PREFIX + generation);
+            writer.newLine();
+
+            for (String decision : decisions) {
+                writer.write(decision);
+                writer.newLine();
             }
+        }
+
+        Files.move(tempPath, progress.snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        closeJournal(progress);
+        progress.generation = generation;
+        openJournal(progress);
+    }
+
+    private Progress getProgress(VariantTable table) {
+
+        String fileName = "progress." + table.getFingerprint() + "." + table.getNumberOfUnfilteredCalls();
+
+        return progressByFileName.computeIfAbsent(fileName, key -> {
+
+            Progress progress = new Progress(workDir.resolve(key + ".txt"), workDir.resolve(key + ".journal"));
+
+            migrateLegacySnapshot(table, progress);
+            progress.generation = readGeneration(progress.snapshotPath);
+
+            return progress;
+        });
+    }
+
+    /**
+     * Progress files used to be named by a hash of the breakpoints, such a
+     * file is copied to the new name if there are no new progress files yet.
+     */
+    private void migrateLegacySnapshot(VariantTable table, Progress progress) {
+
+        if (Files.exists(progress.snapshotPath) || Files.exists(progress.journalPath)) {
+            return;
+        }
+
+        Path legacyPath = workDir.resolve(getLegacySaveFileName(table));
+
+        if (!Files.exists(legacyPath)) {
+            return;
+        }
+
+        try {
+            Files.copy(legacyPath, progress.snapshotPath);
+        } catch (IOException ex) {
+            Logger.getLogger(DecisionManager.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private long readGeneration(Path snapshotPath) {
+
+        if (!Files.exists(snapshotPath)) {
+            return 0;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(snapshotPath, StandardCharsets.UTF_8)) {
+
+            String header = reader.readLine();
+
+            return header != null && header.startsWith(GENERATION_PREFIX) ? parseGeneration(header) : 0;
 
         } catch (IOException ex) {
             Logger.getLogger(DecisionManager.class.getName()).log(Level.SEVERE, null, ex);
+            return 0;
         }
     }
 
-    private Path getSavePath(VariantTable table) {
+    private String getLegacySaveFileName(VariantTable table) {
 
         String[] bp1 = table.getUnfilteredColumn(VariantTable.BP1_COLUMN_NAME)
                 .stream()
@@ -86,9 +374,8 @@ public class DecisionManager {
                 .toArray(String[]::new);
 
         int analysisHash = Arrays.hashCode(bp1);
-        int size = table.getRawCalls().size();
+        int size = table.getNumberOfUnfilteredCalls();
 
-        String fileName = "progress." + analysisHash + "." + size + ".txt";
-        return workDir.resolve(fileName);
+        return "progress." + analysisHash + "." + size + ".txt";
     }
 }
@@ -0,0 +1,162 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A 1-based, inclusive range on a contig, written as {@code contig},
+ * {@code contig:start} or {@code contig:start-end}.
+ *
+ * @author marius
+ */
+public class GenomicRegion {
+
+    private final String contig;
+    private final int start, end;
+
+    public GenomicRegion(String contig, int start, int end) {
+
+        if (contig.isEmpty()) {
+            throw new IllegalArgumentException("Region without contig");
+        }
+
+        if (start < 1 || end < start) {
+            throw new IllegalArgumentException("Invalid region " + contig + ":" + start + "-" + end);
+        }
+
+        this.contig = contig;
+        this.start = start;
+        this.end = end;
+    }
+
+    public static GenomicRegion parse(String region) {
+
+        String trimmed = region.trim();
+        int separator = trimmed.lastIndexOf(':');
+
+        if (separator == -1) {
+            return new GenomicRegion(trimmed, 1, Integer.MAX_VALUE);
+        }
+
+        String range = trimmed.substring(separator + 1).replace(",", "");
+
+        // contig names may contain colons themselves
+        if (!range.matches("\\d+(-\\d+)?")) {
+            return new GenomicRegion(trimmed, 1, Integer.MAX_VALUE);
+        }
+
+        String contig = trimmed.substring(0, separator);
+        String[] bounds = range.split("-");
+
+        try {
+            int start = Integer.parseInt(bounds[0]);
+            int end = bounds.length > 1 ? Integer.parseInt(bounds[1]) : Integer.MAX_VALUE;
+
+            return new GenomicRegion(contig, start, end);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid region " + region, ex);
+        }
+    }
+
+    /**
+     * Merges overlapping and adjacent regions. The result is grouped by contig
+     * in order of their first occurrence and sorted by start within a contig.
+     */
+    public static List<GenomicRegion> merge(List<GenomicRegion> regions) {
+
+        Map<String, List<GenomicRegion>> regionsByContig = new LinkedHashMap<>();
+
+        for (GenomicRegion region : regions) {
+            regionsByContig.computeIfAbsent(region.contig, contig -> new ArrayList<>()).add(region);
+        }
+
+        List<GenomicRegion> mergedRegions = new ArrayList<>();
+
+        for (List<GenomicRegion> contigRegions : regionsByContig.values()) {
+
+            contigRegions.sort(Comparator.comparingInt(GenomicRegion::getStart));
+
+            GenomicRegion current = contigRegions.get(0);
+
+            for (GenomicRegion region : contigRegions) {
+
+                if ((long) region.start <= (long) current.end + 1) {
+                    current = new GenomicRegion(current.contig, current.start, Math.max(current.end, region.end));
+                } else {
+                    mergedRegions.add(current);
+                    current = region;
+                }
+            }
+
+            mergedRegions.add(current);
+        }
+
+        return mergedRegions;
+    }
+
+    public String getContig() {
+        return contig;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        return contig + ":" + start + "-" + end;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 5;
+        hash = 97 * hash + Objects.hashCode(this.contig);
+        hash = 97 * hash + this.start;
+        hash = 97 * hash + this.end;
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final GenomicRegion other = (GenomicRegion) obj;
+        return this.start == other.start
+                && this.end == other.end
+                && Objects.equals(this.contig, other.contig);
+    }
+
+}
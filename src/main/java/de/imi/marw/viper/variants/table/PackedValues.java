@@ -0,0 +1,194 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs a sequence of raw attribute values into a single byte array. A value
+ * is either null, a string or a list of strings that may contain null. Single
+ * values can be unpacked by their position without unpacking the others.
+ *
+ * The array starts with the number of values, every value starts with a tag.
+ * Strings are stored as UTF-8 prefixed by their length, lists are prefixed by
+ * their size. All numbers are variable length integers.
+ *
+ * @author marius
+ */
+final class PackedValues {
+
+    private static final int NULL_TAG = 0;
+    private static final int STRING_TAG = 1;
+    private static final int LIST_TAG = 2;
+
+    private PackedValues() {
+    }
+
+    /**
+     * @param values null, strings or lists of strings
+     */
+    static byte[] pack(List<?> values) {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        writeNumber(out, values.size());
+
+        for (Object value : values) {
+
+            if (value == null) {
+                out.write(NULL_TAG);
+            } else if (value instanceof List) {
+
+                List<?> elements = (List<?>) value;
+
+                out.write(LIST_TAG);
+                writeNumber(out, elements.size());
+
+                for (Object element : elements) {
+                    // zero marks a null element, otherwise the length is shifted by one
+                    writeString(out, element == null ? null : element.toString(), 1);
+                }
+
+            } else {
+                out.write(STRING_TAG);
+                writeString(out, value.toString(), 0);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    static int size(byte[] packed) {
+        return readNumber(packed, new int[]{0});
+    }
+
+    /**
+     * @return null, a string or a list of strings
+     */
+    static Object unpack(byte[] packed, int index) {
+
+        int[] position = {0};
+        int size = readNumber(packed, position);
+
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Value " + index + " out of bounds for " + size + " packed values");
+        }
+
+        for (int i = 0; i < index; i++) {
+            skipValue(packed, position);
+        }
+
+        int tag = packed[position[0]++];
+
+        switch (tag) {
+            case NULL_TAG:
+                return null;
+            case STRING_TAG:
+                return readString(packed, position, 0);
+            case LIST_TAG: {
+
+                int numberOfElements = readNumber(packed, position);
+                List<String> elements = new ArrayList<>(numberOfElements);
+
+                for (int i = 0; i < numberOfElements; i++) {
+                    elements.add(readString(packed, position, 1));
+                }
+
+                return elements;
+            }
+            default:
+                throw new IllegalStateException("Unexpected tag " + tag + " in packed values");
+        }
+    }
+
+    private static void skipValue(byte[] packed, int[] position) {
+
+        int tag = packed[position[0]++];
+
+        if (tag == STRING_TAG) {
+            int length = readNumber(packed, position);
+            position[0] += length;
+        } else if (tag == LIST_TAG) {
+
+            int numberOfElements = readNumber(packed, position);
+
+            for (int i = 0; i < numberOfElements; i++) {
+                int length = readNumber(packed, position);
+                position[0] += Math.max(0, length - 1);
+            }
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value, int lengthShift) {
+
+        if (value == null) {
+            writeNumber(out, 0);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        writeNumber(out, bytes.length + lengthShift);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(byte[] packed, int[] position, int lengthShift) {
+
+        int length = readNumber(packed, position);
+
+        if (lengthShift > 0 && length == 0) {
+            return null;
+        }
+
+        length -= lengthShift;
+
+        String value = new String(packed, position[0], length, StandardCharsets.UTF_8);
+        position[0] += length;
+
+        return value;
+    }
+
+    private static void writeNumber(ByteArrayOutputStream out, int value) {
+
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    private static int readNumber(byte[] packed, int[] position) {
+
+        int value = 0;
+        int shift = 0;
+        byte current;
+
+        do {
+            current = packed[position[0]++];
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+
+        return value;
+    }
+}
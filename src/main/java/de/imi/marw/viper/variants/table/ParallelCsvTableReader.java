@@ -0,0 +1,375 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table;
+
+import de.imi.marw.viper.util.Util;
+import de.imi.marw.viper.variants.VariantPropertyType;
+import de.imi.marw.viper.variants.table.columns.VariantColumn;
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Reads large csv files with multiple threads. The memory mapped file is cut
+ * into chunks at record boundaries, which are found by a quote aware scan of
+ * the raw bytes. The chunks are parsed concurrently into column fragments,
+ * which are concatenated in file order afterwards.
+ *
+ * Column types are always guessed from all rows unless a schema file is
+ * present. Small files, non ASCII compatible charsets and non ASCII
+ * delimiters are read sequentially.
+ *
+ * @author marius
+ */
+public class ParallelCsvTableReader extends CsvTableReader {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+    private static final int SCAN_WINDOW_SIZE = 64 << 20;
+
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final char csvDelimiter;
+    private final int parallelism;
+    private final int chunkSize;
+    private final Charset charset;
+
+    public ParallelCsvTableReader(char csvDelimiter, String propertyDelimiter, int typeSampleSize, int parallelism) {
+        this(csvDelimiter, propertyDelimiter, typeSampleSize, parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param parallelism number of threads, 0 uses all available cores
+     * @param chunkSize minimal number of bytes per chunk
+     */
+    public ParallelCsvTableReader(char csvDelimiter, String propertyDelimiter, int typeSampleSize, int parallelism, int chunkSize) {
+        super(csvDelimiter, propertyDelimiter, typeSampleSize);
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive, but is " + chunkSize);
+        }
+
+        this.csvDelimiter = csvDelimiter;
+        this.parallelism = Util.resolveParallelism(parallelism);
+        this.chunkSize = chunkSize;
+        // FileReader, as used by the sequential reader, decodes with the default charset
+        this.charset = Charset.defaultCharset();
+    }
+
+    private boolean isAsciiCompatible() {
+        return (charset.equals(StandardCharsets.UTF_8) || charset.newEncoder().maxBytesPerChar() == 1)
+                && Arrays.equals("\"\r\n".getBytes(charset), "\"\r\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public VariantTable readTable(String fileName) throws FileNotFoundException, IOException {
+
+        File file = new File(fileName);
+
+        if (!file.isFile()) {
+            throw new FileNotFoundException("File " + fileName + " does not exist");
+        }
+
+        if (parallelism == 1 || csvDelimiter >= 128 || !isAsciiCompatible() || file.length() < 2L * chunkSize) {
+            return super.readTable(fileName);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+
+            return readTable(fileName, channel, pool);
+
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private VariantTable readTable(String fileName, FileChannel channel, ForkJoinPool pool) throws IOException {
+
+        ChunkBoundaries boundaries = findRecordBoundaries(channel);
+        int numberOfChunks = boundaries.starts.length - 1;
+
+        String[] header;
+
+        try (CSVParser parser = parseChunk(channel, boundaries, 0)) {
+            header = readHeader(parser.iterator(), fileName);
+        }
+
+        File schemaFile = new File(fileName + SCHEMA_FILE_SUFFIX);
+        VariantPropertyType[] types;
+        int[] rowsPerChunk;
+
+        if (schemaFile.exists()) {
+
+            types = readSchema(schemaFile, header);
+            rowsPerChunk = new int[numberOfChunks];
+
+        } else {
+
+            List<ChunkEvidence> chunkEvidence = mapChunks(pool, numberOfChunks,
+                    chunk -> scanChunk(channel, boundaries, chunk, header));
+
+            ColumnTypeEvidence[] evidence = createEvidence(header.length);
+            rowsPerChunk = new int[numberOfChunks];
+
+            for (int chunk = 0; chunk < numberOfChunks; chunk++) {
+
+                for (int i = 0; i < header.length; i++) {
+                    evidence[i].merge(chunkEvidence.get(chunk).evidence[i]);
+                }
+
+                rowsPerChunk[chunk] = chunkEvidence.get(chunk).numberOfRows;
+            }
+
+            types = determineTypes(header, evidence);
+        }
+
+        List<List<VariantColumn>> fragments = mapChunks(pool, numberOfChunks,
+                chunk -> parseChunk(channel, boundaries, chunk, header, types, rowsPerChunk[chunk]));
+
+        int numberOfRows = fragments.stream()
+                .mapToInt(fragment -> fragment.get(0).size())
+                .sum();
+
+        List<VariantColumn> columns = new ArrayList<>(header.length);
+
+        for (int i = 0; i < header.length; i++) {
+
+            VariantColumn column = VariantColumn.create(types[i], numberOfRows);
+
+            for (List<VariantColumn> fragment : fragments) {
+                column.addAll(fragment.get(i));
+                // the fragment is not needed anymore
+                fragment.set(i, null);
+            }
+
+            columns.add(column);
+        }
+
+        return VariantTable.fromColumns(columns, Arrays.asList(header), Arrays.asList(types));
+    }
+
+    private <T> List<T> mapChunks(ForkJoinPool pool, int numberOfChunks, IntFunction<T> function) {
+        return pool.submit(() -> IntStream.range(0, numberOfChunks)
+                .parallel()
+                .mapToObj(function)
+                .collect(Collectors.toList())
+        ).join();
+    }
+
+    /**
+     * Finds the end of the first record after every multiple of the chunk
+     * size. Quotes are only special at the start of a field, just as in the
+     * csv parser. Only line feeds outside of quotes are used as record ends.
+     *
+     * @return the start of every chunk followed by the file size, together
+     * with the number of records preceding every chunk
+     */
+    private ChunkBoundaries findRecordBoundaries(FileChannel channel) throws IOException {
+
+        long fileSize = channel.size();
+        byte delimiter = (byte) csvDelimiter;
+
+        List<Long> boundaries = new ArrayList<>();
+        List<Long> recordOffsets = new ArrayList<>();
+        boundaries.add(0L);
+        recordOffsets.add(0L);
+
+        long numberOfRecords = 0;
+        long nextBoundary = chunkSize;
+        int state = FIELD_START;
+
+        for (long windowStart = 0; windowStart < fileSize && nextBoundary < fileSize; windowStart += SCAN_WINDOW_SIZE) {
+
+            int windowSize = (int) Math.min(SCAN_WINDOW_SIZE, fileSize - windowStart);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+
+            for (int i = 0; i < windowSize; i++) {
+
+                byte current = window.get(i);
+
+                switch (state) {
+                    case QUOTED:
+                        if (current == '"') {
+                            state = QUOTE_IN_QUOTED;
+                        }
+                        continue;
+                    case QUOTE_IN_QUOTED:
+                        if (current == '"') {
+                            state = QUOTED;
+                            continue;
+                        }
+                        break;
+                    case FIELD_START:
+                        if (current == '"') {
+                            state = QUOTED;
+                            continue;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+
+                if (current == delimiter || current == '\r') {
+                    state = FIELD_START;
+                } else if (current == '\n') {
+
+                    state = FIELD_START;
+                    numberOfRecords++;
+                    long recordEnd = windowStart + i + 1;
+
+                    if (recordEnd >= nextBoundary && recordEnd < fileSize) {
+                        boundaries.add(recordEnd);
+                        recordOffsets.add(numberOfRecords);
+                        nextBoundary = recordEnd + chunkSize;
+                    }
+
+                } else {
+                    state = UNQUOTED;
+                }
+            }
+        }
+
+        boundaries.add(fileSize);
+
+        return new ChunkBoundaries(
+                boundaries.stream().mapToLong(Long::longValue).toArray(),
+                recordOffsets.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    private CSVParser parseChunk(FileChannel channel, ChunkBoundaries boundaries, int chunk) throws IOException {
+
+        long start = boundaries.starts[chunk];
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, boundaries.starts[chunk + 1] - start);
+        CharBuffer chars = charset.decode(bytes);
+
+        return this.csvFormat.parse(new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining()));
+    }
+
+    /**
+     * Iterates over the records of a chunk, the header is skipped.
+     */
+    private Iterator<CSVRecord> readChunk(CSVParser parser, int chunk) {
+
+        Iterator<CSVRecord> records = parser.iterator();
+
+        if (chunk == 0) {
+            records.next();
+        }
+
+        return records;
+    }
+
+    private ChunkEvidence scanChunk(FileChannel channel, ChunkBoundaries boundaries, int chunk, String[] header) {
+
+        ChunkEvidence chunkEvidence = new ChunkEvidence(createEvidence(header.length));
+
+        try (CSVParser parser = parseChunk(channel, boundaries, chunk)) {
+
+            Iterator<CSVRecord> records = readChunk(parser, chunk);
+
+            while (records.hasNext()) {
+
+                CSVRecord record = records.next();
+                checkRecordSize(record, header, boundaries.recordOffsets[chunk]);
+
+                for (int i = 0; i < header.length; i++) {
+                    chunkEvidence.evidence[i].add(record.get(i));
+                }
+
+                chunkEvidence.numberOfRows++;
+            }
+
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return chunkEvidence;
+    }
+
+    private List<VariantColumn> parseChunk(FileChannel channel, ChunkBoundaries boundaries, int chunk, String[] header, VariantPropertyType[] types, int expectedRows) {
+
+        List<VariantColumn> columns = new ArrayList<>(header.length);
+
+        for (VariantPropertyType type : types) {
+            columns.add(VariantColumn.create(type, expectedRows));
+        }
+
+        try (CSVParser parser = parseChunk(channel, boundaries, chunk)) {
+
+            Iterator<CSVRecord> records = readChunk(parser, chunk);
+
+            while (records.hasNext()) {
+                addRecord(records.next(), header, columns, null, boundaries.recordOffsets[chunk]);
+            }
+
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return columns;
+    }
+
+    private static class ChunkBoundaries {
+
+        private final long[] starts;
+        private final long[] recordOffsets;
+
+        public ChunkBoundaries(long[] starts, long[] recordOffsets) {
+            this.starts = starts;
+            this.recordOffsets = recordOffsets;
+        }
+    }
+
+    private static class ChunkEvidence {
+
+        private final ColumnTypeEvidence[] evidence;
+        private int numberOfRows;
+
+        public ChunkEvidence(ColumnTypeEvidence[] evidence) {
+            this.evidence = evidence;
+            this.numberOfRows = 0;
+        }
+    }
+}
@@ -18,15 +18,27 @@
  */
 package de.imi.marw.viper.variants.table;
 
+import de.imi.marw.viper.util.Fingerprint;
 import de.imi.marw.viper.variants.VariantCallFilter;
 import de.imi.marw.viper.variants.VariantPropertyType;
+import de.imi.marw.viper.variants.table.columns.LazyColumn;
+import de.imi.marw.viper.variants.table.columns.NumericColumn;
+import de.imi.marw.viper.variants.table.columns.StringCollectionColumn;
+import de.imi.marw.viper.variants.table.columns.StringColumn;
+import de.imi.marw.viper.variants.table.columns.VariantColumn;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -65,15 +77,76 @@ public class VariantTable {
         VariantPropertyType.NUMERIC
     };
 
-    private final List<List<Object>> rows;
+    private final List<LazyColumn> columns;
     private final List<String> columnNames;
     private final List<VariantPropertyType> types;
     private final Map<String, Integer> indexMap;
+    private final int numberOfRows;
+    // guards cell values for row-wise readers, which may run on filter worker threads
+    private final ReadWriteLock valueLock = new ReentrantReadWriteLock();
     private int[] softFilter;
+    private int softFilterVersion;
+    private String fingerprint;
+    private int[] fingerprintVersions;
 
     public VariantTable(Collection<List<Object>> calls, List<String> columnNames, List<VariantPropertyType> types) {
 
-        this.indexMap = new HashMap<>();
+        this.indexMap = createIndexMap(columnNames);
+        this.columnNames = columnNames;
+        this.types = types;
+        this.numberOfRows = calls.size();
+
+        checkColumnDefinitions();
+
+        this.columns = createColumns(calls);
+        this.softFilter = IntStream.range(0, this.numberOfRows)
+                .toArray();
+
+        checkBreakpointOrder();
+    }
+
+    private VariantTable(List<LazyColumn> columns, List<String> columnNames, List<VariantPropertyType> types) {
+
+        this.indexMap = createIndexMap(columnNames);
+        this.columnNames = columnNames;
+        this.types = types;
+
+        checkColumnDefinitions();
+        checkColumns(columns);
+
+        this.columns = columns;
+        this.numberOfRows = columns.get(0).size();
+        this.softFilter = IntStream.range(0, this.numberOfRows)
+                .toArray();
+
+        checkBreakpointOrder();
+    }
+
+    /**
+     * Creates a table from already filled columns, e.g. when a reader parses
+     * values directly into column storage. The table takes ownership of the
+     * columns.
+     */
+    public static VariantTable fromColumns(List<VariantColumn> columns, List<String> columnNames, List<VariantPropertyType> types) {
+
+        columns.forEach(VariantColumn::trimToSize);
+
+        return new VariantTable(columns.stream()
+                .map(LazyColumn::of)
+                .collect(Collectors.toList()), columnNames, types);
+    }
+
+    /**
+     * Creates a table whose columns may be decoded on first use.
+     */
+    public static VariantTable fromLazyColumns(List<LazyColumn> columns, List<String> columnNames, List<VariantPropertyType> types) {
+        return new VariantTable(columns, columnNames, types);
+    }
+
+    private static Map<String, Integer> createIndexMap(List<String> columnNames) {
+
+        Map<String, Integer> indexMap = new HashMap<>();
+
         for (int i = 0; i < columnNames.size(); i++) {
 
             String columnName = columnNames.get(i);
@@ -84,25 +157,70 @@ public class VariantTable {
 
             indexMap.put(columnNames.get(i), i);
         }
-        this.rows = new ArrayList<>();
-        this.columnNames = columnNames;
-        this.rows.addAll(calls);
-        this.types = types;
-        this.softFilter = IntStream.range(0, this.rows.size())
-                .toArray();
 
-        checkDataIntegrity();
+        return indexMap;
+    }
+
+    private List<LazyColumn> createColumns(Collection<List<Object>> calls) {
+
+        List<VariantColumn> newColumns = new ArrayList<>(types.size());
+
+        for (VariantPropertyType type : types) {
+            newColumns.add(VariantColumn.create(type, calls.size()));
+        }
+
+        for (List<Object> call : calls) {
+
+            if (call.size() != types.size()) {
+                throw new IllegalArgumentException("number of columns in calls differ from column names / types");
+            }
+
+            for (int i = 0; i < types.size(); i++) {
+
+                Object value = call.get(i);
+
+                checkCorrectType(value, types.get(i));
+                newColumns.get(i).add(value);
+            }
+        }
+
+        newColumns.forEach(VariantColumn::trimToSize);
+
+        return newColumns.stream()
+                .map(LazyColumn::of)
+                .collect(Collectors.toList());
     }
 
     public synchronized void filter(Collection<VariantCallFilter> filters) {
 
-        int[] callsAfterFiltering = IntStream.range(0, this.rows.size())
-                .boxed()
-                .filter((callIndex) -> filters.stream().allMatch((filter) -> filter.isPassing(this.rows.get(callIndex), indexMap)))
-                .mapToInt(i -> i)
+        BitSet callsAfterFiltering = new BitSet(this.numberOfRows);
+        callsAfterFiltering.set(0, this.numberOfRows);
+
+        for (VariantCallFilter filter : filters) {
+
+            if (callsAfterFiltering.isEmpty()) {
+                break;
+            }
+
+            callsAfterFiltering.and(filter.getPassingRows(this));
+        }
+
+        setSoftFilter(callsAfterFiltering);
+    }
+
+    public synchronized void setSoftFilter(BitSet passingRows) {
+        this.softFilter = passingRows.stream()
+                .filter(row -> row < this.numberOfRows)
                 .toArray();
+        this.softFilterVersion++;
+    }
 
-        this.softFilter = callsAfterFiltering;
+    /**
+     * @return a number that changes whenever the soft filter is set, i.e.
+     * whenever filtered indices may refer to other calls
+     */
+    public synchronized int getSoftFilterVersion() {
+        return softFilterVersion;
     }
 
     public synchronized List<String> searchStringColumn(String columnName, String search, int limit) {
@@ -112,14 +230,22 @@ public class VariantTable {
         Stream<String> values;
 
         switch (type) {
-            case STRING:
-                values = this.rows.stream()
-                        .map(call -> (String) call.get(indexMap.get(columnName)));
+            case STRING: {
+                StringColumn column = (StringColumn) getColumn(columnName);
+                values = IntStream.range(0, column.size())
+                        .map(column::getCode)
+                        .distinct()
+                        .mapToObj(code -> column.getDictionary().decode(code));
                 break;
-            case STRING_COLLECTION:
-                values = this.rows.stream()
-                        .flatMap(call -> ((Collection<String>) call.get(indexMap.get(columnName))).stream());
+            }
+            case STRING_COLLECTION: {
+                StringCollectionColumn column = (StringCollectionColumn) getColumn(columnName);
+                values = IntStream.range(0, column.getNumberOfValues())
+                        .map(column::getCode)
+                        .distinct()
+                        .mapToObj(code -> column.getDictionary().decode(code));
                 break;
+            }
             default:
                 throw new IllegalStateException("Unexpected non-string type " + type + " when trying to access column " + columnName);
         }
@@ -135,25 +261,125 @@ public class VariantTable {
     public synchronized Map<String, Object> getCall(int rowIndex) {
 
         Map<String, Object> variantCall = new LinkedHashMap<>(columnNames.size());
-        List rawRow = this.rows.get(softFilter[rowIndex]);
+        int unfilteredIndex = softFilter[rowIndex];
 
         for (int i = 0; i < columnNames.size(); i++) {
-            variantCall.put(this.columnNames.get(i), rawRow.get(i));
+            variantCall.put(this.columnNames.get(i), this.columns.get(i).get(unfilteredIndex));
         }
 
         return variantCall;
     }
 
     public synchronized Object getCallProperty(int index, String columnName) {
-        return this.rows.get(softFilter[index]).get(indexMap.get(columnName));
+        return columns.get(getColumnIndex(columnName)).get(softFilter[index]);
     }
 
     public int getSoftFilteredIndex(int unfilteredIndex) {
         return this.softFilter[unfilteredIndex];
     }
 
-    public synchronized List<List<Object>> getRawCalls() {
-        return this.rows;
+    public List<Object> getUnfilteredCall(int unfilteredIndex) {
+
+        List<Object> call = new ArrayList<>(columns.size());
+
+        valueLock.readLock().lock();
+        try {
+            for (LazyColumn column : columns) {
+                call.add(column.get(unfilteredIndex));
+            }
+        } finally {
+            valueLock.readLock().unlock();
+        }
+
+        return call;
+    }
+
+    /**
+     * Returns a single value, without decoding the whole column if it is not
+     * materialized yet.
+     */
+    public Object getUnfilteredCallProperty(int unfilteredIndex, String columnName) {
+
+        LazyColumn column = columns.get(getColumnIndex(columnName));
+
+        valueLock.readLock().lock();
+        try {
+            return column.get(unfilteredIndex);
+        } finally {
+            valueLock.readLock().unlock();
+        }
+    }
+
+    public boolean isColumnMaterialized(String columnName) {
+        return columns.get(getColumnIndex(columnName)).isMaterialized();
+    }
+
+    public boolean isMaterialized() {
+
+        for (LazyColumn column : columns) {
+            if (!column.isMaterialized()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Row-wise view on the unfiltered calls. The rows are assembled from the
+     * underlying columns on access, changes have to be made using
+     * {@link #setCallProperty(int, java.lang.String, java.lang.Object)}.
+     */
+    public List<List<Object>> getRawCalls() {
+        return new AbstractList<List<Object>>() {
+            @Override
+            public List<Object> get(int index) {
+                return getUnfilteredCall(index);
+            }
+
+            @Override
+            public int size() {
+                return numberOfRows;
+            }
+        };
+    }
+
+    public int getNumberOfUnfilteredCalls() {
+        return numberOfRows;
+    }
+
+    private int getColumnIndex(String columnName) {
+
+        Integer columnIndex = indexMap.get(columnName);
+
+        if (columnIndex == null) {
+            throw new IllegalArgumentException("Variant table does not contain column " + columnName);
+        }
+
+        return columnIndex;
+    }
+
+    /**
+     * Returns the column storage, decoding lazy columns on first access.
+     */
+    public VariantColumn getColumn(String columnName) {
+        return columns.get(getColumnIndex(columnName)).getColumn();
+    }
+
+    /**
+     * Writes the column without materializing it, see
+     * {@link LazyColumn#write(java.io.DataOutput)}.
+     */
+    public void writeColumn(String columnName, DataOutput out) throws IOException {
+
+        LazyColumn column = columns.get(getColumnIndex(columnName));
+
+        valueLock.readLock().lock();
+        try {
+            column.write(out);
+        } finally {
+            valueLock.readLock().unlock();
+        }
     }
 
     public synchronized List<Map<String, Object>> getCallRange(int lower, int upper) {
@@ -164,6 +390,63 @@ public class VariantTable {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Reads the values of some columns for a range of filtered calls, without
+     * decoding columns that are not materialized yet.
+     *
+     * @return one array of values per column, in the order of the given names
+     */
+    public synchronized List<Object[]> getColumnRanges(List<String> columnNames, int lower, int upper) {
+
+        List<Object[]> columnRanges = new ArrayList<>(columnNames.size());
+
+        for (String columnName : columnNames) {
+
+            LazyColumn column = columns.get(getColumnIndex(columnName));
+            Object[] values = new Object[upper - lower];
+
+            for (int i = lower; i < upper; i++) {
+                values[i - lower] = column.get(softFilter[i]);
+            }
+
+            columnRanges.add(values);
+        }
+
+        return columnRanges;
+    }
+
+    private int[] getMandatoryColumnVersions() {
+        return Arrays.stream(MANDATORY_FIELDS)
+                .mapToInt(columnName -> getColumn(columnName).getVersion())
+                .toArray();
+    }
+
+    /**
+     * Identifies the calls of this table by the values of its mandatory
+     * columns. It is computed once and only recomputed after one of these
+     * columns was modified.
+     */
+    public synchronized String getFingerprint() {
+
+        int[] versions = getMandatoryColumnVersions();
+
+        if (fingerprint == null || !Arrays.equals(versions, fingerprintVersions)) {
+
+            Fingerprint newFingerprint = new Fingerprint();
+            newFingerprint.add(numberOfRows);
+
+            for (String columnName : MANDATORY_FIELDS) {
+                newFingerprint.add(columnName);
+                getColumn(columnName).addTo(newFingerprint);
+            }
+
+            this.fingerprint = newFingerprint.toString();
+            this.fingerprintVersions = versions;
+        }
+
+        return fingerprint;
+    }
+
     public synchronized int getNumberOfCalls() {
         return this.softFilter.length;
     }
@@ -201,13 +484,48 @@ public class VariantTable {
     public synchronized void setCallProperty(int rowIndex, String column, Object newValue) {
         checkCorrectType(newValue, getColumnType(column));
 
-        this.rows.get(softFilter[rowIndex]).set(indexMap.get(column), newValue);
+        setValue(getColumn(column), softFilter[rowIndex], newValue);
+    }
+
+    public synchronized void setUnfilteredCallProperty(int unfilteredIndex, String column, Object newValue) {
+        checkCorrectType(newValue, getColumnType(column));
+
+        setValue(getColumn(column), unfilteredIndex, newValue);
+    }
+
+    /**
+     * Sets the property of all calls passing the current filter.
+     */
+    public synchronized void setFilteredCallsProperty(String column, Object newValue) {
+        checkCorrectType(newValue, getColumnType(column));
+
+        VariantColumn variantColumn = getColumn(column);
+
+        valueLock.writeLock().lock();
+        try {
+            for (int row : softFilter) {
+                variantColumn.set(row, newValue);
+            }
+        } finally {
+            valueLock.writeLock().unlock();
+        }
+    }
+
+    private void setValue(VariantColumn column, int row, Object newValue) {
+        valueLock.writeLock().lock();
+        try {
+            column.set(row, newValue);
+        } finally {
+            valueLock.writeLock().unlock();
+        }
     }
 
     public synchronized List<Object> getUnfilteredColumn(String columnName) {
 
-        return this.rows.stream()
-                .map(call -> call.get(indexMap.get(columnName)))
+        VariantColumn column = getColumn(columnName);
+
+        return IntStream.range(0, column.size())
+                .mapToObj(column::get)
                 .collect(Collectors.toList());
 
     }
@@ -249,10 +567,10 @@ public class VariantTable {
         }
     }
 
-    private String getSingleColumnValue(List call, String column) {
+    private String getSingleColumnValue(int row, String column) {
 
         VariantPropertyType type = getColumnType(column);
-        Object value = call.get(indexMap.get(column));
+        Object value = getColumn(column).get(row);
 
         switch (type) {
             case NUMERIC:
@@ -272,7 +590,16 @@ public class VariantTable {
         }
     }
 
-    private void checkDataIntegrity() {
+    private Object asColumnValue(String value, String column) {
+
+        if (getColumnType(column) == VariantPropertyType.STRING_COLLECTION) {
+            return new ArrayList<>(Arrays.asList(value));
+        }
+
+        return value;
+    }
+
+    private void checkColumnDefinitions() {
 
         if (Arrays.stream(MANDATORY_FIELDS).anyMatch((mandatory) -> !columnNames.contains(mandatory))) {
             throw new IllegalArgumentException("Variant call tables must contain all mandatory columns: " + Arrays.toString(VariantTable.MANDATORY_FIELDS) + ". Make sure you use the correct delimiter.");
@@ -281,36 +608,50 @@ public class VariantTable {
         if (types.size() != columnNames.size()) {
             throw new IllegalArgumentException("Type and column names differ in length");
         }
+    }
 
-        if (this.rows.stream().anyMatch(call -> call.size() != types.size())) {
-            throw new IllegalArgumentException("number of columns in calls differ from column names / types");
+    private void checkColumns(List<LazyColumn> columns) {
+
+        if (columns.size() != types.size()) {
+            throw new IllegalArgumentException("number of columns differs from column names / types");
         }
 
-        indexMap.forEach((key, value) -> {
+        for (int i = 0; i < columns.size(); i++) {
 
-            this.rows.stream()
-                    .map((row) -> row.get(value))
-                    .forEach((property) -> checkCorrectType(property, types.get(value)));
+            LazyColumn column = columns.get(i);
 
-        });
+            if (column.getType() != types.get(i)) {
+                throw new IllegalArgumentException("Column " + columnNames.get(i) + " is of type " + column.getType() + ", expected " + types.get(i));
+            }
 
-        // TODO: is it possible to do this a nicer way?
-        this.rows.forEach((call) -> {
+            if (column.size() != columns.get(0).size()) {
+                throw new IllegalArgumentException("Column " + columnNames.get(i) + " has " + column.size() + " rows, expected " + columns.get(0).size());
+            }
+        }
+    }
 
-            String chr1 = getSingleColumnValue(call, CHR1_COLUMN_NAME);
-            String chr2 = getSingleColumnValue(call, CHR2_COLUMN_NAME);
+    private void checkBreakpointOrder() {
 
-            Double bp1 = (Double) call.get(indexMap.get(VariantTable.BP1_COLUMN_NAME));
-            Double bp2 = (Double) call.get(indexMap.get(VariantTable.BP2_COLUMN_NAME));
+        NumericColumn bp1Column = (NumericColumn) getColumn(BP1_COLUMN_NAME);
+        NumericColumn bp2Column = (NumericColumn) getColumn(BP2_COLUMN_NAME);
+
+        // TODO: is it possible to do this a nicer way?
+        for (int row = 0; row < numberOfRows; row++) {
+
+            Double bp1 = bp1Column.get(row);
+            Double bp2 = bp2Column.get(row);
 
             if (bp1 > bp2) {
-                call.set(indexMap.get(CHR1_COLUMN_NAME), chr2);
-                call.set(indexMap.get(CHR2_COLUMN_NAME), chr1);
+                String chr1 = getSingleColumnValue(row, CHR1_COLUMN_NAME);
+                String chr2 = getSingleColumnValue(row, CHR2_COLUMN_NAME);
 
-                call.set(indexMap.get(BP1_COLUMN_NAME), bp2);
-                call.set(indexMap.get(BP2_COLUMN_NAME), bp1);
+                getColumn(CHR1_COLUMN_NAME).set(row, asColumnValue(chr2, CHR1_COLUMN_NAME));
+                getColumn(CHR2_COLUMN_NAME).set(row, asColumnValue(chr1, CHR2_COLUMN_NAME));
+
+                bp1Column.set(row, bp2);
+                bp2Column.set(row, bp1);
             }
-        });
+        }
     }
 
     public int[] getSoftFilter() {
@@ -18,8 +18,18 @@
  */
 package de.imi.marw.viper.variants.table;
 
+import de.imi.marw.viper.util.Util;
 import de.imi.marw.viper.variants.VariantPropertyType;
+import de.imi.marw.viper.variants.table.columns.LazyColumn;
+import de.imi.marw.viper.variants.table.columns.VariantColumn;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.tribble.Tribble;
+import htsjdk.tribble.TribbleException;
+import htsjdk.tribble.index.Block;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.IndexFactory;
 import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.CommonInfo;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFCompoundHeaderLine;
@@ -33,8 +43,12 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  *
@@ -47,10 +61,33 @@ public class VcfTableReader implements TableReader {
     private List<VariantPropertyType> types;
     private boolean simple;
     private boolean excludeReferenceCalls;
+    private final List<GenomicRegion> regions;
+    private final int parallelism;
 
     public VcfTableReader(boolean simple, boolean excludeReferenceCalls) {
+        this(simple, excludeReferenceCalls, Collections.emptyList());
+    }
+
+    /**
+     * @param regions if not empty, only calls overlapping these regions (see
+     * {@link GenomicRegion#parse(java.lang.String)}) are loaded using the
+     * tabix or tribble index of the file
+     */
+    public VcfTableReader(boolean simple, boolean excludeReferenceCalls, List<String> regions) {
+        this(simple, excludeReferenceCalls, regions, 1);
+    }
+
+    /**
+     * @param parallelism number of threads decoding indexed files, one contig
+     * or region per task. 0 uses all available cores
+     */
+    public VcfTableReader(boolean simple, boolean excludeReferenceCalls, List<String> regions, int parallelism) {
         this.simple = simple;
         this.excludeReferenceCalls = excludeReferenceCalls;
+        this.regions = GenomicRegion.merge(regions.stream()
+                .map(GenomicRegion::parse)
+                .collect(Collectors.toList()));
+        this.parallelism = Util.resolveParallelism(parallelism);
     }
 
     private static final String VCF_ID_FIELD = "ID";
@@ -67,6 +104,32 @@ public class VcfTableReader implements TableReader {
         VCF_FILTER_FIELD
     };
 
+    private static final int ATTRIBUTE_OFFSET = VariantTable.MANDATORY_FIELDS.length + VCF_REQUIRED_FIELDS.length;
+
+    /**
+     * The eagerly extracted fields of the calls, together with the packed info
+     * and genotype attributes the remaining columns are decoded from. Calls of
+     * the same variant share their packed info attributes.
+     */
+    private static class VcfCalls {
+
+        private final List<List<Object>> fields = new ArrayList<>();
+        private final List<byte[]> infos = new ArrayList<>();
+        private final List<byte[]> genotypes = new ArrayList<>();
+
+        private void add(List<Object> callFields, byte[] info, byte[] genotype) {
+            fields.add(callFields);
+            infos.add(info);
+            genotypes.add(genotype);
+        }
+
+        private void addAll(VcfCalls other) {
+            fields.addAll(other.fields);
+            infos.addAll(other.infos);
+            genotypes.addAll(other.genotypes);
+        }
+    }
+
     private boolean isCollectionType(VCFCompoundHeaderLine info) {
 
         VCFHeaderLineCount count = info.getCountType();
@@ -200,9 +263,7 @@ public class VcfTableReader implements TableReader {
         return vcfFieldValues;
     }
 
-    private Object extractAttributeValues(VariantContext context, String attribute, VariantPropertyType type) {
-
-        List<String> values = context.getAttributeAsStringList(attribute, null);
+    private Object extractAttributeValues(List<String> values, VariantPropertyType type) {
 
         switch (type) {
 
@@ -281,81 +342,299 @@ public class VcfTableReader implements TableReader {
         throw new IllegalStateException("unexpected type " + type + " when extracting genotype values");
     }
 
-    private List<Object> extractCall(VariantContext context, String sample, List<String> columns, List<VariantPropertyType> types) {
+    private List<Object> extractFields(VariantContext context, String sample) {
+
+        List<Object> fields = new ArrayList<>(ATTRIBUTE_OFFSET);
+
+        fields.addAll(extractMandatoryFields(context, sample));
+        fields.addAll(extractRequiredVCFFields(context, sample));
+
+        return fields;
+    }
+
+    /**
+     * Packs the info attributes of the columns up to the number of info
+     * attributes of the call, the columns beyond it are read from the genotype.
+     */
+    private byte[] packInfo(CommonInfo info) {
 
-        int numAttributes = context.getCommonInfo().getNumAttributes();
+        int upper = Math.min(ATTRIBUTE_OFFSET + info.getNumAttributes(), columns.size());
+        List<Object> values = new ArrayList<>(Math.max(0, upper - ATTRIBUTE_OFFSET));
 
-        List<Object> call = new ArrayList<>(columns.size());
+        for (int i = ATTRIBUTE_OFFSET; i < upper; i++) {
+            values.add(info.getAttributeAsStringList(columns.get(i), null));
+        }
 
-        call.addAll(extractMandatoryFields(context, sample));
-        call.addAll(extractRequiredVCFFields(context, sample));
+        return PackedValues.pack(values);
+    }
 
-        if (isSimple()) {
-            return call;
+    private byte[] packGenotype(Genotype genotype, int numberOfInfoValues) {
+
+        List<Object> values = new ArrayList<>();
+
+        for (int i = ATTRIBUTE_OFFSET + numberOfInfoValues; i < columns.size(); i++) {
+            values.add(toPackableValue(genotype.getAnyAttribute(columns.get(i))));
+        }
+
+        return PackedValues.pack(values);
+    }
+
+    /**
+     * Genotype attributes are kept as strings, arrays and lists as lists of
+     * strings.
+     */
+    private Object toPackableValue(Object attribute) {
+
+        if (attribute == null || attribute instanceof List) {
+            return attribute;
         }
 
-        int attributeLower = VariantTable.MANDATORY_FIELDS.length + VCF_REQUIRED_FIELDS.length;
-        int attributeUpper = attributeLower + numAttributes;
+        if (attribute instanceof int[]) {
+            return Arrays.stream((int[]) attribute)
+                    .mapToObj(Integer::toString)
+                    .collect(Collectors.toList());
+        }
 
-        for (int i = attributeLower; i < attributeUpper; i++) {
+        if (attribute instanceof Object[]) {
+            return Arrays.asList((Object[]) attribute);
+        }
 
-            String attribute = columns.get(i);
-            VariantPropertyType type = types.get(i);
+        return attribute.toString();
+    }
 
-            call.add(extractAttributeValues(context, attribute, type));
+    @SuppressWarnings("unchecked")
+    private Object extractAttribute(byte[] info, byte[] genotype, int column, List<VariantPropertyType> types) {
 
+        VariantPropertyType type = types.get(column);
+        int valueIndex = column - ATTRIBUTE_OFFSET;
+        int numberOfInfoValues = PackedValues.size(info);
+
+        if (valueIndex < numberOfInfoValues) {
+            return extractAttributeValues((List<String>) PackedValues.unpack(info, valueIndex), type);
         }
 
-        for (int i = attributeUpper; i < columns.size(); i++) {
+        return extractGenotypeValues(PackedValues.unpack(genotype, valueIndex - numberOfInfoValues), type);
+    }
 
-            String columnName = columns.get(i);
-            Genotype genotype = context.getGenotype(sample);
+    private VCFFileReader openReader(String fileName) {
 
-            Object genotypeAttribute = genotype.getAnyAttribute(columnName);
-            call.add(extractGenotypeValues(genotypeAttribute, types.get(i)));
+        if (regions.isEmpty()) {
+            return new VCFFileReader(new File(fileName), false);
+        }
 
+        try {
+            return new VCFFileReader(new File(fileName), true);
+        } catch (TribbleException ex) {
+            throw new IllegalArgumentException("Loading regions of " + fileName + " requires a tabix (.tbi) or tribble (.idx) index", ex);
         }
+    }
+
+    private void addCalls(VariantContext context, VcfCalls calls) {
+
+        byte[] info = null;
+
+        for (String sample : context.getSampleNamesOrderedByName()) {
+
+            List<Allele> alleles = context.getGenotype(sample).getAlleles();
+
+            boolean hasSampleGenotype = alleles.stream().anyMatch(allele -> allele.isCalled());
+            boolean hasNonReferenceAlleles = alleles.stream().anyMatch(allele -> allele.isNonReference());
+
+            if (!hasSampleGenotype || (!hasNonReferenceAlleles && isExcludingReferenceCalls())) {
+                continue;
+            }
+
+            if (isSimple()) {
+                calls.add(extractFields(context, sample), null, null);
+                continue;
+            }
 
-        return call;
+            if (info == null) {
+                info = packInfo(context.getCommonInfo());
+            }
+
+            calls.add(extractFields(context, sample), info, packGenotype(context.getGenotype(sample), PackedValues.size(info)));
+        }
+    }
+
+    /**
+     * @param previous the region queried before this one, calls starting in it
+     * were already added
+     */
+    private void addCallsInRegion(VCFFileReader reader, GenomicRegion region, GenomicRegion previous, VcfCalls calls) {
+
+        boolean sameContig = previous != null && previous.getContig().equals(region.getContig());
+
+        try (CloseableIterator<VariantContext> contexts = reader.query(region.getContig(), region.getStart(), region.getEnd())) {
+
+            while (contexts.hasNext()) {
+
+                VariantContext context = contexts.next();
+
+                if (sameContig && context.getStart() <= previous.getEnd()) {
+                    continue;
+                }
+
+                addCalls(context, calls);
+            }
+        }
+    }
+
+    private long getFirstBlockPosition(Index index, String contig) {
+        return index.getBlocks(contig, 1, Integer.MAX_VALUE).stream()
+                .mapToLong(Block::getStartPosition)
+                .min()
+                .orElse(Long.MAX_VALUE);
+    }
+
+    /**
+     * The regions decoded by separate tasks: either the configured regions or
+     * all indexed contigs in the order of the file. Empty if the file is not
+     * indexed.
+     */
+    private List<GenomicRegion> findPartitions(String fileName) {
+
+        if (!regions.isEmpty()) {
+            return regions;
+        }
+
+        File indexFile = new File(Tribble.tabixIndexFile(fileName));
+
+        if (!indexFile.exists()) {
+            indexFile = new File(Tribble.indexFile(fileName));
+        }
+
+        if (!indexFile.exists()) {
+            return Collections.emptyList();
+        }
+
+        Index index = IndexFactory.loadIndex(indexFile.getAbsolutePath());
+
+        return index.getSequenceNames().stream()
+                .sorted(Comparator.comparingLong(contig -> getFirstBlockPosition(index, contig)))
+                .map(contig -> new GenomicRegion(contig, 1, Integer.MAX_VALUE))
+                .collect(Collectors.toList());
+    }
+
+    private VcfCalls readCallsInParallel(String fileName, List<GenomicRegion> partitions) {
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<VCFFileReader> readers = Collections.synchronizedList(new ArrayList<>());
+
+        // readers are not thread safe, every worker queries its own one
+        ThreadLocal<VCFFileReader> workerReader = ThreadLocal.withInitial(() -> {
+            VCFFileReader reader = new VCFFileReader(new File(fileName), true);
+            readers.add(reader);
+            return reader;
+        });
+
+        try {
+            List<VcfCalls> partitionCalls = pool.submit(() -> IntStream.range(0, partitions.size())
+                    .parallel()
+                    .mapToObj(i -> {
+                        VcfCalls calls = new VcfCalls();
+                        addCallsInRegion(workerReader.get(), partitions.get(i), i == 0 ? null : partitions.get(i - 1), calls);
+                        return calls;
+                    })
+                    .collect(Collectors.toList())
+            ).join();
+
+            VcfCalls calls = new VcfCalls();
+
+            for (int i = 0; i < partitionCalls.size(); i++) {
+                calls.addAll(partitionCalls.get(i));
+                partitionCalls.set(i, null);
+            }
+
+            return calls;
+
+        } finally {
+            pool.shutdown();
+            readers.forEach(VCFFileReader::close);
+        }
     }
 
     @Override
     public VariantTable readTable(String fileName) {
-        VCFFileReader reader = new VCFFileReader(new File(fileName), false);
-        VCFHeader header = reader.getFileHeader();
+        try (VCFFileReader reader = openReader(fileName)) {
 
-        List<String> newColumns = new ArrayList<>(Arrays.asList(VariantTable.MANDATORY_FIELDS));
-        List<VariantPropertyType> newTypes = new ArrayList<>(Arrays.asList(VariantTable.MANDATORY_FIELDS_TYPES));
+            initColumnsAndTypes(reader.getFileHeader());
 
-        this.columns = newColumns;
-        this.prefixedColumns = new ArrayList<>();
-        this.types = newTypes;
+            List<GenomicRegion> partitions = parallelism > 1 ? findPartitions(fileName) : regions;
+            VcfCalls calls;
 
-        extractColumnsAndTypes(header);
+            if (parallelism > 1 && partitions.size() > 1) {
 
-        List<List<Object>> calls = new ArrayList<>();
+                calls = readCallsInParallel(fileName, partitions);
 
-        for (VariantContext context : reader) {
+            } else if (!regions.isEmpty()) {
 
-            for (String sample : context.getSampleNamesOrderedByName()) {
+                calls = new VcfCalls();
 
-                List<Allele> alleles = context.getGenotype(sample).getAlleles();
+                for (int i = 0; i < regions.size(); i++) {
+                    addCallsInRegion(reader, regions.get(i), i == 0 ? null : regions.get(i - 1), calls);
+                }
 
-                boolean hasSampleGenotype = alleles.stream().anyMatch(allele -> allele.isCalled());
-                boolean hasNonReferenceAlleles = alleles.stream().anyMatch(allele -> allele.isNonReference());
+            } else {
 
-                if (!hasSampleGenotype || (!hasNonReferenceAlleles && isExcludingReferenceCalls())) {
-                    continue;
+                calls = new VcfCalls();
+
+                for (VariantContext context : reader) {
+                    addCalls(context, calls);
                 }
+            }
+
+            return createTable(calls);
+        }
+    }
+
+    /**
+     * The mandatory and required vcf fields are stored right away, info and
+     * genotype columns are decoded from the packed attributes on first use.
+     */
+    private VariantTable createTable(VcfCalls calls) {
+
+        int numberOfRows = calls.fields.size();
+        List<LazyColumn> lazyColumns = new ArrayList<>(types.size());
 
-                calls.add(extractCall(context, sample, columns, types));
+        for (int i = 0; i < ATTRIBUTE_OFFSET; i++) {
 
+            VariantColumn column = VariantColumn.create(types.get(i), numberOfRows);
+
+            for (List<Object> fields : calls.fields) {
+                column.add(fields.get(i));
             }
 
+            column.trimToSize();
+            lazyColumns.add(LazyColumn.of(column));
         }
 
-        return new VariantTable(calls, prefixedColumns, types);
+        byte[][] infos = calls.infos.toArray(new byte[calls.infos.size()][]);
+        byte[][] genotypes = calls.genotypes.toArray(new byte[calls.genotypes.size()][]);
+        // the reader may be reused for other files
+        List<VariantPropertyType> attributeTypes = types;
+
+        for (int i = ATTRIBUTE_OFFSET; i < types.size(); i++) {
+
+            int column = i;
 
+            lazyColumns.add(new LazyColumn(types.get(i), numberOfRows,
+                    row -> extractAttribute(infos[row], genotypes[row], column, attributeTypes)));
+        }
+
+        return VariantTable.fromLazyColumns(lazyColumns, prefixedColumns, types);
+    }
+
+    private void initColumnsAndTypes(VCFHeader header) {
+
+        List<String> newColumns = new ArrayList<>(Arrays.asList(VariantTable.MANDATORY_FIELDS));
+        List<VariantPropertyType> newTypes = new ArrayList<>(Arrays.asList(VariantTable.MANDATORY_FIELDS_TYPES));
+
+        this.columns = newColumns;
+        this.prefixedColumns = new ArrayList<>();
+        this.types = newTypes;
+
+        extractColumnsAndTypes(header);
     }
 
     public boolean isSimple() {
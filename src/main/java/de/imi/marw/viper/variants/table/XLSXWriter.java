@@ -118,7 +118,7 @@ public class XLSXWriter {
 
     public void writeAllToXSLX(VariantTableCluster cluster, String fileName) {
 
-        int[] indices = IntStream.range(0, cluster.getClusteredTable().getRawCalls().size()).toArray();
+        int[] indices = IntStream.range(0, cluster.getClusteredTable().getNumberOfUnfilteredCalls()).toArray();
 
         writeToXSLX(cluster, indices, fileName);
 
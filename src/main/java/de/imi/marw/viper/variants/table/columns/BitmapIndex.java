@@ -0,0 +1,55 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table.columns;
+
+import java.util.BitSet;
+
+/**
+ * Keeps one bitset of matching rows for every distinct value of a string
+ * column.
+ *
+ * @author marius
+ */
+public class BitmapIndex implements ColumnIndex {
+
+    private final StringDictionary dictionary;
+    private final BitSet[] rowsByCode;
+
+    BitmapIndex(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.rowsByCode = new BitSet[dictionary.size()];
+
+        for (int i = 0; i < rowsByCode.length; i++) {
+            this.rowsByCode[i] = new BitSet();
+        }
+    }
+
+    void addRow(int code, int row) {
+        rowsByCode[code].set(row);
+    }
+
+    public void addRows(String value, BitSet target) {
+
+        int code = dictionary.lookup(value);
+
+        if (code >= 0 && code < rowsByCode.length) {
+            target.or(rowsByCode[code]);
+        }
+    }
+}
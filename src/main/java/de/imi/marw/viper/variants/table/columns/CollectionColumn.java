@@ -0,0 +1,226 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table.columns;
+
+import de.imi.marw.viper.util.Fingerprint;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stores the collections of all rows back to back in a single value array.
+ * The values of row {@code i} are found between {@code getOffset(i)}
+ * (inclusive) and {@code getOffset(i + 1)} (exclusive).
+ *
+ * @author marius
+ * @param <T> the boxed element type of the collections
+ */
+public abstract class CollectionColumn<T> extends VariantColumn {
+
+    private int[] offsets;
+    private int size;
+
+    public CollectionColumn(int expectedSize) {
+        this.offsets = new int[expectedSize + 1];
+        this.size = 0;
+    }
+
+    protected abstract int getValueCapacity();
+
+    protected abstract void resizeValues(int capacity);
+
+    protected abstract void moveValues(int from, int to, int length);
+
+    protected abstract T getElement(int valueIndex);
+
+    protected abstract void setElement(int valueIndex, T element);
+
+    /**
+     * Copies all values of the other column to this column, starting at the
+     * given value index.
+     */
+    protected abstract void copyValues(CollectionColumn<T> source, int to);
+
+    protected abstract void writeElements(DataOutput out) throws IOException;
+
+    protected abstract void readElements(ByteBuffer buffer);
+
+    /**
+     * @return a hash of every element of all collections
+     */
+    protected abstract long[] hashElements();
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getOffset(int row) {
+        return offsets[row];
+    }
+
+    public int getLength(int row) {
+        checkRow(row);
+        return offsets[row + 1] - offsets[row];
+    }
+
+    public int getNumberOfValues() {
+        return offsets[size];
+    }
+
+    @Override
+    public List<T> get(int row) {
+
+        checkRow(row);
+
+        List<T> values = new ArrayList<>(offsets[row + 1] - offsets[row]);
+
+        for (int i = offsets[row]; i < offsets[row + 1]; i++) {
+            values.add(getElement(i));
+        }
+
+        return values;
+    }
+
+    @Override
+    public void add(Object value) {
+
+        Collection<T> elements = asElements(value);
+        int valueCount = getNumberOfValues();
+
+        if (size + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, grow(offsets.length, size + 2));
+        }
+
+        ensureValueCapacity(valueCount + elements.size());
+
+        for (T element : elements) {
+            setElement(valueCount++, element);
+        }
+
+        offsets[++size] = valueCount;
+    }
+
+    @Override
+    public void addAll(VariantColumn other) {
+
+        checkSameType(other);
+        CollectionColumn<T> column = asSameColumn(other);
+
+        int valueCount = getNumberOfValues();
+
+        if (size + column.size + 1 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, grow(offsets.length, size + column.size + 1));
+        }
+
+        ensureValueCapacity(valueCount + column.getNumberOfValues());
+        copyValues(column, valueCount);
+
+        for (int row = 1; row <= column.size; row++) {
+            offsets[size + row] = valueCount + column.offsets[row];
+        }
+
+        size += column.size;
+    }
+
+    @Override
+    protected void setValue(int row, Object value) {
+
+        Collection<T> elements = asElements(value);
+
+        int start = offsets[row];
+        int end = offsets[row + 1];
+        int delta = elements.size() - (end - start);
+
+        if (delta != 0) {
+            ensureValueCapacity(getNumberOfValues() + delta);
+            moveValues(end, end + delta, getNumberOfValues() - end);
+
+            for (int i = row + 1; i <= size; i++) {
+                offsets[i] += delta;
+            }
+        }
+
+        int valueIndex = start;
+        for (T element : elements) {
+            setElement(valueIndex++, element);
+        }
+    }
+
+    @Override
+    protected void writeValues(DataOutput out) throws IOException {
+        writeInts(out, offsets, size + 1);
+        writeElements(out);
+    }
+
+    @Override
+    protected void addValuesTo(Fingerprint fingerprint) {
+
+        long[] elementHashes = hashElements();
+
+        for (int row = 0; row < size; row++) {
+
+            fingerprint.add(offsets[row + 1] - offsets[row]);
+
+            for (int i = offsets[row]; i < offsets[row + 1]; i++) {
+                fingerprint.add(elementHashes[i]);
+            }
+        }
+    }
+
+    @Override
+    protected void readValues(ByteBuffer buffer) {
+        offsets = readInts(buffer);
+        size = offsets.length - 1;
+        readElements(buffer);
+    }
+
+    @Override
+    public void trimToSize() {
+        offsets = Arrays.copyOf(offsets, size + 1);
+        resizeValues(getNumberOfValues());
+    }
+
+    /**
+     * Values are checked against the column type when they are set on the
+     * table, so the elements are of type T.
+     */
+    @SuppressWarnings("unchecked")
+    private Collection<T> asElements(Object value) {
+        return (Collection<T>) value;
+    }
+
+    /**
+     * Only to be called after {@link #checkSameType(VariantColumn)}.
+     */
+    @SuppressWarnings("unchecked")
+    private CollectionColumn<T> asSameColumn(VariantColumn other) {
+        return (CollectionColumn<T>) other;
+    }
+
+    private void ensureValueCapacity(int minCapacity) {
+        if (minCapacity > getValueCapacity()) {
+            resizeValues(grow(getValueCapacity(), minCapacity));
+        }
+    }
+}
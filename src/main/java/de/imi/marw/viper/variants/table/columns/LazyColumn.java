@@ -0,0 +1,140 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table.columns;
+
+import de.imi.marw.viper.variants.VariantPropertyType;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.IntFunction;
+
+/**
+ * Holds a column that may be decoded from raw per-row data only when it is
+ * needed. Single values can be decoded without materializing the column, e.g.
+ * when fetching rows, while {@link #getColumn()} decodes all rows once and
+ * releases the decoder afterwards.
+ *
+ * @author marius
+ */
+public class LazyColumn {
+
+    private final VariantPropertyType type;
+    private final int size;
+
+    private volatile VariantColumn column;
+    private volatile IntFunction<Object> decoder;
+
+    public LazyColumn(VariantPropertyType type, int size, IntFunction<Object> decoder) {
+        this.type = type;
+        this.size = size;
+        this.decoder = decoder;
+    }
+
+    private LazyColumn(VariantColumn column) {
+        this.type = column.getType();
+        this.size = column.size();
+        this.column = column;
+    }
+
+    public static LazyColumn of(VariantColumn column) {
+        return new LazyColumn(column);
+    }
+
+    public VariantPropertyType getType() {
+        return type;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isMaterialized() {
+        return column != null;
+    }
+
+    public Object get(int row) {
+
+        VariantColumn materialized = column;
+
+        if (materialized != null) {
+            return materialized.get(row);
+        }
+
+        IntFunction<Object> currentDecoder = decoder;
+
+        // the column is assigned before the decoder is released
+        if (currentDecoder == null) {
+            return column.get(row);
+        }
+
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for column of size " + size);
+        }
+
+        return currentDecoder.apply(row);
+    }
+
+    public VariantColumn getColumn() {
+
+        VariantColumn materialized = column;
+
+        if (materialized != null) {
+            return materialized;
+        }
+
+        synchronized (this) {
+
+            if (column == null) {
+                column = decode(decoder);
+                decoder = null;
+            }
+
+            return column;
+        }
+    }
+
+    /**
+     * Writes the column like {@link VariantColumn#write(java.io.DataOutput)}.
+     * A column that is not materialized is decoded into a temporary column,
+     * which is not kept afterwards.
+     */
+    public void write(DataOutput out) throws IOException {
+
+        IntFunction<Object> currentDecoder = decoder;
+        VariantColumn materialized = column;
+
+        if (materialized == null && currentDecoder != null) {
+            decode(currentDecoder).write(out);
+        } else {
+            getColumn().write(out);
+        }
+    }
+
+    private VariantColumn decode(IntFunction<Object> rowDecoder) {
+
+        VariantColumn decoded = VariantColumn.create(type, size);
+
+        for (int row = 0; row < size; row++) {
+            decoded.add(rowDecoder.apply(row));
+        }
+
+        decoded.trimToSize();
+
+        return decoded;
+    }
+}
@@ -0,0 +1,152 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table.columns;
+
+import de.imi.marw.viper.variants.VariantPropertyType;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ *
+ * @author marius
+ */
+public class NumericCollectionColumn extends CollectionColumn<Double> {
+
+    private double[] values;
+    private final BitSet missingValues;
+
+    public NumericCollectionColumn(int expectedSize) {
+        super(expectedSize);
+        this.values = new double[expectedSize];
+        this.missingValues = new BitSet();
+    }
+
+    @Override
+    public VariantPropertyType getType() {
+        return VariantPropertyType.NUMERIC_COLLECTION;
+    }
+
+    public double getDouble(int valueIndex) {
+        return values[valueIndex];
+    }
+
+    public boolean isMissing(int valueIndex) {
+        return missingValues.get(valueIndex);
+    }
+
+    @Override
+    protected ColumnIndex createIndex() {
+
+        int numberOfValues = getNumberOfValues();
+        double[] presentValues = new double[numberOfValues];
+        int[] rows = new int[numberOfValues];
+        BitSet rowsWithMissingValues = new BitSet();
+        int count = 0;
+
+        for (int row = 0; row < size(); row++) {
+            for (int i = getOffset(row); i < getOffset(row + 1); i++) {
+
+                if (missingValues.get(i)) {
+                    rowsWithMissingValues.set(row);
+                } else {
+                    presentValues[count] = values[i];
+                    rows[count] = row;
+                    count++;
+                }
+            }
+        }
+
+        return new SortedIndex(presentValues, rows, count, rowsWithMissingValues);
+    }
+
+    @Override
+    protected int getValueCapacity() {
+        return values.length;
+    }
+
+    @Override
+    protected void resizeValues(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected void moveValues(int from, int to, int length) {
+        System.arraycopy(values, from, values, to, length);
+
+        BitSet movedMissing = missingValues.get(from, from + length);
+        missingValues.clear(Math.min(from, to), Math.max(from, to) + length);
+
+        for (int i = movedMissing.nextSetBit(0); i >= 0; i = movedMissing.nextSetBit(i + 1)) {
+            missingValues.set(to + i);
+        }
+    }
+
+    @Override
+    protected void copyValues(CollectionColumn<Double> source, int to) {
+
+        NumericCollectionColumn column = (NumericCollectionColumn) source;
+        int numberOfValues = column.getNumberOfValues();
+
+        System.arraycopy(column.values, 0, values, to, numberOfValues);
+        missingValues.clear(to, to + numberOfValues);
+
+        for (int i = column.missingValues.nextSetBit(0); i >= 0 && i < numberOfValues; i = column.missingValues.nextSetBit(i + 1)) {
+            missingValues.set(to + i);
+        }
+    }
+
+    @Override
+    protected void writeElements(DataOutput out) throws IOException {
+        writeDoubles(out, values, getNumberOfValues());
+        writeBitSet(out, missingValues, getNumberOfValues());
+    }
+
+    @Override
+    protected long[] hashElements() {
+
+        long[] hashes = new long[getNumberOfValues()];
+
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = Double.doubleToLongBits(missingValues.get(i) ? Double.NaN : values[i]);
+        }
+
+        return hashes;
+    }
+
+    @Override
+    protected void readElements(ByteBuffer buffer) {
+        values = readDoubles(buffer);
+        missingValues.clear();
+        missingValues.or(readBitSet(buffer));
+    }
+
+    @Override
+    protected Double getElement(int valueIndex) {
+        return missingValues.get(valueIndex) ? null : values[valueIndex];
+    }
+
+    @Override
+    protected void setElement(int valueIndex, Double element) {
+        missingValues.set(valueIndex, element == null);
+        values[valueIndex] = element == null ? 0 : element;
+    }
+}
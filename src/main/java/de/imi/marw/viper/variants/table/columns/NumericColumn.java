@@ -0,0 +1,161 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table.columns;
+
+import de.imi.marw.viper.util.Fingerprint;
+import de.imi.marw.viper.variants.VariantPropertyType;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ *
+ * @author marius
+ */
+public class NumericColumn extends VariantColumn {
+
+    private double[] values;
+    private final BitSet missing;
+    private int size;
+
+    public NumericColumn(int expectedSize) {
+        this.values = new double[expectedSize];
+        this.missing = new BitSet();
+        this.size = 0;
+    }
+
+    @Override
+    public VariantPropertyType getType() {
+        return VariantPropertyType.NUMERIC;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public double getDouble(int row) {
+        checkRow(row);
+        return values[row];
+    }
+
+    public boolean isMissing(int row) {
+        checkRow(row);
+        return missing.get(row);
+    }
+
+    @Override
+    public Double get(int row) {
+        return isMissing(row) ? null : values[row];
+    }
+
+    public void addDouble(double value) {
+        ensureCapacity(size + 1);
+        values[size++] = value;
+    }
+
+    public void addMissing() {
+        ensureCapacity(size + 1);
+        missing.set(size++);
+    }
+
+    @Override
+    public void add(Object value) {
+        if (value == null) {
+            addMissing();
+        } else {
+            addDouble((Double) value);
+        }
+    }
+
+    @Override
+    public void addAll(VariantColumn other) {
+
+        checkSameType(other);
+        NumericColumn column = (NumericColumn) other;
+
+        ensureCapacity(size + column.size);
+        System.arraycopy(column.values, 0, values, size, column.size);
+        missing.clear(size, size + column.size);
+
+        for (int row = column.missing.nextSetBit(0); row >= 0 && row < column.size; row = column.missing.nextSetBit(row + 1)) {
+            missing.set(size + row);
+        }
+
+        size += column.size;
+    }
+
+    @Override
+    protected void setValue(int row, Object value) {
+        missing.set(row, value == null);
+        values[row] = value == null ? 0 : (Double) value;
+    }
+
+    @Override
+    protected ColumnIndex createIndex() {
+
+        double[] presentValues = new double[size];
+        int[] rows = new int[size];
+        int count = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (!missing.get(i)) {
+                presentValues[count] = values[i];
+                rows[count] = i;
+                count++;
+            }
+        }
+
+        return new SortedIndex(presentValues, rows, count, (BitSet) missing.clone());
+    }
+
+    @Override
+    protected void writeValues(DataOutput out) throws IOException {
+        writeDoubles(out, values, size);
+        writeBitSet(out, missing, size);
+    }
+
+    @Override
+    protected void addValuesTo(Fingerprint fingerprint) {
+        for (int row = 0; row < size; row++) {
+            fingerprint.add(missing.get(row) ? Double.NaN : values[row]);
+        }
+    }
+
+    @Override
+    protected void readValues(ByteBuffer buffer) {
+        values = readDoubles(buffer);
+        size = values.length;
+        missing.clear();
+        missing.or(readBitSet(buffer));
+    }
+
+    @Override
+    public void trimToSize() {
+        values = Arrays.copyOf(values, size);
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > values.length) {
+            values = Arrays.copyOf(values, grow(values.length, minCapacity));
+        }
+    }
+}
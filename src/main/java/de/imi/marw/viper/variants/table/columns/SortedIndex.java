@@ -0,0 +1,143 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table.columns;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Non-missing values of a numeric column in ascending order together with
+ * the rows they belong to, so that range queries only need two binary
+ * searches.
+ *
+ * @author marius
+ */
+public class SortedIndex implements ColumnIndex {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final double[] values;
+    private final int[] rows;
+    private final BitSet rowsWithMissingValues;
+
+    /**
+     * Takes ownership of the given arrays. NaN values never fall into any
+     * range and are dropped from the index.
+     */
+    SortedIndex(double[] values, int[] rows, int length, BitSet rowsWithMissingValues) {
+
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (!Double.isNaN(values[i])) {
+                values[count] = values[i];
+                rows[count] = rows[i];
+                count++;
+            }
+        }
+
+        this.values = Arrays.copyOf(values, count);
+        this.rows = Arrays.copyOf(rows, count);
+        this.rowsWithMissingValues = rowsWithMissingValues;
+
+        sort(this.values, this.rows, 0, count - 1);
+    }
+
+    public void addRowsInRange(double min, double max, BitSet target) {
+
+        int from = lowerBound(min);
+
+        for (int i = from; i < values.length && values[i] <= max; i++) {
+            target.set(rows[i]);
+        }
+    }
+
+    public void addRowsWithMissingValues(BitSet target) {
+        target.or(rowsWithMissingValues);
+    }
+
+    private int lowerBound(double value) {
+
+        int low = 0;
+        int high = values.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (values[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private static void sort(double[] values, int[] rows, int low, int high) {
+
+        while (high - low > INSERTION_SORT_THRESHOLD) {
+
+            double pivot = medianOfThree(values[low], values[(low + high) >>> 1], values[high]);
+
+            int i = low;
+            int j = high;
+
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, rows, i++, j--);
+                }
+            }
+
+            // recurse into the smaller half to bound the stack depth
+            if (j - low < high - i) {
+                sort(values, rows, low, j);
+                low = i;
+            } else {
+                sort(values, rows, i, high);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && values[j - 1] > values[j]; j--) {
+                swap(values, rows, j - 1, j);
+            }
+        }
+    }
+
+    private static double medianOfThree(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private static void swap(double[] values, int[] rows, int i, int j) {
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+
+        int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+    }
+}
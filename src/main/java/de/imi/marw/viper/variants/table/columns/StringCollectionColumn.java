@@ -0,0 +1,130 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table.columns;
+
+import de.imi.marw.viper.variants.VariantPropertyType;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Collection column whose elements are dictionary encoded.
+ *
+ * @author marius
+ */
+public class StringCollectionColumn extends CollectionColumn<String> {
+
+    private int[] codes;
+    private final StringDictionary dictionary;
+
+    public StringCollectionColumn(int expectedSize) {
+        super(expectedSize);
+        this.codes = new int[expectedSize];
+        this.dictionary = new StringDictionary();
+    }
+
+    @Override
+    public VariantPropertyType getType() {
+        return VariantPropertyType.STRING_COLLECTION;
+    }
+
+    public int getCode(int valueIndex) {
+        return codes[valueIndex];
+    }
+
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    protected ColumnIndex createIndex() {
+
+        BitmapIndex bitmapIndex = new BitmapIndex(dictionary);
+
+        for (int row = 0; row < size(); row++) {
+            for (int i = getOffset(row); i < getOffset(row + 1); i++) {
+                bitmapIndex.addRow(codes[i], row);
+            }
+        }
+
+        return bitmapIndex;
+    }
+
+    @Override
+    protected int getValueCapacity() {
+        return codes.length;
+    }
+
+    @Override
+    protected void resizeValues(int capacity) {
+        codes = Arrays.copyOf(codes, capacity);
+    }
+
+    @Override
+    protected void moveValues(int from, int to, int length) {
+        System.arraycopy(codes, from, codes, to, length);
+    }
+
+    @Override
+    protected void copyValues(CollectionColumn<String> source, int to) {
+
+        StringCollectionColumn column = (StringCollectionColumn) source;
+        int[] codeMap = dictionary.encodeAll(column.dictionary);
+
+        for (int i = 0; i < column.getNumberOfValues(); i++) {
+            codes[to + i] = codeMap[column.codes[i]];
+        }
+    }
+
+    @Override
+    protected void writeElements(DataOutput out) throws IOException {
+        dictionary.write(out);
+        writeInts(out, codes, getNumberOfValues());
+    }
+
+    @Override
+    protected long[] hashElements() {
+
+        long[] valueHashes = dictionary.hashValues();
+        long[] hashes = new long[getNumberOfValues()];
+
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = valueHashes[codes[i]];
+        }
+
+        return hashes;
+    }
+
+    @Override
+    protected void readElements(ByteBuffer buffer) {
+        dictionary.read(buffer);
+        codes = readInts(buffer);
+    }
+
+    @Override
+    protected String getElement(int valueIndex) {
+        return dictionary.decode(codes[valueIndex]);
+    }
+
+    @Override
+    protected void setElement(int valueIndex, String element) {
+        codes[valueIndex] = dictionary.encode(element);
+    }
+}
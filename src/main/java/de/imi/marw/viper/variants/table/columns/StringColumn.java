@@ -0,0 +1,140 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table.columns;
+
+import de.imi.marw.viper.util.Fingerprint;
+import de.imi.marw.viper.variants.VariantPropertyType;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Dictionary encoded string column.
+ *
+ * @author marius
+ */
+public class StringColumn extends VariantColumn {
+
+    private int[] codes;
+    private final StringDictionary dictionary;
+    private int size;
+
+    public StringColumn(int expectedSize) {
+        this.codes = new int[expectedSize];
+        this.dictionary = new StringDictionary();
+        this.size = 0;
+    }
+
+    @Override
+    public VariantPropertyType getType() {
+        return VariantPropertyType.STRING;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getCode(int row) {
+        checkRow(row);
+        return codes[row];
+    }
+
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public String get(int row) {
+        return dictionary.decode(getCode(row));
+    }
+
+    @Override
+    public void add(Object value) {
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, grow(codes.length, size + 1));
+        }
+        codes[size++] = dictionary.encode((String) value);
+    }
+
+    @Override
+    public void addAll(VariantColumn other) {
+
+        checkSameType(other);
+        StringColumn column = (StringColumn) other;
+
+        int[] codeMap = dictionary.encodeAll(column.dictionary);
+
+        if (size + column.size > codes.length) {
+            codes = Arrays.copyOf(codes, grow(codes.length, size + column.size));
+        }
+
+        for (int row = 0; row < column.size; row++) {
+            codes[size + row] = codeMap[column.codes[row]];
+        }
+
+        size += column.size;
+    }
+
+    @Override
+    protected void setValue(int row, Object value) {
+        codes[row] = dictionary.encode((String) value);
+    }
+
+    @Override
+    protected ColumnIndex createIndex() {
+
+        BitmapIndex bitmapIndex = new BitmapIndex(dictionary);
+
+        for (int row = 0; row < size; row++) {
+            bitmapIndex.addRow(codes[row], row);
+        }
+
+        return bitmapIndex;
+    }
+
+    @Override
+    protected void writeValues(DataOutput out) throws IOException {
+        dictionary.write(out);
+        writeInts(out, codes, size);
+    }
+
+    @Override
+    protected void addValuesTo(Fingerprint fingerprint) {
+
+        long[] valueHashes = dictionary.hashValues();
+
+        for (int row = 0; row < size; row++) {
+            fingerprint.add(valueHashes[codes[row]]);
+        }
+    }
+
+    @Override
+    protected void readValues(ByteBuffer buffer) {
+        dictionary.read(buffer);
+        codes = readInts(buffer);
+        size = codes.length;
+    }
+
+    @Override
+    public void trimToSize() {
+        codes = Arrays.copyOf(codes, size);
+    }
+}
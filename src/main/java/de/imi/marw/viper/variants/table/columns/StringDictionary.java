@@ -0,0 +1,123 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table.columns;
+
+import de.imi.marw.viper.util.Fingerprint;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps every distinct string of a column to a dense integer code, so that
+ * each distinct value is only stored once per column.
+ *
+ * @author marius
+ */
+public class StringDictionary {
+
+    private final List<String> values;
+    private final Map<String, Integer> codes;
+
+    public StringDictionary() {
+        this.values = new ArrayList<>();
+        this.codes = new HashMap<>();
+    }
+
+    public synchronized int encode(String value) {
+
+        Integer code = codes.get(value);
+
+        if (code == null) {
+            code = values.size();
+            values.add(value);
+            codes.put(value, code);
+        }
+
+        return code;
+    }
+
+    /**
+     * Encodes all values of another dictionary.
+     *
+     * @return the code in this dictionary for every code of the other one
+     */
+    public int[] encodeAll(StringDictionary other) {
+
+        List<String> otherValues;
+
+        synchronized (other) {
+            otherValues = new ArrayList<>(other.values);
+        }
+
+        int[] codeMap = new int[otherValues.size()];
+
+        for (int code = 0; code < codeMap.length; code++) {
+            codeMap[code] = encode(otherValues.get(code));
+        }
+
+        return codeMap;
+    }
+
+    public synchronized int lookup(String value) {
+        return codes.getOrDefault(value, -1);
+    }
+
+    public synchronized String decode(int code) {
+        return values.get(code);
+    }
+
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * @return a hash of the value of every code
+     */
+    synchronized long[] hashValues() {
+        return values.stream()
+                .mapToLong(Fingerprint::hash)
+                .toArray();
+    }
+
+    synchronized void write(DataOutput out) throws IOException {
+
+        out.writeInt(values.size());
+
+        for (String value : values) {
+            VariantColumn.writeString(out, value);
+        }
+    }
+
+    /**
+     * Reads the values written by {@link #write(java.io.DataOutput)}, which
+     * keeps their codes.
+     */
+    synchronized void read(ByteBuffer buffer) {
+
+        int size = buffer.getInt();
+
+        for (int code = 0; code < size; code++) {
+            encode(VariantColumn.readString(buffer));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.variants.table.columns;
+
+import de.imi.marw.viper.util.Fingerprint;
+import de.imi.marw.viper.variants.VariantPropertyType;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * A single typed column of a variant table. Values are stored in primitive
+ * arrays by the concrete implementations and only boxed when they are
+ * requested through {@link #get(int)}.
+ *
+ * @author marius
+ */
+public abstract class VariantColumn {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int version;
+    private ColumnIndex index;
+
+    public abstract VariantPropertyType getType();
+
+    public abstract int size();
+
+    public abstract Object get(int row);
+
+    public abstract void add(Object value);
+
+    /**
+     * Appends all rows of a column of the same type.
+     */
+    public abstract void addAll(VariantColumn other);
+
+    public abstract void trimToSize();
+
+    protected abstract void setValue(int row, Object value);
+
+    protected abstract ColumnIndex createIndex();
+
+    protected abstract void writeValues(DataOutput out) throws IOException;
+
+    protected abstract void addValuesTo(Fingerprint fingerprint);
+
+    /**
+     * Reads the values written by {@link #writeValues(java.io.DataOutput)}
+     * into this empty column.
+     */
+    protected abstract void readValues(ByteBuffer buffer);
+
+    public synchronized void set(int row, Object value) {
+        checkRow(row);
+        setValue(row, value);
+        this.version++;
+        this.index = null;
+    }
+
+    /**
+     * Returns the lookup structure used for filtering, which is built on
+     * first use and dropped whenever the column is modified.
+     */
+    public synchronized ColumnIndex getIndex() {
+
+        if (index == null) {
+            index = createIndex();
+        }
+
+        return index;
+    }
+
+    /**
+     * Is increased on every modification of the column, which allows caches
+     * derived from the column values to detect that they are outdated.
+     */
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    /**
+     * Writes the type and all rows in a binary form that can be read by
+     * {@link #read(java.nio.ByteBuffer)}.
+     */
+    public synchronized void write(DataOutput out) throws IOException {
+        out.writeByte(getType().ordinal());
+        writeValues(out);
+    }
+
+    /**
+     * Adds all rows to the fingerprint, without boxing the values.
+     */
+    public synchronized void addTo(Fingerprint fingerprint) {
+        fingerprint.add(getType().ordinal());
+        fingerprint.add(size());
+        addValuesTo(fingerprint);
+    }
+
+    public static VariantColumn read(ByteBuffer buffer) {
+
+        int ordinal = buffer.get();
+
+        if (ordinal < 0 || ordinal >= VariantPropertyType.values().length) {
+            throw new IllegalArgumentException("Unknown column type " + ordinal);
+        }
+
+        VariantColumn column = create(VariantPropertyType.values()[ordinal], 0);
+        column.readValues(buffer);
+
+        return column;
+    }
+
+    protected static void writeInts(DataOutput out, int[] values, int length) throws IOException {
+        out.writeInt(length);
+        for (int i = 0; i < length; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    protected static int[] readInts(ByteBuffer buffer) {
+        int[] values = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    protected static void writeDoubles(DataOutput out, double[] values, int length) throws IOException {
+        out.writeInt(length);
+        for (int i = 0; i < length; i++) {
+            out.writeDouble(values[i]);
+        }
+    }
+
+    protected static double[] readDoubles(ByteBuffer buffer) {
+        double[] values = new double[buffer.getInt()];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Double.BYTES);
+        return values;
+    }
+
+    protected static void writeBitSet(DataOutput out, BitSet bits, int length) throws IOException {
+        long[] words = bits.get(0, length).toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    protected static BitSet readBitSet(ByteBuffer buffer) {
+        long[] words = new long[buffer.getInt()];
+        buffer.asLongBuffer().get(words);
+        buffer.position(buffer.position() + words.length * Long.BYTES);
+        return BitSet.valueOf(words);
+    }
+
+    protected static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    protected static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    protected void checkRow(int row) {
+        if (row < 0 || row >= size()) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for column of size " + size());
+        }
+    }
+
+    protected void checkSameType(VariantColumn other) {
+        if (other.getType() != getType()) {
+            throw new IllegalArgumentException("Cannot append column of type " + other.getType() + " to column of type " + getType());
+        }
+    }
+
+    protected static int grow(int capacity, int minCapacity) {
+        return Math.max(Math.max(capacity + (capacity >> 1), minCapacity), INITIAL_CAPACITY);
+    }
+
+    public static VariantColumn create(VariantPropertyType type, int expectedSize) {
+        switch (type) {
+            case NUMERIC:
+                return new NumericColumn(expectedSize);
+            case STRING:
+                return new StringColumn(expectedSize);
+            case NUMERIC_COLLECTION:
+                return new NumericCollectionColumn(expectedSize);
+            case STRING_COLLECTION:
+                return new StringCollectionColumn(expectedSize);
+            default:
+                throw new IllegalStateException("Unexpected type " + type + " when creating variant column");
+        }
+    }
+}
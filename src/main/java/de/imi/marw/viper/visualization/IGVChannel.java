@@ -0,0 +1,243 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.visualization;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pipelined connection to the batch port of IGV. All lines of a batch are
+ * written at once, IGV answers every line in order, so responses are matched
+ * to their batch on a separate reader thread. Batches still waiting for
+ * responses when the connection closes are completed with error responses.
+ *
+ * @author marius
+ */
+public class IGVChannel implements Closeable {
+
+    private static class Batch {
+
+        private final int numLines;
+        private final Consumer<List<String>> responseHandler;
+        private final List<String> responses;
+
+        private Batch(int numLines, Consumer<List<String>> responseHandler) {
+            this.numLines = numLines;
+            this.responseHandler = responseHandler;
+            this.responses = new ArrayList<>(numLines);
+        }
+    }
+
+    public static final String CLOSED_RESPONSE = "ERROR connection to IGV closed";
+
+    private final Socket socket;
+    private final PrintWriter out;
+    private final BufferedReader in;
+    private final Deque<Batch> pendingBatches;
+    private final int maxPendingBatches;
+    private final Thread reader;
+    private boolean closed;
+
+    public IGVChannel(Socket socket, int maxPendingBatches) throws IOException {
+        this.socket = socket;
+        this.out = new PrintWriter(socket.getOutputStream(), false);
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.pendingBatches = new ArrayDeque<>();
+        this.maxPendingBatches = maxPendingBatches;
+        this.closed = false;
+        this.reader = new Thread(this::readResponses, "igv-reader-" + socket.getPort());
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Writes all lines without waiting for responses.
+     *
+     * @param responseHandler called on the reader thread with one response per
+     * line, batches complete in the order they were sent. If the connection is
+     * closed, the handler is called with error responses instead.
+     */
+    public void send(List<String> lines, Consumer<List<String>> responseHandler) throws IOException {
+
+        synchronized (this) {
+            if (!closed) {
+                write(lines, responseHandler);
+                return;
+            }
+        }
+
+        fail(new Batch(lines.size(), responseHandler));
+        throw new IOException("Connection to IGV is closed");
+    }
+
+    private void write(List<String> lines, Consumer<List<String>> responseHandler) throws IOException {
+
+        if (lines.isEmpty()) {
+            responseHandler.accept(lines);
+            return;
+        }
+
+        this.pendingBatches.addLast(new Batch(lines.size(), responseHandler));
+
+        for (String line : lines) {
+            out.println(line);
+        }
+        out.flush();
+
+        if (out.checkError()) {
+            throw new IOException("Could not write to IGV");
+        }
+    }
+
+    /**
+     * Blocks until fewer batches than the limit are waiting for responses.
+     */
+    public synchronized void awaitCapacity() throws InterruptedException {
+        while (!closed && pendingBatches.size() >= maxPendingBatches) {
+            wait();
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private void readResponses() {
+
+        try {
+            String response;
+
+            while ((response = in.readLine()) != null) {
+
+                Batch completedBatch = null;
+
+                synchronized (this) {
+                    Batch batch = pendingBatches.peekFirst();
+
+                    if (batch == null) {
+                        Logger.getLogger(IGVChannel.class.getName()).log(Level.SEVERE, "Unexpected response from IGV: {0}", response);
+                        continue;
+                    }
+
+                    batch.responses.add(response);
+
+                    if (batch.responses.size() == batch.numLines) {
+                        completedBatch = pendingBatches.removeFirst();
+                    }
+                }
+
+                // handlers run outside the lock, so they may send new batches
+                if (completedBatch != null) {
+                    completedBatch.responseHandler.accept(completedBatch.responses);
+
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+            }
+
+        } catch (IOException ex) {
+            if (!isClosed()) {
+                Logger.getLogger(IGVChannel.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        } finally {
+            failPendingBatches();
+        }
+    }
+
+    /**
+     * Marks the connection as closed and completes all pending batches with
+     * error responses, their handlers run on the calling thread.
+     */
+    private void failPendingBatches() {
+
+        List<Batch> failedBatches;
+
+        synchronized (this) {
+            closed = true;
+            failedBatches = new ArrayList<>(pendingBatches);
+            pendingBatches.clear();
+            notifyAll();
+        }
+
+        if (!failedBatches.isEmpty()) {
+            Logger.getLogger(IGVChannel.class.getName()).log(Level.SEVERE, "Connection to IGV closed, {0} pending batches failed", failedBatches.size());
+        }
+
+        failedBatches.forEach(this::fail);
+    }
+
+    private void fail(Batch batch) {
+
+        while (batch.responses.size() < batch.numLines) {
+            batch.responses.add(CLOSED_RESPONSE);
+        }
+
+        try {
+            batch.responseHandler.accept(batch.responses);
+        } catch (RuntimeException ex) {
+            Logger.getLogger(IGVChannel.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        // the reader does not log the failed read after the socket is closed
+        synchronized (this) {
+            closed = true;
+        }
+
+        try {
+            socket.close();
+        } finally {
+            failPendingBatches();
+            awaitReader();
+        }
+    }
+
+    /**
+     * Waits until the reader completed the batches it took, unless called by
+     * a response handler.
+     */
+    private void awaitReader() {
+
+        if (Thread.currentThread() == reader) {
+            return;
+        }
+
+        try {
+            reader.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
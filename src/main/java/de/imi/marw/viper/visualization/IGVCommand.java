@@ -27,11 +27,30 @@ import java.util.Objects;
 public class IGVCommand implements Comparable<IGVCommand> {
 
     private final String key;
+    private final String track;
     private final String[] subCommands;
     private final Runnable finishedCallback;
     private final boolean urgent;
+    private final long dueAt;
 
     public IGVCommand(String key, String[] subCommands, boolean urgent, Runnable finishedCallback) {
+        this(key, null, subCommands, urgent, 0, finishedCallback);
+    }
+
+    public IGVCommand(String key, String track, String[] subCommands, boolean urgent, Runnable finishedCallback) {
+        this(key, track, subCommands, urgent, 0, finishedCallback);
+    }
+
+    /**
+     * @param track file that has to be loaded as the only track before the
+     * sub commands are run, null if the command does not depend on tracks
+     * @param dueAt for urgent commands the time they were requested, the latest
+     * request runs first. For other commands the time the result is expected
+     * to be needed, the earliest runs first.
+     */
+    public IGVCommand(String key, String track, String[] subCommands, boolean urgent, long dueAt, Runnable finishedCallback) {
+        this.track = track;
+        this.dueAt = dueAt;
         this.subCommands = subCommands;
         this.finishedCallback = finishedCallback;
         this.key = key;
@@ -50,6 +69,18 @@ public class IGVCommand implements Comparable<IGVCommand> {
         return key;
     }
 
+    public String getTrack() {
+        return track;
+    }
+
+    public boolean isUrgent() {
+        return urgent;
+    }
+
+    public long getDueAt() {
+        return dueAt;
+    }
+
     @Override
     public int hashCode() {
         int hash = 3;
@@ -74,6 +105,13 @@ public class IGVCommand implements Comparable<IGVCommand> {
 
     @Override
     public int compareTo(IGVCommand o) {
-        return Boolean.compare(this.urgent, o.urgent);
+
+        int urgentComparison = Boolean.compare(this.urgent, o.urgent);
+
+        if (urgentComparison != 0) {
+            return urgentComparison;
+        }
+
+        return this.urgent ? Long.compare(this.dueAt, o.dueAt) : Long.compare(o.dueAt, this.dueAt);
     }
 }
@@ -0,0 +1,280 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.visualization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocking priority queue of IGV commands, indexed by command key. Commands
+ * are ordered by {@link IGVCommand#compareTo(IGVCommand)}, the greatest first,
+ * equal ones in insertion order. Adding a command replaces a queued command
+ * with the same key, so commands can be reprioritised or cancelled by key in
+ * O(log n). The commands of every track are additionally kept in queue order,
+ * so that the first command on a track is found in O(log n) as well.
+ *
+ * @author marius
+ */
+public class IGVCommandQueue {
+
+    private static class Entry {
+
+        private final IGVCommand command;
+        private final long sequence;
+        private int heapIndex;
+
+        private Entry(IGVCommand command, long sequence) {
+            this.command = command;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Default for the maximal time a command on the preferred track may be due
+     * after the first command and still be taken before it.
+     */
+    public static final long DEFAULT_PREFERRED_TRACK_WINDOW_MS = 2000;
+
+    private final List<Entry> heap;
+    private final Map<String, Entry> entriesByKey;
+    private final Map<String, TreeSet<Entry>> entriesByTrack;
+    private final long preferredTrackWindowMs;
+    private long nextSequence;
+
+    public IGVCommandQueue() {
+        this(DEFAULT_PREFERRED_TRACK_WINDOW_MS);
+    }
+
+    public IGVCommandQueue(long preferredTrackWindowMs) {
+
+        if (preferredTrackWindowMs < 0) {
+            throw new IllegalArgumentException("Preferred track window must not be negative, but is " + preferredTrackWindowMs);
+        }
+
+        this.preferredTrackWindowMs = preferredTrackWindowMs;
+        this.heap = new ArrayList<>();
+        this.entriesByKey = new HashMap<>();
+        this.entriesByTrack = new HashMap<>();
+        this.nextSequence = 0;
+    }
+
+    /**
+     * Adds the command, a queued command with the same key is replaced.
+     */
+    public synchronized void offer(IGVCommand command) {
+
+        remove(command.getKey());
+
+        Entry entry = new Entry(command, nextSequence++);
+        entry.heapIndex = heap.size();
+
+        heap.add(entry);
+        entriesByKey.put(command.getKey(), entry);
+
+        if (command.getTrack() != null) {
+            entriesByTrack.computeIfAbsent(command.getTrack(), track -> new TreeSet<>(IGVCommandQueue::compare)).add(entry);
+        }
+
+        siftUp(entry.heapIndex);
+        notifyAll();
+    }
+
+    /**
+     * @return whether a command with this key was queued
+     */
+    public synchronized boolean remove(String key) {
+
+        Entry entry = entriesByKey.get(key);
+
+        if (entry == null) {
+            return false;
+        }
+
+        removeEntry(entry);
+        return true;
+    }
+
+    public synchronized IGVCommand get(String key) {
+
+        Entry entry = entriesByKey.get(key);
+
+        return entry == null ? null : entry.command;
+    }
+
+    public synchronized boolean contains(String key) {
+        return entriesByKey.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return heap.size();
+    }
+
+    public IGVCommand poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return poll(timeout, unit, null);
+    }
+
+    /**
+     * Waits for a command and removes it. If the first command is not urgent,
+     * the first command on the preferred track is taken instead, if there is
+     * one that is due at most the preferred track window after the first
+     * command. Thus preferring a track delays no command by more than the
+     * window.
+     *
+     * @return the command, or null if none arrived within the timeout
+     */
+    public synchronized IGVCommand poll(long timeout, TimeUnit unit, String preferredTrack) throws InterruptedException {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (heap.isEmpty()) {
+
+            long remaining = deadline - System.nanoTime();
+
+            if (remaining <= 0) {
+                return null;
+            }
+
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+
+        Entry first = heap.get(0);
+        TreeSet<Entry> preferredEntries = preferredTrack == null ? null : entriesByTrack.get(preferredTrack);
+
+        // nothing urgent is queued if the first command is not urgent
+        if (preferredEntries != null && !first.command.isUrgent()) {
+
+            Entry firstOnTrack = preferredEntries.first();
+
+            if (firstOnTrack.command.getDueAt() - first.command.getDueAt() <= preferredTrackWindowMs) {
+                first = firstOnTrack;
+            }
+        }
+
+        removeEntry(first);
+
+        return first.command;
+    }
+
+    /**
+     * Removes all queued commands.
+     *
+     * @return the removed commands in queue order
+     */
+    public synchronized List<IGVCommand> drain() {
+
+        List<IGVCommand> commands = new ArrayList<>(heap.size());
+
+        while (!heap.isEmpty()) {
+            Entry first = heap.get(0);
+            removeEntry(first);
+            commands.add(first.command);
+        }
+
+        return commands;
+    }
+
+    /**
+     * @return negative if a is taken before b
+     */
+    private static int compare(Entry a, Entry b) {
+
+        int priorityComparison = b.command.compareTo(a.command);
+
+        return priorityComparison != 0 ? priorityComparison : Long.compare(a.sequence, b.sequence);
+    }
+
+    private void removeEntry(Entry entry) {
+
+        int index = entry.heapIndex;
+        Entry last = heap.remove(heap.size() - 1);
+
+        if (last != entry) {
+            last.heapIndex = index;
+            heap.set(index, last);
+            siftDown(siftUp(index));
+        }
+
+        entriesByKey.remove(entry.command.getKey());
+
+        String track = entry.command.getTrack();
+
+        if (track != null) {
+            entriesByTrack.computeIfPresent(track, (key, entries) -> {
+                entries.remove(entry);
+                return entries.isEmpty() ? null : entries;
+            });
+        }
+    }
+
+    private int siftUp(int index) {
+
+        Entry entry = heap.get(index);
+
+        while (index > 0) {
+
+            int parentIndex = (index - 1) / 2;
+            Entry parent = heap.get(parentIndex);
+
+            if (compare(entry, parent) >= 0) {
+                break;
+            }
+
+            place(parent, index);
+            index = parentIndex;
+        }
+
+        place(entry, index);
+        return index;
+    }
+
+    private void siftDown(int index) {
+
+        Entry entry = heap.get(index);
+        int size = heap.size();
+
+        while (2 * index + 1 < size) {
+
+            int childIndex = 2 * index + 1;
+
+            if (childIndex + 1 < size && compare(heap.get(childIndex + 1), heap.get(childIndex)) < 0) {
+                childIndex++;
+            }
+
+            Entry child = heap.get(childIndex);
+
+            if (compare(child, entry) >= 0) {
+                break;
+            }
+
+            place(child, index);
+            index = childIndex;
+        }
+
+        place(entry, index);
+    }
+
+    private void place(Entry entry, int index) {
+        heap.set(index, entry);
+        entry.heapIndex = index;
+    }
+}
@@ -18,24 +18,22 @@
  */
 package de.imi.marw.viper.visualization;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -43,10 +41,11 @@ import java.util.stream.Stream;
 import org.apache.commons.codec.digest.DigestUtils;
 
 /**
+ * Renders snapshots with a pool of IGV workers that share one command queue.
  *
  * @author marius
  */
-public class IGVVisualizer extends Thread {
+public class IGVVisualizer {
 
     private static final long IGV_START_TIMEOUT_MS = 120000;
 
@@ -58,137 +57,71 @@ public class IGVVisualizer extends Thread {
     private static final String CONFIG_VIEW_RANGE_KEY = "VIPER.VIEW_RANGE";
     private static final String CONFIG_PANEL_HEIGHT_KEY = "VIPER.PANEL_HEIGHT";
 
-    private final int xvfbDisplay;
-    private final int xvfbWidth;
-    private final int xvfbHeight;
-    private final int jvmMBSpace;
-
     private final Map<String, Object> configurationMap;
-    private final Map<String, Boolean> visualizationProgressMap;
-    private final PriorityBlockingQueue<IGVCommand> commandQueue;
-    private final int port;
-    private final String fastaRef;
-    private final String igvJar;
-    private final String workDir;
+    private final Map<String, IGVCommand> scheduledSnapshots;
+    private final IGVCommandQueue commandQueue;
+    private final List<IGVWorker> workers;
+    private final SnapshotCache snapshotCache;
+    private final Map<String, Set<BlockingQueue<String>>> snapshotSubscribers;
+    private final Set<String> failedSnapshots;
     private final String bamDir;
-    private final String logFile;
-    private Process igvProcess;
-    private Process xvfbServer;
-    private Socket client;
 
     public IGVVisualizer(String igvJar, String fastaRef, int port, String workDir, String bamDir, String logFile, int xvfbDisplay, int xvfbWidth, int xvfbHeight, int jvmMBSpace) {
-        this.port = port;
-        this.fastaRef = fastaRef;
-        this.igvJar = igvJar;
-        this.commandQueue = new PriorityBlockingQueue<>(100, Comparator.reverseOrder());
-        this.workDir = workDir;
-        this.visualizationProgressMap = new ConcurrentHashMap<>();
-        this.bamDir = bamDir;
-        this.logFile = logFile;
-        this.xvfbDisplay = xvfbDisplay;
-        this.xvfbWidth = xvfbWidth;
-        this.xvfbHeight = xvfbHeight;
-        this.jvmMBSpace = jvmMBSpace;
-        this.configurationMap = new HashMap<>();
+        this(igvJar, fastaRef, port, workDir, bamDir, logFile, xvfbDisplay, xvfbWidth, xvfbHeight, jvmMBSpace, 1, SnapshotCache.DEFAULT_MAX_BYTES);
     }
 
-    @Override
-    public void run() {
-        try {
-            Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
-            startIGVProcess();
-            loadIGVConfiguration();
-            this.client = connectToIGV();
-            this.setupViewer();
-
-            PrintWriter out = new PrintWriter(client.getOutputStream(), true);
-            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
-
-            while (this.igvProcess != null && this.igvProcess.isAlive()) {
-
-                IGVCommand nextCommand = this.commandQueue.poll(1, TimeUnit.SECONDS);
-
-                if (nextCommand == null) {
-                    continue;
-                }
-
-                Arrays.stream(nextCommand.getSubCommands()).forEach((String subCommand) -> {
-                    out.println(subCommand);
-                    try {
-                        String response = in.readLine();
-                    } catch (IOException ex) {
-                        Logger.getLogger(IGVVisualizer.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                });
-
-                nextCommand.getFinishedCallback().run();
-            }
+    /**
+     * Worker i listens on port + i and uses the Xvfb display xvfbDisplay + i.
+     */
+    public IGVVisualizer(String igvJar, String fastaRef, int port, String workDir, String bamDir, String logFile, int xvfbDisplay, int xvfbWidth, int xvfbHeight, int jvmMBSpace, int numWorkers, long snapshotCacheBytes) {
 
-        } catch (IOException | InterruptedException ex) {
-            Logger.getLogger(IGVVisualizer.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("At least one IGV worker is required, got " + numWorkers);
+        }
 
-            shutdown();
+        this.commandQueue = new IGVCommandQueue();
+        this.scheduledSnapshots = new ConcurrentHashMap<>();
+        this.bamDir = bamDir;
+        this.configurationMap = new HashMap<>();
+        this.workers = new ArrayList<>();
+        this.snapshotCache = new SnapshotCache(workDir, snapshotCacheBytes);
+        this.snapshotSubscribers = new HashMap<>();
+        this.failedSnapshots = ConcurrentHashMap.newKeySet();
+
+        for (int i = 0; i < numWorkers; i++) {
+            this.workers.add(new IGVWorker(igvJar, fastaRef, IGV_PROPERTY_FILE, port + i, getWorkerLogFile(logFile, i),
+                    xvfbDisplay + i, xvfbWidth, xvfbHeight, jvmMBSpace, this.commandQueue));
         }
     }
 
-    private void startIGVProcess() throws IOException {
-
-        File logFile = new File(this.logFile);
-
-        ProcessBuilder builder = new ProcessBuilder("java",
-                "-Xmx" + this.jvmMBSpace + "m",
-                "-Dproduction=true",
-                "-Dsun.java2d.noddraw=true",
-                "-Dapple.laf.useScreenMenuBar=true",
-                "-Djava.net.preferIPv4Stack=true",
-                "-jar", this.igvJar,
-                "-p", "" + port,
-                "-g", this.fastaRef,
-                "-o", IGV_PROPERTY_FILE
-        )
-                .redirectOutput(logFile)
-                .redirectError(logFile);
-
-        if (isXvfbInstalled()) {
-            ProcessBuilder xvfbBuilder = new ProcessBuilder("Xvfb",
-                    ":" + xvfbDisplay,
-                    "-screen", "0,", xvfbWidth + "x" + xvfbHeight + "x24")
-                    .inheritIO();
-
-            this.xvfbServer = xvfbBuilder.start();
-
-            Map<String, String> igvEnv = builder.environment();
-            igvEnv.put("DISPLAY", ":" + xvfbDisplay);
+    private static String getWorkerLogFile(String logFile, int worker) {
+
+        if (worker == 0) {
+            return logFile;
         }
 
-        this.igvProcess = builder.start();
+        int extensionStart = logFile.lastIndexOf('.');
+
+        if (extensionStart <= logFile.lastIndexOf(File.separatorChar) + 1) {
+            return logFile + "." + worker;
+        }
 
+        return logFile.substring(0, extensionStart) + "." + worker + logFile.substring(extensionStart);
     }
 
-    private Socket connectToIGV() {
+    public void start() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
 
-        while (this.igvProcess != null) {
-            try {
-                Socket client = new Socket("127.0.0.1", port);
-                return client;
-            } catch (IOException ex) {
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException ex1) {
-                    Logger.getLogger(IGVVisualizer.class.getName()).log(Level.SEVERE, null, ex1);
-                }
-            }
+        for (IGVWorker worker : this.workers) {
+            worker.start();
         }
-
-        return null;
     }
 
     public void awaitStartup() {
 
         long startedAt = System.currentTimeMillis();
 
-        while (this.client == null || !this.client.isConnected()) {
+        while (!this.workers.stream().allMatch(IGVWorker::isConnected)) {
             try {
                 Thread.sleep(100);
 
@@ -200,23 +133,113 @@ public class IGVVisualizer extends Thread {
                 Logger.getLogger(IGVVisualizer.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
+
+        synchronized (this) {
+            if (this.configurationMap.isEmpty()) {
+                loadIGVConfiguration();
+            }
+        }
+
+        this.broadcastPreference(new String[]{"setSleepInterval 0"});
     }
 
     public boolean isSnapshotDone(String key) {
-        return this.visualizationProgressMap.getOrDefault(key, false);
+        return this.snapshotCache.contains(key);
+    }
+
+    /**
+     * @return true if IGV did not write the snapshot the last time it was
+     * scheduled
+     */
+    public boolean isSnapshotFailed(String key) {
+        return this.failedSnapshots.contains(key);
+    }
+
+    /**
+     * @return queue that receives every given key as soon as its snapshot is
+     * available or has failed, keys of existing or failed snapshots are
+     * offered immediately. Keys may be offered more than once.
+     */
+    public BlockingQueue<String> subscribeToSnapshots(Collection<String> keys) {
+
+        BlockingQueue<String> readyKeys = new LinkedBlockingQueue<>();
+
+        synchronized (this.snapshotSubscribers) {
+            for (String key : keys) {
+                this.snapshotSubscribers.computeIfAbsent(key, k -> new HashSet<>()).add(readyKeys);
+            }
+        }
+
+        // subscribed first, so snapshots finished in between are not missed
+        for (String key : keys) {
+            if (this.isSnapshotDone(key) || this.isSnapshotFailed(key)) {
+                readyKeys.offer(key);
+            }
+        }
+
+        return readyKeys;
+    }
+
+    public void unsubscribeFromSnapshots(Collection<String> keys, BlockingQueue<String> readyKeys) {
+
+        synchronized (this.snapshotSubscribers) {
+            for (String key : keys) {
+
+                Set<BlockingQueue<String>> subscribers = this.snapshotSubscribers.get(key);
+
+                if (subscribers != null) {
+                    subscribers.remove(readyKeys);
+
+                    if (subscribers.isEmpty()) {
+                        this.snapshotSubscribers.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private void notifySubscribers(String key) {
+
+        synchronized (this.snapshotSubscribers) {
+
+            Set<BlockingQueue<String>> subscribers = this.snapshotSubscribers.getOrDefault(key, Collections.emptySet());
+
+            for (BlockingQueue<String> readyKeys : subscribers) {
+                readyKeys.offer(key);
+            }
+        }
+    }
+
+    public String getSnapshotKey(String sample, String chr, int pos) {
+        return sample + "-" + chr + "-" + pos + "-" + this.getConfigurationHash();
+    }
+
+    public void scheduleSnapshot(String sample, String chr, int pos, boolean isUrgent) {
+        this.scheduleSnapshot(sample, chr, pos, isUrgent, System.currentTimeMillis());
     }
 
-    public synchronized void scheduleSnapshot(String sample, String chr, int pos, boolean isUrgent) {
+    /**
+     * @param dueAt time the snapshot is expected to be viewed, snapshots that
+     * are already scheduled are moved forward if this is earlier
+     */
+    public synchronized void scheduleSnapshot(String sample, String chr, int pos, boolean isUrgent, long dueAt) {
 
-        String key = sample + "-" + chr + "-" + pos + "-" + this.getConfigurationHash();
-        boolean snapshotAlreadyScheduled = this.visualizationProgressMap.containsKey(key);
+        String key = this.getSnapshotKey(sample, chr, pos);
 
-        if (snapshotAlreadyScheduled && (!isUrgent || this.visualizationProgressMap.get(key))) {
+        if (this.snapshotCache.contains(key)) {
             return;
         }
 
-        Path workdir = Paths.get(this.workDir);
-        String imageFileName = workdir.resolve(key + ".png").toString();
+        this.failedSnapshots.remove(key);
+
+        IGVCommand scheduledCommand = this.scheduledSnapshots.get(key);
+
+        if (scheduledCommand != null && !isUrgent
+                && (scheduledCommand.isUrgent() || scheduledCommand.getDueAt() <= dueAt)) {
+            return;
+        }
+
+        String imageFileName = this.snapshotCache.getSnapshotPath(key).toString();
 
         Path bamDir = Paths.get(this.bamDir);
         String bamName = bamDir.resolve(sample + ".bam").toString();
@@ -224,102 +247,85 @@ public class IGVVisualizer extends Thread {
         int configViewRange = (int) this.configurationMap.get(CONFIG_VIEW_RANGE_KEY);
 
         String[] subCommands = new String[]{
-            "new",
-            "load " + bamName,
-            "collapse",
             "goto " + chr + ":" + (pos - configViewRange) + "-" + (pos + configViewRange),
             "snapshot " + imageFileName
         };
 
-        IGVCommand command = new IGVCommand(key, subCommands, isUrgent, () -> this.visualizationProgressMap.put(key, true));
-
-        if (isUrgent) {
+        IGVCommand command = new IGVCommand(key, bamName, subCommands, isUrgent, dueAt, () -> {
+            if (!this.snapshotCache.add(key)) {
+                this.failedSnapshots.add(key);
+            }
+            this.scheduledSnapshots.remove(key);
+            this.notifySubscribers(key);
+        });
 
-            boolean commandWasInQueue = this.commandQueue.remove(command);
+        // prevents race condition when command was already removed by
+        // visualization thread and added again
+        if (scheduledCommand != null && !this.commandQueue.remove(key)) {
+            return;
+        }
 
-            // prevents race condition when command was already removed by
-            // visualization thread and added again
-            if (!snapshotAlreadyScheduled || commandWasInQueue) {
+        this.scheduledSnapshots.put(key, command);
+        this.enqueueCommand(command);
+    }
 
-                this.visualizationProgressMap.put(key, false);
-                this.enqueueCommand(command);
+    /**
+     * Removes a queued, non urgent snapshot, e.g. a prefetch that is not
+     * needed anymore.
+     */
+    public synchronized boolean cancelSnapshot(String key) {
 
-            }
+        IGVCommand scheduledCommand = this.scheduledSnapshots.get(key);
 
-        } else {
+        if (scheduledCommand == null || scheduledCommand.isUrgent() || !this.commandQueue.remove(key)) {
+            return false;
+        }
 
-            this.visualizationProgressMap.put(key, false);
-            this.enqueueCommand(command);
+        this.scheduledSnapshots.remove(key);
+        return true;
+    }
 
+    public synchronized void cancelSnapshots(Collection<String> keys) {
+        for (String key : keys) {
+            this.cancelSnapshot(key);
         }
+    }
 
+    public boolean isSnapshotScheduled(String key) {
+        return this.scheduledSnapshots.containsKey(key);
     }
 
     public void enqueueCommand(IGVCommand command) {
         this.commandQueue.offer(command);
     }
 
-    private void setupViewer() {
-        this.enqueueCommand(new IGVCommand("pref-change", new String[]{"setSleepInterval 0"}, true, () -> {
-        }));
-    }
-
-    public synchronized void shutdown() {
-        if (this.client != null) {
-            try {
-                this.client.close();
-                this.client = null;
-            } catch (IOException ex) {
-                Logger.getLogger(IGVVisualizer.class.getName()).log(Level.SEVERE, null, ex);
-            }
-        }
-
-        if (this.igvProcess != null) {
-            this.igvProcess.destroy();
-            this.igvProcess = null;
-        }
-
-        if (this.xvfbServer != null) {
-            this.xvfbServer.destroy();
-            this.xvfbServer = null;
-        }
-
-        File workDir = new File(this.workDir);
+    /**
+     * Preferences have to be applied by every IGV process, not only by the
+     * one that happens to take the command from the shared queue.
+     */
+    private void broadcastPreference(String[] subCommands) {
 
-        for (File file : workDir.listFiles()) {
-            if (file.getName().endsWith(".png")) {
-                file.deleteOnExit();
-            }
+        for (IGVWorker worker : this.workers) {
+            worker.enqueuePreference(new IGVCommand("pref-change", subCommands, true, () -> {
+            }));
         }
     }
 
-    private boolean isXvfbInstalled() {
-        Runtime rt = Runtime.getRuntime();
-        Process proc;
-        try {
-            proc = rt.exec("Xvfb -help");
-            proc.waitFor();
-            int exitVal = proc.exitValue();
+    public synchronized void shutdown() {
 
-            return exitVal == 0;
-        } catch (IOException | InterruptedException ex) {
-            return false;
+        for (IGVWorker worker : this.workers) {
+            worker.shutdown();
         }
+
+        this.snapshotCache.save();
     }
 
     public synchronized String setConfigurationValue(String key, Object value) {
 
-        List<IGVCommand> commandsInProgress = new ArrayList<>();
-        this.commandQueue.drainTo(commandsInProgress);
-        this.commandQueue.clear();
+        List<IGVCommand> commandsInProgress = this.commandQueue.drain();
 
         for (IGVCommand commandInProgress : commandsInProgress) {
-
-            if ("pref-change".equals(commandInProgress.getKey())) {
-                continue;
-            }
-
-            this.visualizationProgressMap.remove(commandInProgress.getKey());
+            this.scheduledSnapshots.remove(commandInProgress.getKey());
         }
 
         this.configurationMap.put(key, value);
@@ -333,17 +339,11 @@ public class IGVVisualizer extends Thread {
 
                 int panelHeight = (int) configurationMap.get(CONFIG_PANEL_HEIGHT_KEY);
 
-                IGVCommand command = new IGVCommand("pref-change", new String[]{"maxPanelHeight " + panelHeight}, true, () -> {
-                });
-
-                this.enqueueCommand(command);
+                this.broadcastPreference(new String[]{"maxPanelHeight " + panelHeight});
                 break;
             }
             default: {
-                IGVCommand command = new IGVCommand("pref-change", new String[]{"preference " + key + " " + value}, true, () -> {
-                });
-
-                this.enqueueCommand(command);
+                this.broadcastPreference(new String[]{"preference " + key + " " + value});
             }
         }
 
@@ -366,7 +366,7 @@ public class IGVVisualizer extends Thread {
         return DigestUtils.md5Hex(stringToBeHashed);
     }
 
-    private void loadIGVConfiguration() throws IOException {
+    private void loadIGVConfiguration() {
 
         try (Stream<String> stream = Files.lines(Paths.get(IGV_PROPERTY_FILE))) {
 
@@ -0,0 +1,259 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.visualization;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drives a single batch mode IGV process, optionally on its own Xvfb display.
+ * Snapshots are taken from the queue shared by all workers, preference changes
+ * are sent to every worker separately and applied before the next snapshot.
+ * The loaded track is kept as long as consecutive commands need the same file,
+ * queued commands for that file are preferred. Commands are pipelined, the
+ * next one is written while IGV still works on the previous one.
+ *
+ * @author marius
+ */
+class IGVWorker extends Thread {
+
+    private static final int MAX_PENDING_COMMANDS = 2;
+
+    private final int port;
+    private final int xvfbDisplay;
+    private final int xvfbWidth;
+    private final int xvfbHeight;
+    private final int jvmMBSpace;
+    private final String fastaRef;
+    private final String igvJar;
+    private final String propertyFile;
+    private final String logFile;
+    private final IGVCommandQueue commandQueue;
+    private final BlockingQueue<IGVCommand> preferenceQueue;
+    private Process igvProcess;
+    private Process xvfbServer;
+    private volatile Socket client;
+    private volatile IGVChannel channel;
+    private final AtomicReference<String> loadedTrack;
+
+    IGVWorker(String igvJar, String fastaRef, String propertyFile, int port, String logFile, int xvfbDisplay, int xvfbWidth, int xvfbHeight, int jvmMBSpace, IGVCommandQueue commandQueue) {
+        super("igv-worker-" + port);
+        this.igvJar = igvJar;
+        this.fastaRef = fastaRef;
+        this.propertyFile = propertyFile;
+        this.port = port;
+        this.logFile = logFile;
+        this.xvfbDisplay = xvfbDisplay;
+        this.xvfbWidth = xvfbWidth;
+        this.xvfbHeight = xvfbHeight;
+        this.jvmMBSpace = jvmMBSpace;
+        this.commandQueue = commandQueue;
+        this.preferenceQueue = new LinkedBlockingQueue<>();
+        this.loadedTrack = new AtomicReference<>();
+    }
+
+    @Override
+    public void run() {
+        try {
+            startIGVProcess();
+            Socket socket = connectToIGV();
+            this.channel = new IGVChannel(socket, MAX_PENDING_COMMANDS);
+            this.client = socket;
+
+            IGVChannel channel = this.channel;
+
+            while (this.igvProcess != null && this.igvProcess.isAlive() && !channel.isClosed()) {
+
+                channel.awaitCapacity();
+
+                IGVCommand nextCommand = takeCommand();
+
+                // preferences changed before the command was taken have to be
+                // applied before it, otherwise the image does not match its key
+                IGVCommand preferenceCommand;
+                while ((preferenceCommand = this.preferenceQueue.poll()) != null) {
+                    execute(preferenceCommand, channel);
+                    // preferences may change how tracks are rendered
+                    this.loadedTrack.set(null);
+                }
+
+                if (nextCommand != null) {
+                    execute(nextCommand, channel);
+                }
+            }
+
+        } catch (IOException | InterruptedException ex) {
+            Logger.getLogger(IGVWorker.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+
+            shutdown();
+        }
+    }
+
+    private IGVCommand takeCommand() throws InterruptedException {
+        return this.commandQueue.poll(1, TimeUnit.SECONDS, this.loadedTrack.get());
+    }
+
+    private void execute(IGVCommand command, IGVChannel channel) throws IOException {
+
+        String track = command.getTrack();
+        List<String> lines = new ArrayList<>();
+        int loadLine = -1;
+
+        if (track != null && !track.equals(this.loadedTrack.get())) {
+
+            lines.add("new");
+            loadLine = lines.size();
+            lines.add("load " + track);
+            lines.add("collapse");
+
+            this.loadedTrack.set(track);
+        }
+
+        lines.addAll(Arrays.asList(command.getSubCommands()));
+
+        int trackLoadLine = loadLine;
+
+        channel.send(lines, responses -> {
+
+            for (int i = 0; i < responses.size(); i++) {
+
+                if (!"OK".equals(responses.get(i))) {
+                    Logger.getLogger(IGVWorker.class.getName()).log(Level.SEVERE, "IGV command \"{0}\" of {1} failed: {2}",
+                            new Object[]{lines.get(i), command.getKey(), responses.get(i)});
+
+                    if (i == trackLoadLine) {
+                        this.loadedTrack.compareAndSet(track, null);
+                    }
+                }
+            }
+
+            command.getFinishedCallback().run();
+        });
+    }
+
+    private void startIGVProcess() throws IOException {
+
+        File logFile = new File(this.logFile);
+
+        ProcessBuilder builder = new ProcessBuilder("java",
+                "-Xmx" + this.jvmMBSpace + "m",
+                "-Dproduction=true",
+                "-Dsun.java2d.noddraw=true",
+                "-Dapple.laf.useScreenMenuBar=true",
+                "-Djava.net.preferIPv4Stack=true",
+                "-jar", this.igvJar,
+                "-p", "" + port,
+                "-g", this.fastaRef,
+                "-o", this.propertyFile
+        )
+                .redirectOutput(logFile)
+                .redirectError(logFile);
+
+        if (isXvfbInstalled()) {
+            ProcessBuilder xvfbBuilder = new ProcessBuilder("Xvfb",
+                    ":" + xvfbDisplay,
+                    "-screen", "0,", xvfbWidth + "x" + xvfbHeight + "x24")
+                    .inheritIO();
+
+            this.xvfbServer = xvfbBuilder.start();
+
+            Map<String, String> igvEnv = builder.environment();
+            igvEnv.put("DISPLAY", ":" + xvfbDisplay);
+        }
+
+        this.igvProcess = builder.start();
+
+    }
+
+    private Socket connectToIGV() {
+
+        while (this.igvProcess != null) {
+            try {
+                Socket client = new Socket("127.0.0.1", port);
+                return client;
+            } catch (IOException ex) {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException ex1) {
+                    Logger.getLogger(IGVWorker.class.getName()).log(Level.SEVERE, null, ex1);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    boolean isConnected() {
+        Socket client = this.client;
+
+        return client != null && client.isConnected();
+    }
+
+    void enqueuePreference(IGVCommand command) {
+        this.preferenceQueue.offer(command);
+    }
+
+    synchronized void shutdown() {
+        if (this.channel != null) {
+            try {
+                this.channel.close();
+                this.channel = null;
+                this.client = null;
+            } catch (IOException ex) {
+                Logger.getLogger(IGVWorker.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+
+        if (this.igvProcess != null) {
+            this.igvProcess.destroy();
+            this.igvProcess = null;
+        }
+
+        if (this.xvfbServer != null) {
+            this.xvfbServer.destroy();
+            this.xvfbServer = null;
+        }
+    }
+
+    private boolean isXvfbInstalled() {
+        Runtime rt = Runtime.getRuntime();
+        Process proc;
+        try {
+            proc = rt.exec("Xvfb -help");
+            proc.waitFor();
+            int exitVal = proc.exitValue();
+
+            return exitVal == 0;
+        } catch (IOException | InterruptedException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.visualization;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps rendered snapshots in the work directory across restarts. An index
+ * file lists every cached snapshot with its size, least recently used first.
+ * When the total size exceeds the budget, the least recently used snapshots are
+ * deleted.
+ *
+ * Added and evicted snapshots are appended to the index, a later line for the
+ * same key replaces an earlier one and a negative size marks an eviction. The
+ * index is compacted by rewriting it once it has grown to about twice the
+ * number of cached snapshots, and by {@link #save()}.
+ *
+ * @author marius
+ */
+public class SnapshotCache {
+
+    public static final long DEFAULT_MAX_BYTES = 2048L * 1024 * 1024;
+
+    private static final String INDEX_FILE = "snapshot-index.txt";
+    private static final String SNAPSHOT_SUFFIX = ".png";
+    private static final long EVICTED_SIZE = -1;
+    private static final int MIN_COMPACTION_LINES = 1024;
+
+    private final Path workDir;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> snapshotSizes;
+    private long totalBytes;
+    private boolean indexChanged;
+    private int indexLines;
+
+    public SnapshotCache(String workDir, long maxBytes) {
+
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("The snapshot cache size must not be negative, got " + maxBytes);
+        }
+
+        this.workDir = Paths.get(workDir);
+        this.maxBytes = maxBytes;
+        this.snapshotSizes = new LinkedHashMap<>(16, 0.75f, true);
+        this.totalBytes = 0;
+        this.indexChanged = false;
+        this.indexLines = 0;
+
+        loadIndex();
+    }
+
+    public Path getSnapshotPath(String key) {
+        return workDir.resolve(key + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * @return whether the snapshot is cached, marks it as recently used
+     */
+    public synchronized boolean contains(String key) {
+
+        if (snapshotSizes.get(key) == null) {
+            return false;
+        }
+
+        indexChanged = true;
+        return true;
+    }
+
+    /**
+     * Adds a rendered snapshot, evicts least recently used snapshots if the
+     * budget is exceeded and appends the changes to the index.
+     *
+     * @return false if no snapshot was written for this key
+     */
+    public synchronized boolean add(String key) {
+
+        File snapshot = getSnapshotPath(key).toFile();
+
+        if (!snapshot.isFile()) {
+            return false;
+        }
+
+        Long previousSize = snapshotSizes.put(key, snapshot.length());
+
+        totalBytes += snapshot.length() - (previousSize == null ? 0 : previousSize);
+
+        List<String> changes = new ArrayList<>();
+
+        for (String evictedKey : evict(key)) {
+            changes.add(evictedKey + "\t" + EVICTED_SIZE);
+        }
+
+        changes.add(key + "\t" + snapshot.length());
+
+        if (indexLines + changes.size() >= 2 * snapshotSizes.size() + MIN_COMPACTION_LINES) {
+            indexChanged = true;
+            save();
+        } else {
+            appendToIndex(changes);
+        }
+
+        return true;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return snapshotSizes.size();
+    }
+
+    /**
+     * @return the evicted keys
+     */
+    private List<String> evict(String keptKey) {
+
+        List<String> evictedKeys = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> entries = snapshotSizes.entrySet().iterator();
+
+        while (totalBytes > maxBytes && entries.hasNext()) {
+
+            Map.Entry<String, Long> entry = entries.next();
+
+            if (entry.getKey().equals(keptKey)) {
+                continue;
+            }
+
+            try {
+                Files.deleteIfExists(getSnapshotPath(entry.getKey()));
+            } catch (IOException ex) {
+                Logger.getLogger(SnapshotCache.class.getName()).log(Level.SEVERE, null, ex);
+            }
+
+            totalBytes -= entry.getValue();
+            evictedKeys.add(entry.getKey());
+            entries.remove();
+        }
+
+        return evictedKeys;
+    }
+
+    private void appendToIndex(List<String> lines) {
+
+        Path indexPath = workDir.resolve(INDEX_FILE);
+
+        try {
+            Files.write(indexPath, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            indexLines += lines.size();
+        } catch (IOException ex) {
+            Logger.getLogger(SnapshotCache.class.getName()).log(Level.SEVERE, "Could not append to snapshot index " + indexPath, ex);
+            // the index is rewritten completely on the next save
+            indexChanged = true;
+        }
+    }
+
+    /**
+     * Rewrites the compacted index if snapshots were used since it was last
+     * written or if appending to it failed.
+     */
+    public synchronized void save() {
+
+        if (!indexChanged) {
+            return;
+        }
+
+        Path indexPath = workDir.resolve(INDEX_FILE);
+        Path tempPath = workDir.resolve(INDEX_FILE + ".tmp");
+
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+
+                for (Map.Entry<String, Long> entry : snapshotSizes.entrySet()) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue());
+                    writer.newLine();
+                }
+            }
+
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            indexChanged = false;
+            indexLines = snapshotSizes.size();
+
+        } catch (IOException ex) {
+            Logger.getLogger(SnapshotCache.class.getName()).log(Level.SEVERE, "Could not write snapshot index " + indexPath, ex);
+        }
+    }
+
+    /**
+     * Replays the index. Snapshots listed in the index whose file is missing or
+     * has another size are dropped, snapshots that are not listed are deleted,
+     * since they may have been written partially.
+     */
+    private void loadIndex() {
+
+        Path indexPath = workDir.resolve(INDEX_FILE);
+
+        if (Files.exists(indexPath)) {
+            try {
+                List<String> lines = Files.readAllLines(indexPath, StandardCharsets.UTF_8);
+                LinkedHashMap<String, Long> indexedSizes = new LinkedHashMap<>();
+
+                for (String line : lines) {
+
+                    String[] keyAndSize = line.split("\t");
+
+                    if (keyAndSize.length != 2) {
+                        continue;
+                    }
+
+                    long size = Long.parseLong(keyAndSize[1]);
+
+                    // later lines move the snapshot to the most recently used end
+                    indexedSizes.remove(keyAndSize[0]);
+
+                    if (size != EVICTED_SIZE) {
+                        indexedSizes.put(keyAndSize[0], size);
+                    }
+                }
+
+                for (Map.Entry<String, Long> entry : indexedSizes.entrySet()) {
+
+                    File snapshot = getSnapshotPath(entry.getKey()).toFile();
+
+                    if (snapshot.isFile() && snapshot.length() == entry.getValue()) {
+                        snapshotSizes.put(entry.getKey(), entry.getValue());
+                        totalBytes += entry.getValue();
+                    }
+                }
+
+                indexLines = lines.size();
+                // compacts the index after a restart
+                indexChanged = indexLines != snapshotSizes.size();
+
+            } catch (IOException | NumberFormatException ex) {
+                Logger.getLogger(SnapshotCache.class.getName()).log(Level.SEVERE, "Ignoring unreadable snapshot index " + indexPath, ex);
+                snapshotSizes.clear();
+                totalBytes = 0;
+                indexChanged = true;
+            }
+        }
+
+        deleteUnindexedSnapshots();
+
+        if (!evict(null).isEmpty()) {
+            indexChanged = true;
+        }
+
+        save();
+    }
+
+    private void deleteUnindexedSnapshots() {
+
+        if (!Files.isDirectory(workDir)) {
+            return;
+        }
+
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(workDir, "*" + SNAPSHOT_SUFFIX)) {
+
+            for (Path snapshot : snapshots) {
+
+                String fileName = snapshot.getFileName().toString();
+                String key = fileName.substring(0, fileName.length() - SNAPSHOT_SUFFIX.length());
+
+                if (!snapshotSizes.containsKey(key)) {
+                    Files.deleteIfExists(snapshot);
+                }
+            }
+
+        } catch (IOException ex) {
+            Logger.getLogger(SnapshotCache.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+}
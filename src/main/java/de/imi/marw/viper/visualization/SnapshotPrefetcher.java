@@ -0,0 +1,334 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.visualization;
+
+import de.imi.marw.viper.variants.VariantTableCluster;
+import de.imi.marw.viper.variants.table.VariantTable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Schedules snapshots of calls a reviewer is likely to view next. For every
+ * session the time per navigation step and the browsing direction through the
+ * soft filtered clustered table are tracked. Candidate calls are ranked by the
+ * expected time until they are viewed, each call costs one snapshot per
+ * breakpoint and partner sample, and the best candidates are scheduled until
+ * the snapshot budget is used up. Prefetches that fall out of the plan, e.g.
+ * after a change of direction or filters, are cancelled.
+ *
+ * @author marius
+ */
+public class SnapshotPrefetcher {
+
+    private static final double INITIAL_MS_PER_STEP = 5000;
+    private static final double MIN_MS_PER_STEP = 200;
+    private static final double MAX_MS_PER_STEP = 60000;
+    private static final double SMOOTHING = 0.3;
+    private static final double MIN_DIRECTION_PROBABILITY = 0.1;
+    private static final int MAX_TRACKED_JUMP = 10;
+    private static final long SESSION_TIMEOUT_MS = 30 * 60 * 1000;
+
+    public static class Snapshot {
+
+        private final String sample;
+        private final String chr;
+        private final int pos;
+        private final long expectedMs;
+
+        private Snapshot(String sample, String chr, int pos, long expectedMs) {
+            this.sample = sample;
+            this.chr = chr;
+            this.pos = pos;
+            this.expectedMs = expectedMs;
+        }
+
+        public String getSample() {
+            return sample;
+        }
+
+        public String getChr() {
+            return chr;
+        }
+
+        public int getPos() {
+            return pos;
+        }
+
+        /**
+         * @return expected time in milliseconds until the snapshot is viewed
+         */
+        public long getExpectedMs() {
+            return expectedMs;
+        }
+    }
+
+    private static class Navigation {
+
+        private int clusterIndex = -1;
+        private int relatedCallIndex = -1;
+        private long viewedAt;
+        private double msPerStep = INITIAL_MS_PER_STEP;
+        // between -1 (backward) and 1 (forward)
+        private double direction = 0;
+        private Set<String> prefetchedKeys = new HashSet<>();
+
+        private void update(int clusterIndex, int relatedCallIndex, long now) {
+
+            if (this.clusterIndex >= 0) {
+
+                int steps = clusterIndex != this.clusterIndex
+                        ? clusterIndex - this.clusterIndex
+                        : relatedCallIndex - this.relatedCallIndex;
+
+                // jumps, e.g. by searching, say nothing about the reviewer's pace
+                if (steps != 0 && Math.abs(steps) <= MAX_TRACKED_JUMP) {
+
+                    double msPerStep = (double) (now - viewedAt) / Math.abs(steps);
+                    msPerStep = Math.max(MIN_MS_PER_STEP, Math.min(MAX_MS_PER_STEP, msPerStep));
+
+                    this.msPerStep += SMOOTHING * (msPerStep - this.msPerStep);
+                    this.direction += SMOOTHING * (Math.signum(steps) - this.direction);
+                }
+            }
+
+            this.clusterIndex = clusterIndex;
+            this.relatedCallIndex = relatedCallIndex;
+            this.viewedAt = now;
+        }
+    }
+
+    private static class Candidate {
+
+        private final int clusterIndex;
+        private final int relatedCallIndex;
+        private final double expectedMs;
+
+        private Candidate(int clusterIndex, int relatedCallIndex, double expectedMs) {
+            this.clusterIndex = clusterIndex;
+            this.relatedCallIndex = relatedCallIndex;
+            this.expectedMs = expectedMs;
+        }
+    }
+
+    private final IGVVisualizer igv;
+    private final VariantTableCluster cluster;
+    private final SamplePartners partners;
+    private final int snapshotBudget;
+    private final LongSupplier clock;
+    private final Map<String, Navigation> navigationBySession;
+    private int softFilterVersion;
+
+    public SnapshotPrefetcher(IGVVisualizer igv, VariantTableCluster cluster, SamplePartners partners, int snapshotBudget) {
+        this(igv, cluster, partners, snapshotBudget, System::currentTimeMillis);
+    }
+
+    public SnapshotPrefetcher(IGVVisualizer igv, VariantTableCluster cluster, SamplePartners partners, int snapshotBudget, LongSupplier clock) {
+        this.igv = igv;
+        this.cluster = cluster;
+        this.partners = partners;
+        this.snapshotBudget = snapshotBudget;
+        this.clock = clock;
+        this.navigationBySession = new HashMap<>();
+        this.softFilterVersion = cluster.getClusteredTable().getSoftFilterVersion();
+    }
+
+    /**
+     * Schedules the snapshots of the viewed call urgently and prefetches the
+     * snapshots of the calls that are expected to be viewed next.
+     *
+     * @return the prefetched snapshots, ordered by expected time until view
+     */
+    public synchronized List<Snapshot> viewCall(String sessionId, int clusterIndex, int relatedCallIndex) {
+
+        long now = clock.getAsLong();
+
+        int currentSoftFilterVersion = cluster.getClusteredTable().getSoftFilterVersion();
+
+        if (currentSoftFilterVersion != softFilterVersion) {
+            cancelAllPrefetches();
+            softFilterVersion = currentSoftFilterVersion;
+        }
+
+        removeIdleSessions(now);
+
+        Navigation navigation = navigationBySession.computeIfAbsent(sessionId, id -> new Navigation());
+        navigation.update(clusterIndex, relatedCallIndex, now);
+
+        for (Snapshot snapshot : getSnapshots(clusterIndex, relatedCallIndex, 0)) {
+            igv.scheduleSnapshot(snapshot.getSample(), snapshot.getChr(), snapshot.getPos(), true, now);
+        }
+
+        List<Snapshot> plan = planPrefetches(navigation);
+        Set<String> plannedKeys = new HashSet<>();
+
+        for (Snapshot snapshot : plan) {
+            plannedKeys.add(igv.getSnapshotKey(snapshot.getSample(), snapshot.getChr(), snapshot.getPos()));
+            igv.scheduleSnapshot(snapshot.getSample(), snapshot.getChr(), snapshot.getPos(), false, now + snapshot.getExpectedMs());
+        }
+
+        Set<String> previousKeys = navigation.prefetchedKeys;
+        navigation.prefetchedKeys = plannedKeys;
+        previousKeys.removeAll(plannedKeys);
+
+        cancelPrefetches(previousKeys);
+
+        return plan;
+    }
+
+    private List<Snapshot> planPrefetches(Navigation navigation) {
+
+        int numClusters = cluster.getClusteredTable().getNumberOfCalls();
+
+        if (navigation.clusterIndex >= numClusters) {
+            return new ArrayList<>();
+        }
+
+        double forwardProbability = Math.max(MIN_DIRECTION_PROBABILITY,
+                Math.min(1 - MIN_DIRECTION_PROBABILITY, (1 + navigation.direction) / 2));
+
+        int numRelatedCalls = cluster.getRelatedIndices(navigation.clusterIndex).size();
+        List<Candidate> candidates = new ArrayList<>();
+
+        // one call per step costs at least one snapshot, so more steps than
+        // snapshots can never be scheduled
+        for (int step = 1; step <= snapshotBudget; step++) {
+
+            double forwardMs = step * navigation.msPerStep / forwardProbability;
+            double backwardMs = step * navigation.msPerStep / (1 - forwardProbability);
+
+            if (navigation.relatedCallIndex + step < numRelatedCalls) {
+                candidates.add(new Candidate(navigation.clusterIndex, navigation.relatedCallIndex + step, forwardMs));
+            }
+            if (navigation.clusterIndex + step < numClusters) {
+                candidates.add(new Candidate(navigation.clusterIndex + step, 0, forwardMs));
+            }
+            if (navigation.relatedCallIndex - step >= 0) {
+                candidates.add(new Candidate(navigation.clusterIndex, navigation.relatedCallIndex - step, backwardMs));
+            }
+            if (navigation.clusterIndex - step >= 0) {
+                candidates.add(new Candidate(navigation.clusterIndex - step, 0, backwardMs));
+            }
+        }
+
+        candidates.sort(Comparator.comparingDouble(candidate -> candidate.expectedMs));
+
+        List<Snapshot> plan = new ArrayList<>();
+        Set<String> plannedKeys = new HashSet<>();
+
+        for (Candidate candidate : candidates) {
+
+            if (plan.size() >= snapshotBudget) {
+                break;
+            }
+
+            for (Snapshot snapshot : getSnapshots(candidate.clusterIndex, candidate.relatedCallIndex, (long) candidate.expectedMs)) {
+
+                String key = igv.getSnapshotKey(snapshot.getSample(), snapshot.getChr(), snapshot.getPos());
+
+                if (!igv.isSnapshotDone(key) && plannedKeys.add(key)) {
+                    plan.add(snapshot);
+                }
+            }
+        }
+
+        return plan;
+    }
+
+    /**
+     * @return both breakpoints of the call in its own sample and all partner
+     * samples
+     */
+    private List<Snapshot> getSnapshots(int clusterIndex, int relatedCallIndex, long expectedMs) {
+
+        List<Integer> relatedIndices = new ArrayList<>(cluster.getRelatedIndices(clusterIndex));
+
+        if (relatedCallIndex < 0 || relatedCallIndex >= relatedIndices.size()) {
+            return new ArrayList<>();
+        }
+
+        VariantTable unclusteredTable = cluster.getUnclusteredTable();
+        int rowIndex = relatedIndices.get(relatedCallIndex);
+
+        String sample = unclusteredTable.getCallProperty(rowIndex, VariantTable.SAMPLE_COLUMN_NAME).toString();
+        String chr1 = unclusteredTable.getCallProperty(rowIndex, VariantTable.CHR1_COLUMN_NAME).toString();
+        String chr2 = unclusteredTable.getCallProperty(rowIndex, VariantTable.CHR2_COLUMN_NAME).toString();
+        int bp1 = ((Double) unclusteredTable.getCallProperty(rowIndex, VariantTable.BP1_COLUMN_NAME)).intValue();
+        int bp2 = ((Double) unclusteredTable.getCallProperty(rowIndex, VariantTable.BP2_COLUMN_NAME)).intValue();
+
+        Set<String> samples = new LinkedHashSet<>();
+        samples.add(sample);
+        samples.addAll(partners.getPartners(sample));
+
+        List<Snapshot> snapshots = new ArrayList<>();
+
+        for (String snapshotSample : samples) {
+            snapshots.add(new Snapshot(snapshotSample, chr1, bp1, expectedMs));
+            snapshots.add(new Snapshot(snapshotSample, chr2, bp2, expectedMs));
+        }
+
+        return snapshots;
+    }
+
+    private void cancelAllPrefetches() {
+
+        for (Navigation navigation : navigationBySession.values()) {
+            igv.cancelSnapshots(navigation.prefetchedKeys);
+            navigation.prefetchedKeys = new HashSet<>();
+            navigation.clusterIndex = -1;
+        }
+    }
+
+    private void removeIdleSessions(long now) {
+
+        Iterator<Navigation> navigations = navigationBySession.values().iterator();
+
+        while (navigations.hasNext()) {
+
+            Navigation navigation = navigations.next();
+
+            if (now - navigation.viewedAt > SESSION_TIMEOUT_MS) {
+                navigations.remove();
+                cancelPrefetches(navigation.prefetchedKeys);
+            }
+        }
+    }
+
+    /**
+     * Cancels prefetches unless another session still expects them.
+     */
+    private void cancelPrefetches(Collection<String> keys) {
+
+        List<String> unusedKeys = new ArrayList<>(keys);
+
+        for (Navigation navigation : navigationBySession.values()) {
+            unusedKeys.removeAll(navigation.prefetchedKeys);
+        }
+
+        igv.cancelSnapshots(unusedKeys);
+    }
+}
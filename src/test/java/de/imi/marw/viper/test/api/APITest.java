@@ -29,6 +29,7 @@ import de.imi.marw.viper.variants.table.VariantTable;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
@@ -126,6 +127,35 @@ public class APITest {
         assertEquals(expectedJson, response);
     }
 
+    @Test
+    public void columnarRowsMatchRows() throws UnirestException {
+
+        List<Map<String, Object>> rows = gson.fromJson(Unirest.get(URL_BASE + "/api/variant-table/rows")
+                .queryString("from", "1")
+                .queryString("to", "4")
+                .asString()
+                .getBody(), List.class);
+
+        Map<String, Object> columnarRows = gson.fromJson(Unirest.get(URL_BASE + "/api/variant-table/rows/columnar")
+                .queryString("from", "1")
+                .queryString("to", "4")
+                .queryString("column", VariantTable.CHR1_COLUMN_NAME)
+                .queryString("column", VariantTable.BP1_COLUMN_NAME)
+                .asString()
+                .getBody(), Map.class);
+
+        List<String> columnNames = (List<String>) columnarRows.get("columnNames");
+        List<List<Object>> columns = (List<List<Object>>) columnarRows.get("columns");
+
+        assertEquals(Arrays.asList(VariantTable.CHR1_COLUMN_NAME, VariantTable.BP1_COLUMN_NAME), columnNames);
+
+        for (int column = 0; column < columnNames.size(); column++) {
+            for (int row = 0; row < rows.size(); row++) {
+                assertEquals(rows.get(row).get(columnNames.get(column)), columns.get(column).get(row));
+            }
+        }
+    }
+
     @Test
     public void correctlyLoadsColumnNames() throws UnirestException, IOException {
 
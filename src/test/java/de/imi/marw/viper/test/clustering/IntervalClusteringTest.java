@@ -20,11 +20,15 @@ package de.imi.marw.viper.test.clustering;
 
 import de.imi.marw.viper.clustering.Interval;
 import de.imi.marw.viper.clustering.IntervalClusterBuilder;
+import de.imi.marw.viper.clustering.SweepIntervalClusterBuilder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
@@ -145,4 +149,45 @@ public class IntervalClusteringTest {
         );
     }
 
+    private Set<Set<Integer>> asPartition(List<Collection<Integer>> clusters) {
+        return clusters.stream()
+                .map(cluster -> new HashSet<>(cluster))
+                .collect(Collectors.toSet());
+    }
+
+    @Test
+    public void sweepClusteringYieldsSameClustersAsTreeClustering() {
+
+        Random random = new Random(42);
+
+        for (int run = 0; run < 200; run++) {
+
+            int tolerance = random.nextInt(6);
+            int range = 1 + random.nextInt(200);
+            int numIntervals = random.nextInt(300);
+
+            int[] starts = new int[numIntervals];
+            int[] ends = new int[numIntervals];
+
+            for (int i = 0; i < numIntervals; i++) {
+                starts[i] = random.nextInt(range) - range / 2;
+                ends[i] = starts[i] + random.nextInt(range);
+            }
+
+            // sorted input is the common case for vcf files
+            if (run % 2 == 0) {
+                Arrays.sort(starts);
+                Arrays.sort(ends);
+            }
+
+            List<Interval> intervals = asIntervals(starts, ends);
+
+            List<Collection<Integer>> treeClusters = new IntervalClusterBuilder(tolerance).clusterIntervals(intervals);
+            List<Collection<Integer>> sweepClusters = new SweepIntervalClusterBuilder(tolerance).clusterIntervals(intervals);
+
+            assertEquals(treeClusters.size(), sweepClusters.size());
+            assertEquals(asPartition(treeClusters), asPartition(sweepClusters));
+        }
+    }
+
 }
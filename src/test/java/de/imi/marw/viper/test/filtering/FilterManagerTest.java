@@ -0,0 +1,192 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.test.filtering;
+
+import de.imi.marw.viper.test.util.TestUtil;
+import de.imi.marw.viper.variants.VariantCallFilter;
+import de.imi.marw.viper.variants.filters.FilterManager;
+import de.imi.marw.viper.variants.filters.NumericCollectionFilter;
+import de.imi.marw.viper.variants.filters.NumericFilter;
+import de.imi.marw.viper.variants.filters.ParallelFilterEvaluator;
+import de.imi.marw.viper.variants.filters.StringCollectionFilter;
+import de.imi.marw.viper.variants.filters.StringFilter;
+import de.imi.marw.viper.variants.table.CsvTableReader;
+import de.imi.marw.viper.variants.table.VariantTable;
+import de.imi.marw.viper.variants.table.VcfTableReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+
+/**
+ *
+ * @author marius
+ */
+public class FilterManagerTest {
+
+    private VariantTable loadData() throws IOException {
+        return new CsvTableReader(';', ",").readTable(TestUtil.getResourceFile("examples-filtering.csv"));
+    }
+
+    private NumericFilter num(double min, double max, boolean nullAllowed) {
+        NumericFilter filter = new NumericFilter("num", -100, 100);
+        filter.setSelectedMin(min);
+        filter.setSelectedMax(max);
+        filter.setNullAllowed(nullAllowed);
+        return filter;
+    }
+
+    private NumericCollectionFilter numColl(double min, double max, boolean nullAllowed) {
+        NumericCollectionFilter filter = new NumericCollectionFilter("numColl", -100, 100);
+        filter.setSelectedMin(min);
+        filter.setSelectedMax(max);
+        filter.setNullAllowed(nullAllowed);
+        return filter;
+    }
+
+    private StringFilter str(String... allowedValues) {
+        StringFilter filter = new StringFilter("str");
+        filter.setAllowedValues(new HashSet<>(Arrays.asList(allowedValues)));
+        return filter;
+    }
+
+    private StringCollectionFilter strColl(String... allowedValues) {
+        StringCollectionFilter filter = new StringCollectionFilter("strColl");
+        filter.setAllowedValues(new HashSet<>(Arrays.asList(allowedValues)));
+        return filter;
+    }
+
+    private void checkIncrementalFiltering(FilterManager manager, VariantTable table, VariantCallFilter... filters) throws IOException {
+
+        List<VariantCallFilter> filterList = Arrays.asList(filters);
+
+        manager.applyFilters(table, filterList);
+
+        VariantTable expected = loadData();
+        for (int i = 0; i < table.getNumberOfUnfilteredCalls(); i++) {
+            expected.getColumn("str").set(i, table.getColumn("str").get(i));
+        }
+        expected.filter(filterList);
+
+        assertArrayEquals(expected.getSoftFilter(), table.getSoftFilter());
+    }
+
+    @Test
+    public void incrementalFilteringYieldsSameResultAsFullFiltering() throws IOException {
+
+        VariantTable table = loadData();
+        FilterManager manager = new FilterManager();
+
+        checkIncrementalFiltering(manager, table, num(-100, 100, true));
+        checkIncrementalFiltering(manager, table, num(2, 5, true));
+        checkIncrementalFiltering(manager, table, num(2, 4, false));
+        checkIncrementalFiltering(manager, table, num(2, 4, false), str("blub", "NA"));
+        checkIncrementalFiltering(manager, table, num(2, 4, false), str("blub"));
+        checkIncrementalFiltering(manager, table, num(-100, 100, true), str("blub"));
+        checkIncrementalFiltering(manager, table, num(-100, 100, true), str("blub"), strColl("STR3", "NA"), numColl(0, 10, true));
+        checkIncrementalFiltering(manager, table, num(-100, 100, true), str("blub"), strColl("STR3"), numColl(0, 10, true));
+        checkIncrementalFiltering(manager, table, num(-100, 100, true), str(), strColl("STR3"), numColl(0, 10, true));
+        checkIncrementalFiltering(manager, table, num(-100, 100, true), str());
+
+        // modifying a filtered column invalidates its cached rows
+        checkIncrementalFiltering(manager, table, str("blub"));
+        table.getColumn("str").set(0, "blub");
+        checkIncrementalFiltering(manager, table, str("blub"));
+        checkIncrementalFiltering(manager, table, str("blub"), num(4, 5, true));
+    }
+
+    @Test
+    public void parallelFilteringYieldsSameResultAsSequentialFiltering() {
+
+        int numberOfRows = 3 * ParallelFilterEvaluator.BLOCK_SIZE + 17;
+        Random random = new Random(1337);
+
+        List<List<Object>> calls = new ArrayList<>();
+
+        for (int i = 0; i < numberOfRows; i++) {
+            double bp1 = random.nextInt(1000);
+            calls.add(new ArrayList<>(Arrays.asList("sample" + random.nextInt(10), "DEL", "1", bp1, "1", bp1 + random.nextInt(1000))));
+        }
+
+        VariantTable sequentialTable = new VariantTable(calls, Arrays.asList(VariantTable.MANDATORY_FIELDS), Arrays.asList(VariantTable.MANDATORY_FIELDS_TYPES));
+        VariantTable parallelTable = new VariantTable(calls, Arrays.asList(VariantTable.MANDATORY_FIELDS), Arrays.asList(VariantTable.MANDATORY_FIELDS_TYPES));
+
+        ParallelFilterEvaluator evaluator = new ParallelFilterEvaluator(4, 0);
+        FilterManager sequentialManager = new FilterManager();
+        FilterManager parallelManager = new FilterManager(evaluator);
+
+        NumericFilter bp1Filter = new NumericFilter(VariantTable.BP1_COLUMN_NAME, 0, 1000);
+        bp1Filter.setSelectedMin(100);
+        bp1Filter.setSelectedMax(800);
+
+        StringFilter sampleFilter = new StringFilter(VariantTable.SAMPLE_COLUMN_NAME);
+        sampleFilter.setAllowedValues(new HashSet<>(Arrays.asList("sample1", "sample3", "sample4")));
+
+        // not backed by a column index, evaluated block-wise
+        VariantCallFilter evenBp2Filter = (values, indexMap) -> ((Double) values.get(indexMap.get(VariantTable.BP2_COLUMN_NAME))) % 2 == 0;
+
+        List<List<VariantCallFilter>> filterSequence = Arrays.asList(
+                Arrays.asList(bp1Filter),
+                Arrays.asList(bp1Filter, sampleFilter),
+                Arrays.asList(bp1Filter, sampleFilter, evenBp2Filter),
+                Arrays.asList(evenBp2Filter),
+                Arrays.asList()
+        );
+
+        for (List<VariantCallFilter> filters : filterSequence) {
+
+            sequentialManager.applyFilters(sequentialTable, filters);
+            parallelManager.applyFilters(parallelTable, filters);
+
+            assertArrayEquals(sequentialTable.getSoftFilter(), parallelTable.getSoftFilter());
+        }
+
+        evaluator.shutdown();
+    }
+
+    @Test
+    public void defaultFiltersDoNotMaterializeColumns() throws IOException {
+
+        String fileName = TestUtil.getResourceFile("examples.vcf");
+
+        VariantTable lazyTable = new VcfTableReader(false, true).readTable(fileName);
+        VariantTable materializedTable = new VcfTableReader(false, true).readTable(fileName);
+
+        materializedTable.getColumnNames().forEach(materializedTable::getColumn);
+
+        FilterManager manager = new FilterManager();
+        manager.loadFromTable(lazyTable);
+
+        assertFalse(lazyTable.isColumnMaterialized("INFO:DP"));
+
+        FilterManager expectedManager = new FilterManager();
+        expectedManager.loadFromTable(materializedTable);
+
+        assertEquals(new ArrayList<>(expectedManager.getFilters()), new ArrayList<>(manager.getFilters()));
+        assertFalse(lazyTable.isColumnMaterialized("INFO:DP"));
+        assertFalse(lazyTable.isColumnMaterialized("GT:GQ"));
+    }
+
+}
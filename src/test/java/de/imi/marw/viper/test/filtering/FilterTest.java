@@ -27,9 +27,14 @@ import de.imi.marw.viper.variants.filters.StringFilter;
 import de.imi.marw.viper.variants.table.CsvTableReader;
 import de.imi.marw.viper.variants.table.VariantTable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import static org.junit.Assert.assertEquals;
 import org.junit.Test;
@@ -163,4 +168,58 @@ public class FilterTest {
 
     }
 
+    private void checkIndexedFilter(VariantTable table, VariantCallFilter filter) {
+
+        BitSet expectedRows = new BitSet();
+        List<List<Object>> calls = table.getRawCalls();
+
+        for (int i = 0; i < calls.size(); i++) {
+            if (filter.isPassing(calls.get(i), table.getColumnIndexMap())) {
+                expectedRows.set(i);
+            }
+        }
+
+        assertEquals(expectedRows, filter.getPassingRows(table));
+    }
+
+    @Test
+    public void indexedFiltersMatchRowWiseEvaluation() throws IOException {
+
+        VariantTable table = new CsvTableReader(';', ",").readTable(TestUtil.getResourceFile("examples.csv"));
+        Random random = new Random(42);
+
+        List<String> tools = new ArrayList<>(Arrays.asList("BreaKmer", "Pindel", "gustaf", "unknown"));
+        List<String> genes = new ArrayList<>(Arrays.asList("CSF3R", "PDGFRA", "FIP1L1", "NA", "unknown"));
+
+        for (int i = 0; i < 100; i++) {
+
+            double min = random.nextDouble() * 100;
+            double max = min + random.nextDouble() * 1000;
+
+            NumericFilter numFilter = new NumericFilter("cov1", 0, 10000);
+            numFilter.setSelectedMin(min);
+            numFilter.setSelectedMax(max);
+            numFilter.setNullAllowed(random.nextBoolean());
+
+            NumericCollectionFilter numCollFilter = new NumericCollectionFilter("combinedValue", 0, 10000);
+            numCollFilter.setSelectedMin(min);
+            numCollFilter.setSelectedMax(max);
+            numCollFilter.setNullAllowed(random.nextBoolean());
+
+            StringFilter strFilter = new StringFilter("tool");
+            strFilter.setAllowedValues(new HashSet<>(tools.subList(0, random.nextInt(tools.size()))));
+
+            StringCollectionFilter strCollFilter = new StringCollectionFilter("genes");
+            strCollFilter.setAllowedValues(new HashSet<>(genes.subList(0, random.nextInt(genes.size()))));
+
+            checkIndexedFilter(table, numFilter);
+            checkIndexedFilter(table, numCollFilter);
+            checkIndexedFilter(table, strFilter);
+            checkIndexedFilter(table, strCollFilter);
+
+            Collections.shuffle(tools, random);
+            Collections.shuffle(genes, random);
+        }
+    }
+
 }
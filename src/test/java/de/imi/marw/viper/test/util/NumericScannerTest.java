@@ -0,0 +1,100 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.test.util;
+
+import de.imi.marw.viper.util.NumericScanner;
+import de.imi.marw.viper.util.Util;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author marius
+ */
+public class NumericScannerTest {
+
+    private static final String DOUBLE_REGEX = "(NA|(" + Util.FP_REGEX + "))";
+
+    private static final String ALPHABET = "0123456789..eE+-xXpPaAfFdDNINnity ,;|\t";
+
+    private List<String> createValues() {
+
+        List<String> values = new ArrayList<>(Arrays.asList(
+                "", "NA", "NaN", "-NaN", "Infinity", "+Infinity", "-Infinityd", " 1 ", "1.", ".1", ".", "1e5", "1e", "1.e-5",
+                "1.5f", "1.5D", "0x1p3", "0x1.p3", "0x.8p1", "0x.p1", "0xp1", "0x1", "0x1.8P-2d", "1,2", "1, 2", "1,NA",
+                "1, NA", "NA,NA", "1,", ",1", "1,,2", "1;2", "1|2", "abc", "1a", "\t3\t", "1, \t2"
+        ));
+
+        Random random = new Random(1337);
+
+        for (int i = 0; i < 20000; i++) {
+
+            int length = random.nextInt(9);
+            StringBuilder value = new StringBuilder();
+
+            for (int j = 0; j < length; j++) {
+                value.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+
+            values.add(value.toString());
+        }
+
+        return values;
+    }
+
+    @Test
+    public void classifiesLikeRegularExpressions() {
+
+        for (String delimiter : Arrays.asList(",", ";", "|", " ", "e")) {
+
+            NumericScanner scanner = new NumericScanner(delimiter);
+            String numericCollectionRegex = "^$|" + DOUBLE_REGEX + "(" + delimiter + "\\s*" + DOUBLE_REGEX + ")*";
+
+            for (String value : createValues()) {
+                assertEquals(value, value.matches(DOUBLE_REGEX), NumericScanner.isNumeric(value));
+                assertEquals(value + " with delimiter " + delimiter, value.matches(numericCollectionRegex), scanner.isNumericCollection(value));
+            }
+        }
+    }
+
+    @Test
+    public void parsesCollectionsLikeSplitting() {
+
+        NumericScanner scanner = new NumericScanner(",");
+
+        for (String value : createValues()) {
+
+            if (value.contains(" ") || value.contains("\t") || !scanner.isNumericCollection(value)) {
+                continue;
+            }
+
+            List<Double> expected = Arrays.stream(value.split(","))
+                    .map(NumericScanner::parseNumeric)
+                    .collect(Collectors.toList());
+
+            assertEquals(value, expected, scanner.parseNumericCollection(value));
+        }
+    }
+
+}
@@ -21,14 +21,22 @@ package de.imi.marw.viper.test.variants;
 import de.imi.marw.viper.test.util.TestUtil;
 import de.imi.marw.viper.variants.VariantPropertyType;
 import de.imi.marw.viper.variants.table.CsvTableReader;
+import de.imi.marw.viper.variants.table.ParallelCsvTableReader;
 import de.imi.marw.viper.variants.table.VariantTable;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  *
@@ -36,6 +44,9 @@ import org.junit.Test;
  */
 public class CsvTableReaderTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private void assertCallEquals(VariantTable table, int index, Object... callValues) {
 
         assertEquals(Arrays.asList(callValues), table.getRawCalls().get(index));
@@ -166,4 +177,140 @@ public class CsvTableReaderTest {
 
     }
 
+    @Test
+    public void sampledTypesEqualTypesOfAllRows() throws IOException {
+
+        VariantTable allRowsTable = new CsvTableReader(';', ",").readTable(TestUtil.getResourceFile("examples.csv"));
+        VariantTable sampledTable = new CsvTableReader(';', ",", 10000).readTable(TestUtil.getResourceFile("examples.csv"));
+
+        assertEquals(allRowsTable.getColumnTypes(), sampledTable.getColumnTypes());
+        assertEquals(allRowsTable.getRawCalls(), sampledTable.getRawCalls());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooSmallTypeSampleIsDetected() throws IOException {
+
+        // the first row suggests numColl to be numeric
+        new CsvTableReader(';', ",", 1).readTable(TestUtil.getResourceFile("examples-small.csv"));
+    }
+
+    @Test
+    public void schemaFileDefinesTypes() throws IOException {
+
+        CsvTableReader reader = new CsvTableReader(';', ",");
+
+        VariantTable table = reader.readTable(TestUtil.getResourceFile("examples-schema.csv"));
+
+        List<VariantPropertyType> expectedColumnTypes = new ArrayList<>(Arrays.asList(VariantTable.MANDATORY_FIELDS_TYPES));
+        expectedColumnTypes.addAll(Arrays.asList(VariantPropertyType.STRING_COLLECTION, VariantPropertyType.STRING_COLLECTION, VariantPropertyType.STRING));
+
+        assertEquals(expectedColumnTypes, table.getColumnTypes());
+
+        assertCallEquals(table, 1,
+                "SAMPLE1", "DELETION", "1", 1000000.0, "1", 2000000.0, coll("blub"), coll("1", "2", "3", "4"), "NA"
+        );
+    }
+
+    private void assertTablesEqual(VariantTable expected, VariantTable actual) {
+        assertEquals(expected.getColumnNames(), actual.getColumnNames());
+        assertEquals(expected.getColumnTypes(), actual.getColumnTypes());
+        assertEquals(expected.getRawCalls(), actual.getRawCalls());
+    }
+
+    @Test
+    public void parallelReaderYieldsSameTableAsSequentialReader() throws IOException {
+
+        for (String file : Arrays.asList("examples.csv", "examples-small.csv", "examples-filtering.csv", "examples-unclustered.csv", "examples-empty.csv")) {
+
+            String fileName = TestUtil.getResourceFile(file);
+
+            VariantTable sequentialTable = new CsvTableReader(';', ",").readTable(fileName);
+
+            for (int chunkSize : new int[]{1, 16, 100, 1000}) {
+                assertTablesEqual(sequentialTable, new ParallelCsvTableReader(';', ",", 0, 4, chunkSize).readTable(fileName));
+            }
+        }
+    }
+
+    @Test
+    public void parallelReaderRespectsQuotes() throws IOException {
+
+        File file = temporaryFolder.newFile("quoted.csv");
+
+        StringBuilder content = new StringBuilder("sample;type;chr1;bp1;chr2;bp2;comment;values\r\n");
+
+        for (int i = 0; i < 200; i++) {
+            content.append("SAMPLE").append(i % 7).append(";DEL;1;").append(i).append(";1;").append(i + 10).append(";");
+
+            switch (i % 4) {
+                case 0:
+                    content.append("\"multi\nline;\n\"\"quoted\"\"\"");
+                    break;
+                case 1:
+                    content.append("plain\"quote");
+                    break;
+                case 2:
+                    content.append("\"\"");
+                    break;
+                default:
+                    content.append("\"a,b\"");
+            }
+
+            content.append(";").append(i).append(",").append(i * 2).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+
+        Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+
+        VariantTable sequentialTable = new CsvTableReader(';', ",").readTable(file.getPath());
+
+        assertEquals(200, sequentialTable.getNumberOfCalls());
+
+        for (int chunkSize : new int[]{1, 7, 64, 500}) {
+            assertTablesEqual(sequentialTable, new ParallelCsvTableReader(';', ",", 0, 4, chunkSize).readTable(file.getPath()));
+        }
+    }
+
+    private String readError(CsvTableReader reader, String fileName) throws IOException {
+        try {
+            reader.readTable(fileName);
+        } catch (IllegalArgumentException ex) {
+            return ex.getMessage();
+        }
+
+        fail("Expected " + fileName + " to be rejected");
+        return null;
+    }
+
+    @Test
+    public void parallelReaderReportsLineNumbersOfWholeFile() throws IOException {
+
+        File file = temporaryFolder.newFile("invalid.csv");
+
+        StringBuilder content = new StringBuilder("sample;type;chr1;bp1;chr2;bp2;comment\n");
+
+        for (int i = 0; i < 200; i++) {
+            content.append("SAMPLE;DEL;1;").append(i).append(";1;").append(i + 10);
+            content.append(i % 5 == 0 ? ";\"multi\nline\"" : ";plain");
+            content.append(i == 150 ? ";extra\n" : "\n");
+        }
+
+        Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+
+        String expectedError = readError(new CsvTableReader(';', ","), file.getPath());
+
+        assertEquals("Line 152 has 8 values, but the header defines 7 columns", expectedError);
+
+        // exceptions of worker threads are rethrown wrapped by the pool
+        for (int chunkSize : new int[]{1, 64, 500}) {
+            assertTrue(readError(new ParallelCsvTableReader(';', ",", 0, 4, chunkSize), file.getPath()).endsWith(expectedError));
+        }
+
+        Files.write(new File(file.getPath() + CsvTableReader.SCHEMA_FILE_SUFFIX).toPath(),
+                "sample\tSTRING\ntype\tSTRING\nchr1\tSTRING\nbp1\tNUMERIC\nchr2\tSTRING\nbp2\tNUMERIC\ncomment\tSTRING\n".getBytes(StandardCharsets.UTF_8));
+
+        for (int chunkSize : new int[]{1, 64, 500}) {
+            assertTrue(readError(new ParallelCsvTableReader(';', ",", 0, 4, chunkSize), file.getPath()).endsWith(expectedError));
+        }
+    }
+
 }
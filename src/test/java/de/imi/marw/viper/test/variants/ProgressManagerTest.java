@@ -23,9 +23,21 @@ import de.imi.marw.viper.variants.VariantClusterBuilder;
 import de.imi.marw.viper.variants.table.CsvTableReader;
 import de.imi.marw.viper.variants.table.DecisionManager;
 import de.imi.marw.viper.variants.table.VariantTable;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  *
@@ -33,6 +45,20 @@ import org.junit.Test;
  */
 public class ProgressManagerTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File findFile(String suffix) {
+        return Arrays.stream(folder.getRoot().listFiles())
+                .filter(file -> file.getName().endsWith(suffix))
+                .findFirst()
+                .get();
+    }
+
+    private List<Object> getDecisions(VariantTable table) {
+        return table.getUnfilteredColumn(VariantTable.DECISION_COLUMN_NAME);
+    }
+
     private VariantTable loadData() throws IOException {
         VariantTable unclustered = new CsvTableReader(';', ",").readTable(TestUtil.getResourceFile("examples-unclustered.csv"));
         VariantTable clustered = new VariantClusterBuilder(5, false).clusterVariantTable(unclustered).getClusteredTable();
@@ -71,4 +97,87 @@ public class ProgressManagerTest {
 
     }
 
+    @Test
+    public void journaledDecisionsAreReplayed() throws IOException {
+
+        VariantTable table = loadData();
+        DecisionManager mgr = new DecisionManager(folder.getRoot().getAbsolutePath());
+
+        assertTrue(mgr.makeDecision(table, 0, "approved"));
+        assertTrue(mgr.makeDecision(table, 2, "maybe"));
+        assertTrue(mgr.makeDecision(table, 0, "discarded"));
+
+        // an entry that was interrupted while writing
+        Files.write(findFile(".journal").toPath(), "3".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        VariantTable check = loadData();
+        new DecisionManager(folder.getRoot().getAbsolutePath()).loadDecisions(check);
+
+        assertEquals(getDecisions(table), getDecisions(check));
+    }
+
+    @Test
+    public void journalIsCompactedIntoSnapshot() throws IOException {
+
+        VariantTable table = loadData();
+        DecisionManager mgr = new DecisionManager(folder.getRoot().getAbsolutePath(), 2);
+
+        mgr.makeDecision(table, 0, "approved");
+        mgr.makeDecision(table, 1, "approved");
+        mgr.makeDecision(table, 2, "discarded");
+
+        List<String> journal = Files.readAllLines(findFile(".journal").toPath(), StandardCharsets.UTF_8);
+        List<String> snapshot = Files.readAllLines(findFile(".txt").toPath(), StandardCharsets.UTF_8);
+
+        assertEquals(Arrays.asList("#1", "2\tdiscarded"), journal);
+        assertEquals(Arrays.asList("#1", "approved", "approved"), snapshot.subList(0, 3));
+
+        VariantTable check = loadData();
+        new DecisionManager(folder.getRoot().getAbsolutePath()).loadDecisions(check);
+
+        assertEquals(getDecisions(table), getDecisions(check));
+    }
+
+    @Test
+    public void journalOfOlderSnapshotIsIgnored() throws IOException {
+
+        VariantTable table = loadData();
+        DecisionManager mgr = new DecisionManager(folder.getRoot().getAbsolutePath());
+
+        mgr.makeDecision(table, 0, "approved");
+
+        Path journal = findFile(".journal").toPath();
+        Path oldJournal = folder.getRoot().toPath().resolve("old.journal");
+        Files.copy(journal, oldJournal);
+
+        mgr.decideForAll(table, "discarded");
+
+        // as if the process stopped after writing the snapshot, before starting the new journal
+        Files.copy(oldJournal, journal, StandardCopyOption.REPLACE_EXISTING);
+
+        VariantTable check = loadData();
+        new DecisionManager(folder.getRoot().getAbsolutePath()).loadDecisions(check);
+
+        assertEquals(Collections.nCopies(check.getNumberOfUnfilteredCalls(), "discarded"), getDecisions(check));
+    }
+
+    @Test
+    public void legacyProgressFileIsLoaded() throws IOException {
+
+        VariantTable table = loadData();
+
+        String[] bp1 = table.getUnfilteredColumn(VariantTable.BP1_COLUMN_NAME).stream()
+                .map(bp -> bp.toString())
+                .toArray(String[]::new);
+
+        List<String> decisions = Collections.nCopies(table.getNumberOfUnfilteredCalls(), "approved");
+        Path legacyPath = folder.getRoot().toPath().resolve("progress." + Arrays.hashCode(bp1) + "." + table.getNumberOfUnfilteredCalls() + ".txt");
+
+        Files.write(legacyPath, decisions, StandardCharsets.UTF_8);
+
+        new DecisionManager(folder.getRoot().getAbsolutePath()).loadDecisions(table);
+
+        assertEquals(decisions, getDecisions(table));
+    }
+
 }
@@ -0,0 +1,164 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.test.variants;
+
+import de.imi.marw.viper.test.util.TestUtil;
+import de.imi.marw.viper.variants.VariantClusterBuilder;
+import de.imi.marw.viper.variants.VariantTableCluster;
+import de.imi.marw.viper.variants.VariantTableClusterCache;
+import de.imi.marw.viper.variants.table.CsvTableReader;
+import de.imi.marw.viper.variants.table.VariantTable;
+import de.imi.marw.viper.variants.table.VcfTableReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author marius
+ */
+public class VariantTableClusterCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private VariantTableCluster createCluster() throws IOException {
+
+        VariantTable unclustered = new VcfTableReader(false, true).readTable(TestUtil.getResourceFile("examples.vcf"));
+
+        return new VariantClusterBuilder(10, false).clusterVariantTable(unclustered);
+    }
+
+    private List<List<Object>> getCalls(VariantTable table) {
+        return new ArrayList<>(table.getRawCalls());
+    }
+
+    @Test
+    public void cachedTablesAreEqualToOriginals() throws IOException {
+
+        VariantTableCluster cluster = createCluster();
+        VariantTableClusterCache cache = new VariantTableClusterCache(folder.getRoot().getAbsolutePath());
+
+        String key = VariantTableClusterCache.createKey(new File(TestUtil.getResourceFile("examples.vcf")), "breakpointTolerance=10");
+
+        assertNull(cache.load(key));
+        assertTrue(cache.save(key, cluster));
+
+        assertFalse(cluster.getUnclusteredTable().isColumnMaterialized("INFO:DP"));
+        assertFalse(cluster.getClusteredTable().isColumnMaterialized("INFO:DP"));
+
+        VariantTableCluster cached = cache.load(key);
+
+        assertFalse(cluster.getUnclusteredTable().isMaterialized());
+        assertTrue(cached.getUnclusteredTable().isMaterialized());
+        assertTrue(cached.getClusteredTable().isMaterialized());
+
+        assertEquals(cluster.getUnclusteredTable().getColumnNames(), cached.getUnclusteredTable().getColumnNames());
+        assertEquals(cluster.getUnclusteredTable().getTypes(), cached.getUnclusteredTable().getTypes());
+        assertEquals(getCalls(cluster.getUnclusteredTable()), getCalls(cached.getUnclusteredTable()));
+
+        assertEquals(cluster.getClusteredTable().getColumnNames(), cached.getClusteredTable().getColumnNames());
+        assertEquals(getCalls(cluster.getClusteredTable()), getCalls(cached.getClusteredTable()));
+
+        List<List<Integer>> expectedRowMap = cluster.getRowMapCluster().stream()
+                .map(ArrayList::new)
+                .collect(Collectors.toList());
+
+        assertEquals(expectedRowMap, cached.getRowMapCluster());
+    }
+
+    @Test
+    public void keyDependsOnOptions() throws IOException {
+
+        File analysisFile = new File(TestUtil.getResourceFile("examples.vcf"));
+
+        assertEquals(VariantTableClusterCache.createKey(analysisFile, "a"), VariantTableClusterCache.createKey(analysisFile, "a"));
+        assertNotEquals(VariantTableClusterCache.createKey(analysisFile, "a"), VariantTableClusterCache.createKey(analysisFile, "b"));
+    }
+
+    @Test
+    public void keyDependsOnSchemaFile() throws IOException {
+
+        File analysisFile = folder.newFile("variants.csv");
+        File schemaFile = new File(analysisFile.getPath() + CsvTableReader.SCHEMA_FILE_SUFFIX);
+
+        Files.write(analysisFile.toPath(), Files.readAllBytes(new File(TestUtil.getResourceFile("examples-schema.csv")).toPath()));
+
+        VariantTableClusterCache cache = new VariantTableClusterCache(folder.newFolder("work").getAbsolutePath());
+
+        String keyWithoutSchema = VariantTableClusterCache.createKey(analysisFile, "a");
+
+        assertTrue(cache.save(keyWithoutSchema, createCluster()));
+
+        Files.write(schemaFile.toPath(), "sample\tSTRING\n".getBytes(StandardCharsets.UTF_8));
+        String keyWithSchema = VariantTableClusterCache.createKey(analysisFile, "a");
+
+        assertNotEquals(keyWithoutSchema, keyWithSchema);
+        assertNull(cache.load(keyWithSchema));
+
+        assertTrue(cache.save(keyWithSchema, createCluster()));
+
+        Files.write(schemaFile.toPath(), "sample\tSTRING\ntype\tSTRING\n".getBytes(StandardCharsets.UTF_8));
+        String keyWithEditedSchema = VariantTableClusterCache.createKey(analysisFile, "a");
+
+        assertNotEquals(keyWithSchema, keyWithEditedSchema);
+        assertNull(cache.load(keyWithEditedSchema));
+        assertEquals(keyWithEditedSchema, VariantTableClusterCache.createKey(analysisFile, "a"));
+    }
+
+    @Test
+    public void savingRemovesCachesOfOtherInputs() throws IOException {
+
+        VariantTableCluster cluster = createCluster();
+        VariantTableClusterCache cache = new VariantTableClusterCache(folder.getRoot().getAbsolutePath());
+
+        assertTrue(cache.save("first", cluster));
+        assertTrue(cache.save("second", cluster));
+
+        assertFalse(Files.exists(cache.getCachePath("first")));
+        assertTrue(Files.exists(cache.getCachePath("second")));
+    }
+
+    @Test
+    public void corruptCacheIsIgnored() throws IOException {
+
+        VariantTableClusterCache cache = new VariantTableClusterCache(folder.getRoot().getAbsolutePath());
+
+        assertTrue(cache.save("key", createCluster()));
+
+        byte[] content = Files.readAllBytes(cache.getCachePath("key"));
+        Files.write(cache.getCachePath("key"), Arrays.copyOf(content, content.length / 2));
+
+        assertNull(cache.load("key"));
+    }
+
+}
@@ -18,6 +18,7 @@
  */
 package de.imi.marw.viper.test.variants;
 
+import de.imi.marw.viper.clustering.IntervalClusterBuilder;
 import de.imi.marw.viper.test.util.TestUtil;
 import de.imi.marw.viper.variants.VariantClusterBuilder;
 import de.imi.marw.viper.variants.VariantTableCluster;
@@ -133,4 +134,25 @@ public class VariantTableClusterTest {
         }
     }
 
+    @Test
+    public void parallelClusteringIsDeterministic() throws IOException {
+
+        CsvTableReader reader = new CsvTableReader(';', ",");
+
+        for (String file : Arrays.asList("examples-unclustered.csv", "examples.csv")) {
+
+            VariantTable unclustered = reader.readTable(TestUtil.getResourceFile(file));
+
+            VariantTableCluster sequential = new VariantClusterBuilder(new IntervalClusterBuilder(5), false, 1).clusterVariantTable(unclustered);
+
+            for (int run = 0; run < 5; run++) {
+
+                VariantTableCluster parallel = new VariantClusterBuilder(new IntervalClusterBuilder(5), false, 4).clusterVariantTable(unclustered);
+
+                assertEquals(sequential.getRowMapCluster(), parallel.getRowMapCluster());
+                assertEquals(sequential.getClusteredTable().getRawCalls(), parallel.getClusteredTable().getRawCalls());
+            }
+        }
+    }
+
 }
@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.fail;
 import org.junit.Test;
 
@@ -266,6 +267,27 @@ public class VariantTableTest {
         assertEquals(EXPECTED_CALL_MAP, simpleTable.getCall(1));
     }
 
+    @Test
+    public void collectionPropertiesCanBeChanged() {
+
+        VariantTable simpleTable = createSimpleTable();
+
+        simpleTable.setCallProperty(0, "numColl", Arrays.asList(new Double[]{1.0, null, 3.0}));
+        simpleTable.setCallProperty(1, "numColl", Arrays.asList(new Double[]{4.0}));
+        simpleTable.setCallProperty(0, "strColl", Arrays.asList(new String[]{"blub"}));
+        simpleTable.setCallProperty(1, "strColl", Arrays.asList(new String[]{"Halhalo", "blar"}));
+
+        assertEquals(Arrays.asList(new Double[]{1.0, null, 3.0}), simpleTable.getCallProperty(0, "numColl"));
+        assertEquals(Arrays.asList(new Double[]{4.0}), simpleTable.getCallProperty(1, "numColl"));
+        assertEquals(Arrays.asList(new String[]{"blub"}), simpleTable.getCallProperty(0, "strColl"));
+        assertEquals(Arrays.asList(new String[]{"Halhalo", "blar"}), simpleTable.getCallProperty(1, "strColl"));
+
+        simpleTable.setCallProperty(0, "numColl", Arrays.asList(new Double[]{}));
+
+        assertEquals(Arrays.asList(new Double[]{}), simpleTable.getCallProperty(0, "numColl"));
+        assertEquals(Arrays.asList(new Double[]{4.0}), simpleTable.getCallProperty(1, "numColl"));
+    }
+
     @Test
     public void softFiltersAreWorkingCorrectly() {
 
@@ -299,4 +321,41 @@ public class VariantTableTest {
         assertEquals(filteredTable.getCallProperty(0, "strColl"), Arrays.asList(new String[]{"blub", "Halhalo"}));
         assertEquals(filteredTable.getCallProperty(1, VariantTable.CHR2_COLUMN_NAME), "18");
     }
+
+    private VariantTable createFingerprintTable() {
+
+        List<List<Object>> calls = Arrays.asList(
+                Arrays.asList("SAMPLE1", "DELETION", "1", 100.0, "1", 200.0, "NA"),
+                Arrays.asList("SAMPLE2", "INVERSION", "2", 100.0, "X", 300.0, "NA"));
+
+        List<String> columnNames = new ArrayList<>(Arrays.asList(VariantTable.MANDATORY_FIELDS));
+        columnNames.add(VariantTable.DECISION_COLUMN_NAME);
+
+        List<VariantPropertyType> types = new ArrayList<>(Arrays.asList(VariantTable.MANDATORY_FIELDS_TYPES));
+        types.add(VariantPropertyType.STRING);
+
+        return new VariantTable(calls, columnNames, types);
+    }
+
+    @Test
+    public void fingerprintDependsOnMandatoryColumnsOnly() {
+
+        VariantTable table = createFingerprintTable();
+        String fingerprint = table.getFingerprint();
+
+        assertEquals(32, fingerprint.length());
+        assertEquals(fingerprint, createFingerprintTable().getFingerprint());
+
+        table.setCallProperty(0, VariantTable.DECISION_COLUMN_NAME, "approved");
+        assertEquals(fingerprint, table.getFingerprint());
+
+        table.setCallProperty(1, VariantTable.CHR1_COLUMN_NAME, "3");
+        assertNotEquals(fingerprint, table.getFingerprint());
+
+        table.setCallProperty(1, VariantTable.CHR1_COLUMN_NAME, "2");
+        assertEquals(fingerprint, table.getFingerprint());
+
+        table.setCallProperty(0, VariantTable.BP1_COLUMN_NAME, 101.0);
+        assertNotEquals(fingerprint, table.getFingerprint());
+    }
 }
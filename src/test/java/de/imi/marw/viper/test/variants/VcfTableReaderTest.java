@@ -19,14 +19,37 @@
 package de.imi.marw.viper.test.variants;
 
 import de.imi.marw.viper.test.util.TestUtil;
+import de.imi.marw.viper.variants.VariantClusterBuilder;
+import de.imi.marw.viper.variants.VariantTableCluster;
 import de.imi.marw.viper.variants.table.CallStringifier;
 import de.imi.marw.viper.variants.table.CsvTableReader;
 import de.imi.marw.viper.variants.table.VariantTable;
 import de.imi.marw.viper.variants.table.VcfTableReader;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndex;
+import htsjdk.variant.vcf.VCFCodec;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.stream.IntStream;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  *
@@ -34,6 +57,74 @@ import org.junit.Test;
  */
 public class VcfTableReaderTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File createIndexedVcf(String resource) throws IOException {
+
+        File vcf = folder.newFile(resource);
+        Files.copy(Paths.get(TestUtil.getResourceFile(resource)), vcf.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        Index index = IndexFactory.createLinearIndex(vcf, new VCFCodec());
+        index.writeBasedOnFeatureFile(vcf);
+
+        return vcf;
+    }
+
+    /**
+     * Writes the calls of examples.vcf to several contigs, bgzip compressed
+     * with a tabix index or as plain text with a tribble index.
+     */
+    private File createMultiContigVcf(boolean compressed) throws IOException {
+
+        List<String> lines = Files.readAllLines(Paths.get(TestUtil.getResourceFile("examples.vcf")), StandardCharsets.UTF_8);
+        List<String> multiContigLines = new ArrayList<>();
+
+        lines.stream().filter(line -> line.startsWith("#")).forEach(multiContigLines::add);
+
+        for (String contig : Arrays.asList("1", "2", "10", "20", "X")) {
+            lines.stream()
+                    .filter(line -> !line.startsWith("#") && !line.trim().isEmpty())
+                    .map(line -> contig + line.substring(line.indexOf('\t')))
+                    .forEach(multiContigLines::add);
+        }
+
+        File directory = folder.newFolder();
+        byte[] content = (String.join("\n", multiContigLines) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        if (!compressed) {
+            File vcf = new File(directory, "multi-contig.vcf");
+            Files.write(vcf.toPath(), content);
+            IndexFactory.createLinearIndex(vcf, new VCFCodec()).writeBasedOnFeatureFile(vcf);
+            return vcf;
+        }
+
+        File vcf = new File(directory, "multi-contig.vcf.gz");
+
+        try (OutputStream out = new BlockCompressedOutputStream(vcf)) {
+            out.write(content);
+        }
+
+        TabixIndex index = IndexFactory.createTabixIndex(vcf, new VCFCodec(), TabixFormat.VCF, null);
+        index.writeBasedOnFeatureFile(vcf);
+
+        return vcf;
+    }
+
+    private void checkParallelDecoding(boolean compressed, List<String> regions) throws IOException {
+
+        File vcf = createMultiContigVcf(compressed);
+        CallStringifier strf = new CallStringifier(",");
+
+        VariantTable sequential = new VcfTableReader(false, true, regions, 1).readTable(vcf.getAbsolutePath());
+        VariantTable parallel = new VcfTableReader(false, true, regions, 4).readTable(vcf.getAbsolutePath());
+
+        assertEquals(sequential.getColumnNames(), parallel.getColumnNames());
+        assertEquals(sequential.getNumberOfCalls(), parallel.getNumberOfCalls());
+        assertEquals(strf.callsToStringLists(sequential, sequential.getSoftFilter()),
+                strf.callsToStringLists(parallel, parallel.getSoftFilter()));
+    }
+
     //TODO: check all combinations
     private void checkVcfCorrectness(boolean simple, boolean excludeReferenceCalls, String targetVcf, String expectedFileName) throws IOException {
 
@@ -82,4 +173,92 @@ public class VcfTableReaderTest {
 
     }
 
+    @Test
+    public void onlyCallsInRegionsLoaded() throws IOException {
+
+        File vcf = createIndexedVcf("examples.vcf");
+        CallStringifier strf = new CallStringifier(",");
+
+        VariantTable all = new VcfTableReader(false, true).readTable(vcf.getAbsolutePath());
+        VariantTable regional = new VcfTableReader(false, true, Arrays.asList("20:17000-1,110,696", "20:1110000-1200000", "21"))
+                .readTable(vcf.getAbsolutePath());
+
+        int[] expectedRows = IntStream.range(0, all.getNumberOfCalls())
+                .filter(i -> {
+                    double bp1 = (Double) all.getCallProperty(i, VariantTable.BP1_COLUMN_NAME);
+                    return bp1 >= 17000 && bp1 <= 1200000;
+                })
+                .toArray();
+
+        List<List<String>> expected = strf.callsToStringLists(all, expectedRows);
+
+        assertEquals(expectedRows.length, regional.getNumberOfCalls());
+        assertEquals(expected, strf.callsToStringLists(regional, regional.getSoftFilter()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void regionsRequireIndex() throws IOException {
+
+        new VcfTableReader(false, true, Arrays.asList("20")).readTable(TestUtil.getResourceFile("examples.vcf"));
+    }
+
+    @Test
+    public void parallelDecodingOfIndexedVcfYieldsSameCalls() throws IOException {
+
+        checkParallelDecoding(false, Arrays.asList());
+        checkParallelDecoding(false, Arrays.asList("2:1000-1200000", "10", "X:1234567"));
+    }
+
+    @Test
+    public void parallelDecodingOfTabixIndexedVcfYieldsSameCalls() throws IOException {
+
+        checkParallelDecoding(true, Arrays.asList());
+        checkParallelDecoding(true, Arrays.asList("1:14370-17330", "20"));
+    }
+
+    @Test
+    public void infoAndGenotypeColumnsDecodedOnFirstUse() throws IOException {
+
+        VariantTable table = new VcfTableReader(false, true).readTable(TestUtil.getResourceFile("examples.vcf"));
+
+        assertTrue(table.isColumnMaterialized(VariantTable.BP1_COLUMN_NAME));
+        assertFalse(table.isColumnMaterialized("INFO:DP"));
+        assertFalse(table.isColumnMaterialized("GT:GQ"));
+
+        Object depth = table.getUnfilteredCallProperty(1, "INFO:DP");
+        Object quality = table.getUnfilteredCallProperty(1, "GT:GQ");
+
+        assertFalse(table.isColumnMaterialized("INFO:DP"));
+
+        VariantTableCluster cluster = new VariantClusterBuilder(10, false).clusterVariantTable(table);
+        VariantTable clustered = cluster.getClusteredTable();
+
+        assertFalse(clustered.isColumnMaterialized("INFO:DP"));
+        assertFalse(table.isColumnMaterialized("INFO:DP"));
+
+        assertEquals(depth, table.getColumn("INFO:DP").get(1));
+        assertEquals(quality, table.getColumn("GT:GQ").get(1));
+        assertTrue(table.isColumnMaterialized("INFO:DP"));
+        assertEquals(clustered.getNumberOfCalls(), clustered.getColumn("INFO:DP").size());
+    }
+
+    @Test
+    public void columnRangesFollowSoftFilterWithoutDecodingColumns() throws IOException {
+
+        VariantTable table = new VcfTableReader(false, true).readTable(TestUtil.getResourceFile("examples.vcf"));
+
+        BitSet passingRows = new BitSet();
+        passingRows.set(1);
+        passingRows.set(3);
+        passingRows.set(4);
+        table.setSoftFilter(passingRows);
+
+        List<Object[]> columns = table.getColumnRanges(Arrays.asList(VariantTable.BP1_COLUMN_NAME, "INFO:DP"), 1, 3);
+
+        assertEquals(2, columns.size());
+        assertArrayEquals(new Object[]{table.getCallProperty(1, VariantTable.BP1_COLUMN_NAME), table.getCallProperty(2, VariantTable.BP1_COLUMN_NAME)}, columns.get(0));
+        assertArrayEquals(new Object[]{table.getUnfilteredCallProperty(3, "INFO:DP"), table.getUnfilteredCallProperty(4, "INFO:DP")}, columns.get(1));
+        assertFalse(table.isColumnMaterialized("INFO:DP"));
+    }
+
 }
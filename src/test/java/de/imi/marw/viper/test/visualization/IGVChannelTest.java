@@ -0,0 +1,160 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.test.visualization;
+
+import de.imi.marw.viper.visualization.IGVChannel;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author marius
+ */
+public class IGVChannelTest {
+
+    private ServerSocket server;
+    private Thread fakeIGV;
+    private CountDownLatch answerResponses;
+
+    /**
+     * Answers every line with OK, except lines starting with "fail", after
+     * the latch was released.
+     */
+    @Before
+    public void startFakeIGV() throws IOException {
+
+        this.server = new ServerSocket(0);
+        this.answerResponses = new CountDownLatch(1);
+
+        this.fakeIGV = new Thread(() -> {
+            try (Socket socket = server.accept();
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+
+                answerResponses.await();
+
+                String line;
+                while ((line = in.readLine()) != null) {
+                    out.println(line.startsWith("fail") ? "ERROR " + line : "OK");
+                }
+
+            } catch (IOException | InterruptedException ex) {
+            }
+        });
+        this.fakeIGV.start();
+    }
+
+    @After
+    public void stopFakeIGV() throws IOException, InterruptedException {
+        this.answerResponses.countDown();
+        this.server.close();
+        this.fakeIGV.join(5000);
+    }
+
+    @Test(timeout = 10000)
+    public void batchesAreWrittenBeforeResponsesArrive() throws IOException, InterruptedException {
+
+        List<List<String>> responses = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch completed = new CountDownLatch(3);
+
+        try (IGVChannel channel = new IGVChannel(new Socket("127.0.0.1", server.getLocalPort()), 3)) {
+
+            channel.send(Arrays.asList("new", "load a.bam", "goto 1:100-200"), batch -> {
+                responses.add(new ArrayList<>(batch));
+                completed.countDown();
+            });
+            channel.send(Arrays.asList("fail snapshot"), batch -> {
+                responses.add(new ArrayList<>(batch));
+                completed.countDown();
+            });
+            channel.send(Arrays.asList("goto 1:300-400", "snapshot b.png"), batch -> {
+                responses.add(new ArrayList<>(batch));
+                completed.countDown();
+            });
+
+            assertTrue(responses.isEmpty());
+
+            answerResponses.countDown();
+
+            assertTrue(completed.await(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(Arrays.asList(
+                Arrays.asList("OK", "OK", "OK"),
+                Arrays.asList("ERROR fail snapshot"),
+                Arrays.asList("OK", "OK")), responses);
+    }
+
+    @Test(timeout = 10000)
+    public void capacityIsFreedByResponses() throws IOException, InterruptedException {
+
+        try (IGVChannel channel = new IGVChannel(new Socket("127.0.0.1", server.getLocalPort()), 1)) {
+
+            channel.send(Arrays.asList("goto 1:100-200"), batch -> {
+            });
+
+            answerResponses.countDown();
+
+            channel.awaitCapacity();
+            channel.send(Arrays.asList("goto 1:300-400"), batch -> {
+            });
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void pendingBatchesFailWhenClosed() throws IOException, InterruptedException {
+
+        List<List<String>> responses = Collections.synchronizedList(new ArrayList<>());
+
+        IGVChannel channel = new IGVChannel(new Socket("127.0.0.1", server.getLocalPort()), 3);
+
+        channel.send(Arrays.asList("goto 1:100-200", "snapshot a.png"), batch -> responses.add(new ArrayList<>(batch)));
+        channel.send(Arrays.asList("snapshot b.png"), batch -> responses.add(new ArrayList<>(batch)));
+
+        channel.close();
+
+        try {
+            channel.send(Arrays.asList("snapshot c.png"), batch -> responses.add(new ArrayList<>(batch)));
+            fail("Sending on a closed channel must fail");
+        } catch (IOException ex) {
+        }
+
+        assertEquals(Arrays.asList(
+                Arrays.asList(IGVChannel.CLOSED_RESPONSE, IGVChannel.CLOSED_RESPONSE),
+                Arrays.asList(IGVChannel.CLOSED_RESPONSE),
+                Arrays.asList(IGVChannel.CLOSED_RESPONSE)), responses);
+    }
+}
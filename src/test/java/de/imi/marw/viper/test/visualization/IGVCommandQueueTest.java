@@ -0,0 +1,158 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.test.visualization;
+
+import de.imi.marw.viper.visualization.IGVCommand;
+import de.imi.marw.viper.visualization.IGVCommandQueue;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author marius
+ */
+public class IGVCommandQueueTest {
+
+    private static IGVCommand createCommand(String key, String track, boolean urgent, long dueAt) {
+        return new IGVCommand(key, track, new String[]{"snapshot " + key}, urgent, dueAt, () -> {
+        });
+    }
+
+    private static List<String> getKeys(List<IGVCommand> commands) {
+        return commands.stream()
+                .map(IGVCommand::getKey)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void commandsAreOrderedByUrgencyAndDueTime() {
+
+        IGVCommandQueue queue = new IGVCommandQueue();
+
+        queue.offer(createCommand("late", "a.bam", false, 300));
+        queue.offer(createCommand("early", "a.bam", false, 100));
+        queue.offer(createCommand("tie", "a.bam", false, 100));
+        queue.offer(createCommand("older-urgent", "a.bam", true, 10));
+        queue.offer(createCommand("newer-urgent", "a.bam", true, 20));
+
+        assertEquals(Arrays.asList("newer-urgent", "older-urgent", "early", "tie", "late"), getKeys(queue.drain()));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void commandsAreReprioritisedAndCancelledByKey() {
+
+        IGVCommandQueue queue = new IGVCommandQueue();
+
+        for (int i = 0; i < 10; i++) {
+            queue.offer(createCommand("prefetch-" + i, "a.bam", false, 100 * i));
+        }
+
+        queue.offer(createCommand("prefetch-7", "a.bam", true, 1000));
+
+        assertTrue(queue.remove("prefetch-0"));
+        assertTrue(queue.remove("prefetch-5"));
+        assertFalse(queue.remove("prefetch-5"));
+        assertTrue(queue.get("prefetch-7").isUrgent());
+        assertEquals(8, queue.size());
+
+        assertEquals(Arrays.asList("prefetch-7", "prefetch-1", "prefetch-2", "prefetch-3", "prefetch-4", "prefetch-6", "prefetch-8", "prefetch-9"),
+                getKeys(queue.drain()));
+    }
+
+    @Test
+    public void commandsOnPreferredTrackAreTakenFirst() throws InterruptedException {
+
+        IGVCommandQueue queue = new IGVCommandQueue();
+
+        queue.offer(createCommand("a-1", "a.bam", false, 100));
+        queue.offer(createCommand("b-1", "b.bam", false, 200));
+        queue.offer(createCommand("b-2", "b.bam", false, 300));
+
+        assertEquals("b-1", queue.poll(0, TimeUnit.SECONDS, "b.bam").getKey());
+        assertEquals("a-1", queue.poll(0, TimeUnit.SECONDS, "c.bam").getKey());
+
+        queue.offer(createCommand("urgent", "a.bam", true, 400));
+
+        assertEquals("urgent", queue.poll(0, TimeUnit.SECONDS, "b.bam").getKey());
+        assertEquals("b-2", queue.poll(0, TimeUnit.SECONDS, "b.bam").getKey());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS, "b.bam"));
+    }
+
+    @Test
+    public void preferredTrackDoesNotDelayCommandsBeyondWindow() throws InterruptedException {
+
+        IGVCommandQueue queue = new IGVCommandQueue(1000);
+
+        queue.offer(createCommand("a-1", "a.bam", false, 100));
+        queue.offer(createCommand("a-2", "a.bam", false, 2500));
+        queue.offer(createCommand("b-1", "b.bam", false, 1100));
+        queue.offer(createCommand("b-2", "b.bam", false, 1500));
+
+        assertEquals("a-1", queue.poll(0, TimeUnit.SECONDS, "a.bam").getKey());
+        assertEquals("b-1", queue.poll(0, TimeUnit.SECONDS, "a.bam").getKey());
+        assertEquals("a-2", queue.poll(0, TimeUnit.SECONDS, "a.bam").getKey());
+        assertEquals("b-2", queue.poll(0, TimeUnit.SECONDS, "a.bam").getKey());
+    }
+
+    @Test
+    public void preferredTrackFollowsReplacedAndRemovedCommands() throws InterruptedException {
+
+        IGVCommandQueue queue = new IGVCommandQueue();
+
+        queue.offer(createCommand("a-1", "a.bam", false, 100));
+        queue.offer(createCommand("b-1", "b.bam", false, 200));
+        queue.offer(createCommand("b-2", "b.bam", false, 300));
+        queue.offer(createCommand("b-3", "b.bam", false, 400));
+
+        // moved to another track and cancelled
+        queue.offer(createCommand("b-1", "c.bam", false, 200));
+        queue.remove("b-2");
+
+        assertEquals("b-3", queue.poll(0, TimeUnit.SECONDS, "b.bam").getKey());
+        assertEquals("a-1", queue.poll(0, TimeUnit.SECONDS, "b.bam").getKey());
+        assertEquals("b-1", queue.poll(0, TimeUnit.SECONDS, "c.bam").getKey());
+        assertEquals(0, queue.size());
+    }
+
+    @Test(timeout = 10000)
+    public void pollWaitsForCommands() throws InterruptedException {
+
+        IGVCommandQueue queue = new IGVCommandQueue();
+
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+            }
+            queue.offer(createCommand("late", null, false, 0));
+        });
+        producer.start();
+
+        assertEquals("late", queue.poll(5, TimeUnit.SECONDS).getKey());
+        producer.join();
+    }
+}
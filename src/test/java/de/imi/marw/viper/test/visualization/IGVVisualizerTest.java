@@ -0,0 +1,62 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.test.visualization;
+
+import de.imi.marw.viper.visualization.IGVVisualizer;
+import de.imi.marw.viper.visualization.SnapshotCache;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author marius
+ */
+public class IGVVisualizerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void subscribersReceiveExistingSnapshotsImmediately() throws IOException {
+
+        String workDir = folder.getRoot().getAbsolutePath();
+        SnapshotCache cache = new SnapshotCache(workDir, 1000);
+
+        Files.write(cache.getSnapshotPath("sample-1-100-hash"), new byte[10]);
+        cache.add("sample-1-100-hash");
+
+        IGVVisualizer igv = new IGVVisualizer("igv.jar", "hg19", 9090, workDir, workDir, "igv.log", 1, 100, 100, 100);
+
+        List<String> keys = Arrays.asList("sample-1-100-hash", "sample-1-200-hash");
+        BlockingQueue<String> readyKeys = igv.subscribeToSnapshots(keys);
+
+        assertEquals("sample-1-100-hash", readyKeys.poll());
+        assertNull(readyKeys.poll());
+
+        igv.unsubscribeFromSnapshots(keys, readyKeys);
+    }
+}
@@ -0,0 +1,169 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.test.visualization;
+
+import de.imi.marw.viper.visualization.SnapshotCache;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author marius
+ */
+public class SnapshotCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void writeSnapshot(SnapshotCache cache, String key, int size) throws IOException {
+        Files.write(cache.getSnapshotPath(key), new byte[size]);
+    }
+
+    @Test
+    public void leastRecentlyUsedSnapshotsAreEvicted() throws IOException {
+
+        SnapshotCache cache = new SnapshotCache(folder.getRoot().getAbsolutePath(), 250);
+
+        for (String key : new String[]{"a", "b", "c"}) {
+            writeSnapshot(cache, key, 100);
+        }
+
+        assertTrue(cache.add("a"));
+        assertTrue(cache.add("b"));
+        assertTrue(cache.contains("a"));
+        assertTrue(cache.add("c"));
+
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        assertFalse(Files.exists(cache.getSnapshotPath("b")));
+        assertEquals(200, cache.getTotalBytes());
+    }
+
+    @Test
+    public void missingSnapshotsAreNotAdded() {
+
+        SnapshotCache cache = new SnapshotCache(folder.getRoot().getAbsolutePath(), 250);
+
+        assertFalse(cache.add("missing"));
+        assertFalse(cache.contains("missing"));
+    }
+
+    @Test
+    public void snapshotsSurviveRestarts() throws IOException {
+
+        String workDir = folder.getRoot().getAbsolutePath();
+        SnapshotCache cache = new SnapshotCache(workDir, 1000);
+
+        writeSnapshot(cache, "kept", 100);
+        writeSnapshot(cache, "deleted", 100);
+        cache.add("kept");
+        cache.add("deleted");
+        cache.save();
+
+        Files.delete(cache.getSnapshotPath("deleted"));
+        writeSnapshot(cache, "unindexed", 100);
+
+        SnapshotCache restarted = new SnapshotCache(workDir, 1000);
+
+        assertTrue(restarted.contains("kept"));
+        assertFalse(restarted.contains("deleted"));
+        assertFalse(restarted.contains("unindexed"));
+        assertFalse(Files.exists(restarted.getSnapshotPath("unindexed")));
+        assertEquals(1, restarted.size());
+        assertEquals(100, restarted.getTotalBytes());
+    }
+
+    @Test
+    public void smallerBudgetEvictsOnRestart() throws IOException {
+
+        String workDir = folder.getRoot().getAbsolutePath();
+        SnapshotCache cache = new SnapshotCache(workDir, 1000);
+
+        for (String key : new String[]{"old", "new"}) {
+            writeSnapshot(cache, key, 100);
+            cache.add(key);
+        }
+
+        SnapshotCache restarted = new SnapshotCache(workDir, 150);
+        Path oldSnapshot = restarted.getSnapshotPath("old");
+
+        assertFalse(restarted.contains("old"));
+        assertFalse(Files.exists(oldSnapshot));
+        assertTrue(restarted.contains("new"));
+    }
+
+    private List<String> readIndex(String workDir) throws IOException {
+        return Files.readAllLines(Paths.get(workDir, "snapshot-index.txt"), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void addedSnapshotsAreAppendedToIndex() throws IOException {
+
+        String workDir = folder.getRoot().getAbsolutePath();
+        SnapshotCache cache = new SnapshotCache(workDir, 250);
+
+        for (String key : new String[]{"a", "b", "c"}) {
+            writeSnapshot(cache, key, 100);
+        }
+
+        cache.add("a");
+        cache.add("b");
+        writeSnapshot(cache, "a", 100);
+        cache.add("a");
+        cache.add("c");
+
+        assertEquals(Arrays.asList("a\t100", "b\t100", "a\t100", "b\t-1", "c\t100"), readIndex(workDir));
+
+        SnapshotCache restarted = new SnapshotCache(workDir, 150);
+
+        // the replayed order keeps "c" as the most recently used snapshot
+        assertFalse(restarted.contains("a"));
+        assertFalse(restarted.contains("b"));
+        assertTrue(restarted.contains("c"));
+        assertEquals(Arrays.asList("c\t100"), readIndex(workDir));
+    }
+
+    @Test
+    public void appendedIndexIsCompacted() throws IOException {
+
+        String workDir = folder.getRoot().getAbsolutePath();
+        SnapshotCache cache = new SnapshotCache(workDir, 1000);
+
+        writeSnapshot(cache, "a", 100);
+
+        for (int i = 0; i < 5000; i++) {
+            cache.add("a");
+        }
+
+        assertTrue(readIndex(workDir).size() < 2000);
+        assertTrue(new SnapshotCache(workDir, 1000).contains("a"));
+    }
+}
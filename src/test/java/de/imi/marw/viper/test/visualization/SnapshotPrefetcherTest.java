@@ -0,0 +1,143 @@
+/* Copyright (c) 2017 Marius Wöste
+ *
+ * This file is part of VIPER.
+ *
+ * VIPER is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VIPER is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VIPER.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package de.imi.marw.viper.test.visualization;
+
+import de.imi.marw.viper.variants.VariantClusterBuilder;
+import de.imi.marw.viper.variants.VariantPropertyType;
+import de.imi.marw.viper.variants.VariantTableCluster;
+import de.imi.marw.viper.variants.table.VariantTable;
+import de.imi.marw.viper.visualization.IGVVisualizer;
+import de.imi.marw.viper.visualization.SamplePartners;
+import de.imi.marw.viper.visualization.SnapshotPrefetcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author marius
+ */
+public class SnapshotPrefetcherTest {
+
+    private static final int NUM_CALLS = 20;
+    private static final int SNAPSHOT_BUDGET = 6;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private VariantTableCluster cluster;
+    private IGVVisualizer igv;
+    private SnapshotPrefetcher prefetcher;
+    private long now;
+
+    @Before
+    public void setUp() {
+
+        List<List<Object>> calls = new ArrayList<>();
+
+        for (int i = 0; i < NUM_CALLS; i++) {
+            calls.add(Arrays.asList("SAMPLE", "DELETION", "1", 1000.0 * i, "1", 1000.0 * i + 500));
+        }
+
+        VariantTable table = new VariantTable(calls, Arrays.asList(VariantTable.MANDATORY_FIELDS), Arrays.asList(VariantTable.MANDATORY_FIELDS_TYPES));
+
+        String workDir = folder.getRoot().getAbsolutePath();
+
+        this.cluster = new VariantClusterBuilder(0, true).clusterVariantTable(table);
+        this.igv = new IGVVisualizer("igv.jar", "hg19", 9090, workDir, workDir, "igv.log", 1, 100, 100, 100);
+        this.igv.setConfigurationValue("VIPER.VIEW_RANGE", 25);
+        this.now = 0;
+        this.prefetcher = new SnapshotPrefetcher(igv, cluster, new SamplePartners(), SNAPSHOT_BUDGET, () -> now);
+    }
+
+    private List<SnapshotPrefetcher.Snapshot> view(int clusterIndex) {
+        now += 2000;
+        return prefetcher.viewCall("session", clusterIndex, 0);
+    }
+
+    private List<Integer> getPositions(List<SnapshotPrefetcher.Snapshot> snapshots) {
+        return snapshots.stream()
+                .map(SnapshotPrefetcher.Snapshot::getPos)
+                .collect(Collectors.toList());
+    }
+
+    private boolean isScheduled(int pos) {
+        return igv.isSnapshotScheduled(igv.getSnapshotKey("SAMPLE", "1", pos));
+    }
+
+    @Test
+    public void forwardBrowsingPrefetchesFollowingCalls() {
+
+        view(5);
+        view(6);
+        view(7);
+
+        List<SnapshotPrefetcher.Snapshot> plan = view(8);
+
+        assertEquals(Arrays.asList(9000, 9500, 10000, 10500, 11000, 11500), getPositions(plan));
+        assertTrue(plan.get(0).getExpectedMs() < plan.get(2).getExpectedMs());
+
+        assertTrue(isScheduled(8000));
+        assertTrue(isScheduled(8500));
+        assertTrue(isScheduled(11500));
+    }
+
+    @Test
+    public void reversingDirectionCancelsStalePrefetches() {
+
+        view(5);
+        view(6);
+        view(7);
+        view(8);
+
+        List<SnapshotPrefetcher.Snapshot> plan = view(7);
+
+        assertEquals(Arrays.asList(8000, 8500, 6000, 6500, 9000, 9500), getPositions(plan));
+
+        assertTrue(isScheduled(6000));
+        assertFalse(isScheduled(10000));
+        assertFalse(isScheduled(11000));
+    }
+
+    @Test
+    public void filterChangeCancelsPrefetches() {
+
+        assertEquals(Arrays.asList(6000, 6500, 4000, 4500, 7000, 7500), getPositions(view(5)));
+
+        BitSet evenRows = new BitSet();
+        for (int i = 0; i < NUM_CALLS; i += 2) {
+            evenRows.set(i);
+        }
+        cluster.getClusteredTable().setSoftFilter(evenRows);
+
+        assertEquals(Arrays.asList(2000, 2500, 4000, 4500, 6000, 6500), getPositions(view(0)));
+
+        assertTrue(isScheduled(6000));
+        assertFalse(isScheduled(7000));
+    }
+}